@@ -0,0 +1,41 @@
+-- Sets up the ranges the backend reserves ids for new plugins, graphs and columns from.
+--
+-- Each range starts after the highest id in its table, and the table's AUTO_INCREMENT is moved to
+-- the end of it once, here, so rows numbered by the table (the web frontend, or the backend when
+-- it could not reserve an id) never take a reserved id. Run it with the backend stopped.
+--
+-- Before MySQL 8 a table's AUTO_INCREMENT is recomputed from MAX(ID) when the server restarts and
+-- can fall back into the range. The backend then stops reserving ids for that table and logs an
+-- error until this is run again.
+
+SET @range = 100000000;
+
+DROP TABLE IF EXISTS IdSequence;
+
+CREATE TABLE IdSequence (
+    Name VARCHAR(32) NOT NULL PRIMARY KEY,
+    NextId INT NOT NULL,
+    EndId INT NOT NULL
+);
+
+INSERT INTO IdSequence (Name, NextId, EndId) SELECT 'Plugin', COALESCE(MAX(ID), 0) + 1, COALESCE(MAX(ID), 0) + 1 + @range FROM Plugin;
+INSERT INTO IdSequence (Name, NextId, EndId) SELECT 'Graph', COALESCE(MAX(ID), 0) + 1, COALESCE(MAX(ID), 0) + 1 + @range FROM Graph;
+INSERT INTO IdSequence (Name, NextId, EndId) SELECT 'CustomColumn', COALESCE(MAX(ID), 0) + 1, COALESCE(MAX(ID), 0) + 1 + @range FROM CustomColumn;
+
+SELECT CONCAT('ALTER TABLE Plugin AUTO_INCREMENT = ', EndId) INTO @alter FROM IdSequence WHERE Name = 'Plugin';
+PREPARE statement FROM @alter;
+EXECUTE statement;
+DEALLOCATE PREPARE statement;
+
+SELECT CONCAT('ALTER TABLE Graph AUTO_INCREMENT = ', EndId) INTO @alter FROM IdSequence WHERE Name = 'Graph';
+PREPARE statement FROM @alter;
+EXECUTE statement;
+DEALLOCATE PREPARE statement;
+
+SELECT CONCAT('ALTER TABLE CustomColumn AUTO_INCREMENT = ', EndId) INTO @alter FROM IdSequence WHERE Name = 'CustomColumn';
+PREPARE statement FROM @alter;
+EXECUTE statement;
+DEALLOCATE PREPARE statement;
+
+-- refresh the cached table statistics the backend reads AUTO_INCREMENT from
+ANALYZE TABLE Plugin, Graph, CustomColumn;
@@ -0,0 +1,80 @@
+package org.mcstats.benchmarks;
+
+import org.mcstats.MCStats;
+import org.mcstats.generator.GeneratedData;
+import org.mcstats.generator.GraphGenerator;
+import org.mcstats.generator.IncrementAggregator;
+import org.mcstats.generator.ReflectionAggregator;
+import org.mcstats.generator.ReflectionDonutAggregator;
+import org.mcstats.generator.aggregator.CountryAggregator;
+import org.mcstats.generator.aggregator.CustomDataAggregator;
+import org.mcstats.generator.aggregator.RevisionAggregator;
+import org.mcstats.generator.aggregator.VersionDemographicsAggregator;
+import org.mcstats.model.Column;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A full generate() pass of the SimpleAggregator based generators over a synthetic population
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgs = { "-Xmx4g" })
+public class AggregatorBenchmark {
+
+    @Param({ "100000" })
+    public int servers;
+
+    @Param({ "increment", "reflection", "donut", "country", "revision", "versionDemographics", "customData" })
+    public String generator;
+
+    private MCStats mcstats;
+
+    private GraphGenerator graphGenerator;
+
+    @Setup
+    public void setup() {
+        mcstats = BenchmarkEnvironment.get();
+        BenchmarkEnvironment.populate(servers);
+
+        if (generator.equals("increment")) {
+            graphGenerator = new IncrementAggregator("Global Statistics", "Servers");
+        } else if (generator.equals("reflection")) {
+            graphGenerator = new ReflectionAggregator("serverSoftware", "Server Software");
+        } else if (generator.equals("donut")) {
+            graphGenerator = new ReflectionDonutAggregator("osname", "osversion", "Operating System");
+        } else if (generator.equals("country")) {
+            graphGenerator = new CountryAggregator("Server Locations");
+        } else if (generator.equals("revision")) {
+            graphGenerator = new RevisionAggregator("MCStats Revision");
+        } else if (generator.equals("versionDemographics")) {
+            graphGenerator = new VersionDemographicsAggregator("Version Demographics");
+        } else {
+            graphGenerator = new CustomDataAggregator();
+        }
+
+        // creates the graphs and columns so they are not part of the measurement
+        graphGenerator.generate(mcstats);
+    }
+
+    @Benchmark
+    public Map<Column, GeneratedData> generate() {
+        return graphGenerator.generate(mcstats);
+    }
+
+}
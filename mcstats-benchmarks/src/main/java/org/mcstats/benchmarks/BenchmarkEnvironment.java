@@ -0,0 +1,181 @@
+package org.mcstats.benchmarks;
+
+import org.mcstats.MCStats;
+import org.mcstats.db.InMemoryDatabase;
+import org.mcstats.model.CustomData;
+import org.mcstats.model.Graph;
+import org.mcstats.model.Plugin;
+import org.mcstats.model.Server;
+import org.mcstats.model.ServerPlugin;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+/**
+ * Boots a single embedded MCStats per benchmark JVM against an {@link InMemoryDatabase}, and builds
+ * synthetic server populations for the benchmarks to work on. Everything is seeded so every fork
+ * sees the same data.
+ */
+public class BenchmarkEnvironment {
+
+    /**
+     * The name of the plugin requests are sent for
+     */
+    public static final String PLUGIN_NAME = "BenchmarkPlugin";
+
+    public static final String[] SERVER_VERSIONS = {
+            "git-Bukkit-1.6.4-R2.0-b2918jnks (MC: 1.6.4)",
+            "git-Spigot-1141 (MC: 1.6.4)",
+            "git-Bukkit-1.5.2-R1.0-b2788jnks (MC: 1.5.2)",
+            "MCPC-Plus-1.6.4-R2.1-forge965-B234 (MC: 1.6.4)",
+            "git-Cauldron-MCPC-Plus-1.6.4-1.965.21.89 (MC: 1.6.4)",
+            "git-Bukkit-1.7.2-R0.2-b2974jnks (MC: 1.7.2)",
+            "Glowstone 1.0.0 (MC: 1.6.4)",
+            "git-TacoSpigot-55 (MC: 1.7.2)"
+    };
+
+    public static final String[] OS_NAMES = { "Linux", "Windows 7", "Windows Server 2008 R2", "Mac OS X", "FreeBSD" };
+
+    public static final String[] OS_VERSIONS = { "3.2.0-4-amd64", "6.1", "2.6.32-042stab081.3", "10.8.5", "9.1-RELEASE" };
+
+    public static final String[] OS_ARCHS = { "amd64", "x86", "i386", "x86_64" };
+
+    public static final String[] JAVA_VERSIONS = { "1.7.0_25", "1.7.0_45", "1.6.0_45", "1.8.0-ea" };
+
+    public static final String[] COUNTRIES = { "US", "DE", "GB", "FR", "NL", "CA", "RU", "BR", "ZZ" };
+
+    public static final String[] PLUGIN_VERSIONS = { "1.0", "1.1", "1.2.3", "2.0-SNAPSHOT" };
+
+    /**
+     * The number of plugins servers in a population are spread over
+     */
+    private static final int POPULATION_PLUGINS = 50;
+
+    private static MCStats mcstats = null;
+
+    /**
+     * The guids of the populated servers
+     */
+    private static List<String> population = Collections.emptyList();
+
+    /**
+     * Get the embedded MCStats, starting it if necessary
+     *
+     * @return
+     */
+    public static synchronized MCStats get() {
+        if (mcstats == null) {
+            Properties config = new Properties();
+            config.setProperty("debug", "false");
+            config.setProperty("queue.workers", "1");
+            config.setProperty("queue.flushes", "5000");
+            config.setProperty("queue.maxSize", "500000");
+
+            MCStats instance = MCStats.getInstance();
+            instance.startEmbedded(config, new InMemoryDatabase(instance), new NullGraphStore());
+            instance.loadPlugin(PLUGIN_NAME);
+            mcstats = instance;
+        }
+
+        return mcstats;
+    }
+
+    /**
+     * Make sure at least the given number of servers exist and have recently sent data. Each server
+     * runs one of a fixed set of plugins, with custom data.
+     *
+     * @param size
+     * @return the guids of the servers
+     */
+    public static synchronized List<String> populate(int size) {
+        if (population.size() >= size) {
+            return population.subList(0, size);
+        }
+
+        MCStats mcstats = get();
+        Random random = new Random(population.size());
+        List<String> guids = new ArrayList<String>(population);
+        int now = (int) (System.currentTimeMillis() / 1000L);
+
+        for (int i = guids.size(); i < size; i++) {
+            String guid = guid(i);
+            Server server = mcstats.loadServer(guid);
+            String serverVersion = pick(random, SERVER_VERSIONS);
+            int os = random.nextInt(OS_NAMES.length);
+
+            server.setServerVersion(serverVersion);
+            server.setServerSoftware(mcstats.getServerBuildIdentifier().getServerVersion(serverVersion));
+            server.setMinecraftVersion(mcstats.getServerBuildIdentifier().getMinecraftVersion(serverVersion));
+            server.setCountry(pick(random, COUNTRIES));
+            server.setPlayers(random.nextInt(100));
+            server.setOSName(OS_NAMES[os]);
+            server.setOSVersion(OS_VERSIONS[os]);
+            server.setOSArch(pick(random, OS_ARCHS));
+            server.setCores(1 << random.nextInt(4));
+            server.setOnlineMode(random.nextInt(2));
+            server.setJavaName("1.7");
+            server.setJavaVersion(pick(random, JAVA_VERSIONS));
+            server.setLastSentData(now);
+
+            Plugin plugin = mcstats.loadPlugin("Plugin" + random.nextInt(POPULATION_PLUGINS));
+            ServerPlugin serverPlugin = mcstats.loadServerPlugin(server, plugin, pick(random, PLUGIN_VERSIONS));
+            serverPlugin.setUpdated(now);
+            serverPlugin.setRevision(7);
+            serverPlugin.setCustomData(customData(mcstats, plugin, random));
+
+            mcstats.notifyServerPlugin(serverPlugin);
+            guids.add(guid);
+        }
+
+        population = guids;
+        return population;
+    }
+
+    /**
+     * Get the guid of the nth synthetic server
+     *
+     * @param index
+     * @return
+     */
+    public static String guid(int index) {
+        return String.format("00000000-0000-4000-8000-%012d", index);
+    }
+
+    /**
+     * Pick a random element of an array
+     *
+     * @param random
+     * @param values
+     * @return
+     */
+    public static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    /**
+     * Create custom data for a plugin: two graphs with a few columns each
+     *
+     * @param mcstats
+     * @param plugin
+     * @param random
+     * @return
+     */
+    private static CustomData customData(MCStats mcstats, Plugin plugin, Random random) {
+        CustomData customData = new CustomData();
+        Graph features = mcstats.loadGraph(plugin, "Features");
+        Graph storage = mcstats.loadGraph(plugin, "Storage");
+
+        // new graphs start inactive, which would make the decoders skip their custom data
+        features.setActive(1);
+        storage.setActive(1);
+
+        customData.put(features.loadColumn("Economy"), 1);
+        customData.put(features.loadColumn("Protection"), random.nextInt(2));
+        customData.put(storage.loadColumn(random.nextBoolean() ? "MySQL" : "SQLite"), 1);
+        return customData;
+    }
+
+}
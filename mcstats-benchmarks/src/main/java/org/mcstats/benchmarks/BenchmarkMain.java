@@ -0,0 +1,46 @@
+package org.mcstats.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the usual JMH command line, writing the results as JSON to
+ * jmh-result.json unless a result format or file is given
+ */
+public class BenchmarkMain {
+
+    /**
+     * The file results are written to by default
+     */
+    private static final String DEFAULT_RESULT_FILE = "jmh-result.json";
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions options = new CommandLineOptions(args);
+
+        if (options.shouldHelp()) {
+            options.showHelp();
+            return;
+        }
+
+        if (options.shouldList()) {
+            new Runner(options).list();
+            return;
+        }
+
+        ChainedOptionsBuilder builder = new OptionsBuilder().parent(options);
+
+        if (!options.getResultFormat().hasValue()) {
+            builder.resultFormat(ResultFormatType.JSON);
+        }
+
+        if (!options.getResult().hasValue()) {
+            builder.result(DEFAULT_RESULT_FILE);
+        }
+
+        new Runner(builder.build()).run();
+    }
+
+}
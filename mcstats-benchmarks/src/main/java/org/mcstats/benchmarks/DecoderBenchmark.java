@@ -0,0 +1,101 @@
+package org.mcstats.benchmarks;
+
+import org.mcstats.MCStats;
+import org.mcstats.decoder.DecodedRequest;
+import org.mcstats.decoder.LegacyRequestDecoder;
+import org.mcstats.decoder.ModernRequestDecoder;
+import org.mcstats.decoder.RequestDecoder;
+import org.mcstats.model.Plugin;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding a single report body with the legacy and modern decoders
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecoderBenchmark {
+
+    /**
+     * The number of distinct bodies cycled through
+     */
+    private static final int BODIES = 256;
+
+    @Param({ "legacy", "modern", "modern-gzip" })
+    public String format;
+
+    private RequestDecoder decoder;
+
+    private Plugin plugin;
+
+    private String userAgent;
+
+    private String contentEncoding;
+
+    private byte[][] bodies;
+
+    private final DecodedRequest decoded = new DecodedRequest();
+
+    private int next = 0;
+
+    @Setup
+    public void setup() {
+        MCStats mcstats = BenchmarkEnvironment.get();
+        plugin = mcstats.loadPlugin(BenchmarkEnvironment.PLUGIN_NAME);
+        bodies = new byte[BODIES][];
+        Random random = new Random(1);
+
+        for (int i = 0; i < BODIES; i++) {
+            String guid = BenchmarkEnvironment.guid(i);
+
+            if (format.equals("legacy")) {
+                bodies[i] = RequestBodies.legacy(guid, random);
+            } else if (format.equals("modern")) {
+                bodies[i] = RequestBodies.modern(guid, random);
+            } else {
+                bodies[i] = RequestBodies.gzip(RequestBodies.modern(guid, random));
+            }
+        }
+
+        if (format.equals("legacy")) {
+            decoder = new LegacyRequestDecoder(mcstats);
+            userAgent = RequestBodies.LEGACY_USER_AGENT;
+        } else {
+            decoder = new ModernRequestDecoder(mcstats);
+            userAgent = RequestBodies.MODERN_USER_AGENT;
+        }
+
+        contentEncoding = format.endsWith("gzip") ? "gzip" : null;
+    }
+
+    @Benchmark
+    public DecodedRequest decode() throws IOException {
+        byte[] body = bodies[next++ & (BODIES - 1)];
+        decoded.reset();
+
+        if (!decoder.decode(plugin, userAgent, contentEncoding, new ByteArrayInputStream(body), decoded)) {
+            throw new IllegalStateException("Benchmark body was rejected");
+        }
+
+        return decoded;
+    }
+
+}
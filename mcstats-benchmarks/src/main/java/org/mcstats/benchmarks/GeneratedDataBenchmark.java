@@ -0,0 +1,74 @@
+package org.mcstats.benchmarks;
+
+import org.mcstats.generator.GeneratedData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Accumulating values into GeneratedData the way the aggregators do, spread over a number of columns
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeneratedDataBenchmark {
+
+    /**
+     * The number of values accumulated per invocation
+     */
+    private static final int VALUES = 4096;
+
+    @Param({ "1", "64", "4096" })
+    public int columns;
+
+    private GeneratedData[] data;
+
+    private long[] values;
+
+    private int[] targets;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(1);
+        data = new GeneratedData[columns];
+        values = new long[VALUES];
+        targets = new int[VALUES];
+
+        for (int i = 0; i < columns; i++) {
+            data[i] = new GeneratedData();
+        }
+
+        for (int i = 0; i < VALUES; i++) {
+            values[i] = random.nextInt(100);
+            targets[i] = random.nextInt(columns);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public GeneratedData[] accumulate() {
+        for (int i = 0; i < VALUES; i++) {
+            GeneratedData current = data[targets[i]];
+            current.incrementCount();
+            current.incrementSum(values[i]);
+        }
+
+        return data;
+    }
+
+}
@@ -0,0 +1,69 @@
+package org.mcstats.benchmarks;
+
+import org.mcstats.MCStats;
+import org.mcstats.db.MongoDBGraphStore;
+import org.mcstats.generator.GeneratedData;
+import org.mcstats.model.Column;
+import org.mcstats.model.Graph;
+import org.mcstats.model.Plugin;
+import org.mcstats.util.Tuple;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the document MongoDBGraphStore.insert writes for one graph. The write itself is not
+ * measured since it needs a running MongoDB.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GraphStoreBenchmark {
+
+    @Param({ "1", "16", "256" })
+    public int columns;
+
+    private Graph graph;
+
+    private List<Tuple<Column, GeneratedData>> data;
+
+    @Setup
+    public void setup() {
+        MCStats mcstats = BenchmarkEnvironment.get();
+        Plugin plugin = mcstats.loadPlugin(BenchmarkEnvironment.PLUGIN_NAME);
+        graph = mcstats.loadGraph(plugin, "Columns " + columns);
+        data = new ArrayList<Tuple<Column, GeneratedData>>();
+        Random random = new Random(1);
+
+        for (int i = 0; i < columns; i++) {
+            GeneratedData generated = new GeneratedData();
+            generated.setCount(1 + random.nextInt(1000));
+            generated.setSum(generated.getCount() * (long) random.nextInt(100));
+            generated.setMax(random.nextInt(100));
+            generated.setMin(random.nextInt(10));
+            data.add(new Tuple<Column, GeneratedData>(graph.loadColumn("Column " + i), generated));
+        }
+    }
+
+    @Benchmark
+    public Object createDocument() {
+        return MongoDBGraphStore.createDocument(graph, data, 1382400000);
+    }
+
+}
@@ -0,0 +1,35 @@
+package org.mcstats.benchmarks;
+
+import org.mcstats.db.GraphStore;
+import org.mcstats.generator.GeneratedData;
+import org.mcstats.model.Column;
+import org.mcstats.model.Graph;
+import org.mcstats.util.Tuple;
+
+import java.util.List;
+
+/**
+ * A graph store that discards everything written to it
+ */
+public class NullGraphStore implements GraphStore {
+
+    /**
+     * {@inheritDoc}
+     */
+    public void insert(Column column, int epoch, long sum, int count, long avg, long max, long min) {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void insert(Graph graph, List<Tuple<Column, GeneratedData>> data, int epoch) {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getBytesWritten() {
+        return 0;
+    }
+
+}
@@ -0,0 +1,88 @@
+package org.mcstats.benchmarks;
+
+import org.mcstats.MCStats;
+import org.mcstats.handler.ReportHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The synchronous part of handling a report (plugin lookup, decode, response) for servers that are
+ * already loaded. The background work it submits is drained after every iteration.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReportHandlerBenchmark {
+
+    /**
+     * The number of distinct bodies cycled through
+     */
+    private static final int BODIES = 1024;
+
+    @Param({ "legacy", "modern-gzip" })
+    public String format;
+
+    private ReportHandler handler;
+
+    private byte[][] bodies;
+
+    private String userAgent;
+
+    private String contentEncoding;
+
+    private int next = 0;
+
+    @Setup
+    public void setup() {
+        MCStats mcstats = BenchmarkEnvironment.get();
+        List<String> guids = BenchmarkEnvironment.populate(BODIES);
+        handler = mcstats.getReportHandler();
+        bodies = new byte[BODIES][];
+        Random random = new Random(1);
+
+        for (int i = 0; i < BODIES; i++) {
+            if (format.equals("legacy")) {
+                bodies[i] = RequestBodies.legacy(guids.get(i), random);
+            } else {
+                bodies[i] = RequestBodies.gzip(RequestBodies.modern(guids.get(i), random));
+            }
+        }
+
+        userAgent = format.equals("legacy") ? RequestBodies.LEGACY_USER_AGENT : RequestBodies.MODERN_USER_AGENT;
+        contentEncoding = format.equals("legacy") ? null : "gzip";
+    }
+
+    @TearDown(Level.Iteration)
+    public void drain() throws InterruptedException {
+        while (handler.queueSize() > 0) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Benchmark
+    public ByteBuffer process() {
+        byte[] body = bodies[next++ & (BODIES - 1)];
+        return handler.process("/plugin/" + BenchmarkEnvironment.PLUGIN_NAME, userAgent, contentEncoding, "US", null, new ByteArrayInputStream(body));
+    }
+
+}
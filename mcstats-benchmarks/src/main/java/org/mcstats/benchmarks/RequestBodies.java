@@ -0,0 +1,133 @@
+package org.mcstats.benchmarks;
+
+import org.json.simple.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Builds report bodies shaped like the ones real plugins send
+ */
+public class RequestBodies {
+
+    /**
+     * The User-Agent sent with modern (JSON) reports
+     */
+    public static final String MODERN_USER_AGENT = "MCStats/7";
+
+    /**
+     * The User-Agent sent with legacy (form encoded) reports
+     */
+    public static final String LEGACY_USER_AGENT = "Java/1.7.0_25";
+
+    /**
+     * Create a legacy form encoded report for revision 6
+     *
+     * @param guid
+     * @param random
+     * @return
+     */
+    public static byte[] legacy(String guid, Random random) {
+        StringBuilder builder = new StringBuilder();
+        append(builder, "guid", guid);
+        append(builder, "version", BenchmarkEnvironment.pick(random, BenchmarkEnvironment.PLUGIN_VERSIONS));
+        append(builder, "server", BenchmarkEnvironment.pick(random, BenchmarkEnvironment.SERVER_VERSIONS));
+        append(builder, "players", Integer.toString(random.nextInt(100)));
+        append(builder, "revision", "6");
+        append(builder, "osname", BenchmarkEnvironment.pick(random, BenchmarkEnvironment.OS_NAMES));
+        append(builder, "osarch", BenchmarkEnvironment.pick(random, BenchmarkEnvironment.OS_ARCHS));
+        append(builder, "osversion", BenchmarkEnvironment.pick(random, BenchmarkEnvironment.OS_VERSIONS));
+        append(builder, "cores", Integer.toString(1 << random.nextInt(4)));
+        append(builder, "online-mode", Boolean.toString(random.nextBoolean()));
+        append(builder, "java_version", BenchmarkEnvironment.pick(random, BenchmarkEnvironment.JAVA_VERSIONS));
+        append(builder, "C~~Features~~Economy", "1");
+        append(builder, "C~~Features~~Protection", Integer.toString(random.nextInt(2)));
+        append(builder, "C~~Storage~~" + (random.nextBoolean() ? "MySQL" : "SQLite"), "1");
+        return bytes(builder.toString());
+    }
+
+    /**
+     * Create a modern JSON report
+     *
+     * @param guid
+     * @param random
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public static byte[] modern(String guid, Random random) {
+        JSONObject features = new JSONObject();
+        features.put("Economy", 1);
+        features.put("Protection", random.nextInt(2));
+
+        JSONObject storage = new JSONObject();
+        storage.put(random.nextBoolean() ? "MySQL" : "SQLite", 1);
+
+        JSONObject graphs = new JSONObject();
+        graphs.put("Features", features);
+        graphs.put("Storage", storage);
+
+        JSONObject report = new JSONObject();
+        report.put("guid", guid);
+        report.put("plugin_version", BenchmarkEnvironment.pick(random, BenchmarkEnvironment.PLUGIN_VERSIONS));
+        report.put("server_version", BenchmarkEnvironment.pick(random, BenchmarkEnvironment.SERVER_VERSIONS));
+        report.put("players_online", random.nextInt(100));
+        report.put("osname", BenchmarkEnvironment.pick(random, BenchmarkEnvironment.OS_NAMES));
+        report.put("osarch", BenchmarkEnvironment.pick(random, BenchmarkEnvironment.OS_ARCHS));
+        report.put("osversion", BenchmarkEnvironment.pick(random, BenchmarkEnvironment.OS_VERSIONS));
+        report.put("cores", 1 << random.nextInt(4));
+        report.put("auth_mode", random.nextInt(2));
+        report.put("java_version", BenchmarkEnvironment.pick(random, BenchmarkEnvironment.JAVA_VERSIONS));
+        report.put("graphs", graphs);
+        return bytes(report.toJSONString());
+    }
+
+    /**
+     * Gzip a body
+     *
+     * @param body
+     * @return
+     */
+    public static byte[] gzip(byte[] body) {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            GZIPOutputStream gzip = new GZIPOutputStream(out);
+            gzip.write(body);
+            gzip.close();
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Append a form encoded pair
+     *
+     * @param builder
+     * @param key
+     * @param value
+     */
+    private static void append(StringBuilder builder, String key, String value) {
+        if (builder.length() > 0) {
+            builder.append('&');
+        }
+
+        try {
+            builder.append(URLEncoder.encode(key, "UTF-8")).append('=').append(URLEncoder.encode(value, "UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        try {
+            return value.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
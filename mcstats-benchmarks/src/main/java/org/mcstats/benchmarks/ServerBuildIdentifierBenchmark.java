@@ -0,0 +1,70 @@
+package org.mcstats.benchmarks;
+
+import org.mcstats.util.ServerBuildIdentifier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Identifying server software from a server version string, for strings already in the
+ * identifier's cache and for strings it has never seen
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServerBuildIdentifierBenchmark {
+
+    private ServerBuildIdentifier identifier;
+
+    /**
+     * Versions that are always cached
+     */
+    private String[] cached;
+
+    private int next = 0;
+
+    /**
+     * Unique suffix for versions that miss the cache
+     */
+    private long unique = 0;
+
+    @Setup
+    public void setup() {
+        identifier = new ServerBuildIdentifier(new File(System.getProperty("mcstats.definitions", "server-definitions.txt")));
+        cached = BenchmarkEnvironment.SERVER_VERSIONS;
+
+        for (String version : cached) {
+            identifier.getServerVersion(version);
+        }
+    }
+
+    @Benchmark
+    public String getServerVersionHit() {
+        return identifier.getServerVersion(cached[next++ % cached.length]);
+    }
+
+    @Benchmark
+    public String getServerVersionMiss() {
+        // unknown builds are matched against every definition before resolving to the default
+        return identifier.getServerVersion("git-Unknown-" + (unique++) + " (MC: 1.6.4)");
+    }
+
+    @Benchmark
+    public String getMinecraftVersion() {
+        return identifier.getMinecraftVersion(cached[next++ % cached.length]);
+    }
+
+}
@@ -4,6 +4,7 @@ import org.apache.log4j.Logger;
 import org.mcstats.model.Plugin;
 import org.mcstats.model.Server;
 import org.mcstats.db.Savable;
+import org.mcstats.metrics.Stage;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -11,6 +12,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
 
 public class DatabaseQueue {
 
@@ -46,17 +48,35 @@ public class DatabaseQueue {
      */
     private int maxSize = 500000;
 
+    /**
+     * Bounds concurrent saves when the workers are virtual threads, otherwise null. The queue has
+     * its own permits so it keeps saving however much report work is waiting.
+     */
+    private final Semaphore permits;
+
     public DatabaseQueue(MCStats mcstats) {
         this.mcstats = mcstats;
         workerCount = Integer.parseInt(mcstats.getConfig().getProperty("queue.workers"));
         flushesPerRound = Integer.parseInt(mcstats.getConfig().getProperty("queue.flushes"));
         maxSize = Integer.parseInt(mcstats.getConfig().getProperty("queue.maxSize"));
 
+        if (mcstats.isVirtualThreads()) {
+            permits = new Semaphore(Integer.parseInt(mcstats.getConfig().getProperty("threads.virtual.queuePermits", "10")), true);
+        } else {
+            permits = null;
+        }
+
         // Create workers
         for (int i = 0; i < workerCount; i++) {
             QueueWorker worker = new QueueWorker(i + 1);
             workers.add(worker);
-            new Thread(worker, "DatabaseQueue Worker #" + worker.getId()).start();
+
+            if (mcstats.isVirtualThreads()) {
+                Thread.ofVirtual().name("DatabaseQueue Worker #" + worker.getId()).start(worker);
+            } else {
+                new Thread(worker, "DatabaseQueue Worker #" + worker.getId()).start();
+            }
+
             logger.info("Started DatabaseQueue Worker #" + worker.getId());
         }
     }
@@ -150,12 +170,24 @@ public class DatabaseQueue {
                 long start = System.currentTimeMillis();
                 Savable savable;
                 while ((savable = queue.poll()) != null) {
+                    if (permits != null) {
+                        permits.acquireUninterruptibly();
+                    }
+
+                    long started = System.nanoTime();
+
                     try {
                         savable.saveNow();
                         flushed++;
                     } catch (Exception e) {
                         // Fallback gracefully so we don't exit the thread
                         e.printStackTrace();
+                    } finally {
+                        mcstats.getMetrics().recorder(Stage.DATABASE_SAVE).recordSince(started);
+
+                        if (permits != null) {
+                            permits.release();
+                        }
                     }
 
                     if (flushed >= flushesPerRound) {
@@ -0,0 +1,565 @@
+package org.mcstats;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.log4j.Logger;
+import org.mcstats.db.Database;
+import org.mcstats.db.IdAllocator;
+import org.mcstats.model.Column;
+import org.mcstats.model.Graph;
+import org.mcstats.model.Plugin;
+import org.mcstats.model.Server;
+import org.mcstats.model.ServerPlugin;
+
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Creates new plugins, graphs and columns without waiting on the database. Each entity is given
+ * an id from a block reserved in the database (see id-sequence.sql) and returned straight away;
+ * its insert is queued and run in the background, retrying with backoff while the database is
+ * unavailable. A failed insert is scheduled again rather than waited on, so only the inserts of
+ * what was created under it (a graph under its plugin, a column under its graph, a server's use
+ * of a new plugin) are held back until it succeeds. When no reserved id is available the entity
+ * is inserted straight away and numbered by the table instead.
+ *
+ * An insert that fails for good (the name was created by another writer, or the database stayed
+ * unavailable) leaves an entity cached under an id with no row. It is evicted and loaded again by
+ * name, and whatever was created under it is dropped and evicted along with it.
+ */
+public class EntityCreator implements Runnable {
+
+    private Logger logger = Logger.getLogger("EntityCreator");
+
+    /**
+     * The longest to wait between attempts at an insert, in milliseconds
+     */
+    private static final long MAX_BACKOFF = 60000;
+
+    private final MCStats mcstats;
+
+    private final IdAllocator pluginIds;
+
+    private final IdAllocator graphIds;
+
+    private final IdAllocator columnIds;
+
+    /**
+     * Reserves id blocks in the background
+     */
+    private final ExecutorService reserver;
+
+    /**
+     * Inserts waiting to run, in the order they are due
+     */
+    private final DelayQueue<Insert> queue = new DelayQueue<Insert>();
+
+    /**
+     * Entities that have been created but not inserted yet
+     */
+    private final Set<Object> pending = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+
+    /**
+     * Inserts held back until the entity they belong to is inserted, keyed by that entity. Only
+     * used by the insert thread.
+     */
+    private final Map<Object, List<Insert>> waiting = new HashMap<Object, List<Insert>>();
+
+    /**
+     * Orders inserts that are due at the same time
+     */
+    private final AtomicLong sequence = new AtomicLong(0);
+
+    /**
+     * The number of attempts before an insert is given up on
+     */
+    private final int maxAttempts;
+
+    /**
+     * The number of entities inserted
+     */
+    private final AtomicLong inserted = new AtomicLong(0);
+
+    /**
+     * The number of failed attempts that were retried
+     */
+    private final AtomicLong retried = new AtomicLong(0);
+
+    /**
+     * The number of inserts given up on
+     */
+    private final AtomicLong failed = new AtomicLong(0);
+
+    /**
+     * Entities whose inserts were dropped, so inserts of what was created under them are dropped
+     * too. Something is only created under a dropped entity by a request that loaded it just
+     * before it was evicted, so they are only remembered for a while.
+     */
+    private final Cache<Object, Boolean> dropped = CacheBuilder.newBuilder()
+            .maximumSize(10000)
+            .expireAfterWrite(1, TimeUnit.HOURS)
+            .build();
+
+    public EntityCreator(MCStats mcstats) {
+        this.mcstats = mcstats;
+
+        int blockSize = Integer.parseInt(mcstats.getConfig().getProperty("creation.idBlockSize", "100"));
+        maxAttempts = Integer.parseInt(mcstats.getConfig().getProperty("creation.maxAttempts", "10"));
+
+        reserver = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "EntityCreator IdReserver");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        Database database = mcstats.getDatabase();
+        pluginIds = new IdAllocator(database, "Plugin", blockSize, reserver);
+        graphIds = new IdAllocator(database, "Graph", blockSize, reserver);
+        columnIds = new IdAllocator(database, "CustomColumn", blockSize, reserver);
+    }
+
+    /**
+     * Reserve the first id blocks and start inserting in the background
+     */
+    public void start() {
+        for (IdAllocator allocator : new IdAllocator[] { pluginIds, graphIds, columnIds }) {
+            try {
+                allocator.reserveNow();
+            } catch (SQLException e) {
+                // they will be reserved in the background when first needed
+                logger.error("Failed to reserve ids for " + allocator.getTable(), e);
+            }
+        }
+
+        Thread thread = new Thread(this, "EntityCreator");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Create a plugin
+     *
+     * @param name
+     * @return the plugin, or null if it could not be created
+     */
+    public Plugin createPlugin(String name) {
+        int id = pluginIds.next();
+
+        if (id == -1) {
+            // no reserved id, so the table numbers it and the caller waits for the insert
+            return mcstats.getDatabase().createPlugin(name);
+        }
+
+        final Plugin plugin = new Plugin(mcstats);
+        plugin.setId(id);
+        plugin.setParent(-1);
+        plugin.setName(name);
+        plugin.setAuthors("");
+        plugin.setHidden(0);
+        plugin.setGlobalHits(0);
+        plugin.setCreated((int) (System.currentTimeMillis() / 1000L));
+        plugin.setModified(false);
+
+        submit(new Insert("plugin " + name, plugin, null) {
+            void run(Database database) throws SQLException {
+                database.insertPlugin(plugin);
+            }
+
+            void evict() {
+                mcstats.evictPlugin(plugin);
+            }
+
+            void reload() {
+                mcstats.reloadPlugin(plugin.getName());
+            }
+        });
+
+        return plugin;
+    }
+
+    /**
+     * Create a graph
+     *
+     * @param plugin
+     * @param name
+     * @return the graph, or null if it could not be created
+     */
+    public Graph createGraph(final Plugin plugin, String name) {
+        int id = graphIds.next();
+
+        if (id == -1) {
+            Graph created = mcstats.getDatabase().createGraph(plugin, name);
+
+            if (created != null) {
+                created.markColumnsLoaded();
+            }
+
+            return created;
+        }
+
+        final Graph graph = new Graph(mcstats, plugin);
+        graph.setId(id);
+        graph.markColumnsLoaded();
+        graph.setType(0); // line
+        graph.setActive(0);
+        graph.setName(name);
+        graph.setDisplayName(name);
+        graph.setScale("linear");
+
+        submit(new Insert("graph " + plugin.getName() + "/" + name, graph, plugin) {
+            void run(Database database) throws SQLException {
+                database.insertGraph(graph);
+            }
+
+            void evict() {
+                plugin.removeGraph(graph);
+            }
+
+            void reload() {
+                mcstats.reloadGraph(plugin, graph.getName());
+            }
+        });
+
+        return graph;
+    }
+
+    /**
+     * Create a column
+     *
+     * @param graph
+     * @param name
+     * @return the column, or null if the name is too long or it could not be created
+     */
+    public Column createColumn(final Graph graph, String name) {
+        if (name.length() > 100) {
+            return null;
+        }
+
+        int id = columnIds.next();
+
+        if (id == -1) {
+            return mcstats.getDatabase().createColumn(graph, name);
+        }
+
+        final Column column = new Column(mcstats, graph, graph.getPlugin());
+        column.setId(id);
+        column.setName(name);
+
+        submit(new Insert("column " + graph.getName() + "/" + name, column, graph) {
+            void run(Database database) throws SQLException {
+                database.insertColumn(column);
+            }
+
+            void evict() {
+                graph.evictColumn(column);
+            }
+
+            void reload() {
+                graph.reloadColumn(column.getName());
+            }
+        });
+
+        return column;
+    }
+
+    /**
+     * Create a server's use of a plugin that has not been inserted yet. It is cached straight
+     * away and inserted once the plugin is.
+     *
+     * @param server
+     * @param plugin
+     * @param version
+     * @return
+     */
+    public ServerPlugin createServerPlugin(final Server server, final Plugin plugin, String version) {
+        final ServerPlugin serverPlugin = new ServerPlugin(mcstats, server, plugin);
+        serverPlugin.setVersion(version);
+        serverPlugin.setUpdated((int) (System.currentTimeMillis() / 1000L));
+        serverPlugin.setModified(false);
+
+        submit(new Insert("server plugin " + server.getId() + "/" + plugin.getName(), serverPlugin, plugin) {
+            void run(Database database) throws SQLException {
+                database.insertServerPlugin(serverPlugin);
+            }
+
+            void evict() {
+                server.removePlugin(serverPlugin);
+            }
+
+            void reload() {
+                // the server loads it again when it next reports
+            }
+        });
+
+        return serverPlugin;
+    }
+
+    /**
+     * Check if an entity was created but has not been inserted yet
+     *
+     * @param entity
+     * @return
+     */
+    public boolean isPending(Object entity) {
+        return pending.contains(entity);
+    }
+
+    /**
+     * Get the number of entities waiting to be inserted
+     *
+     * @return
+     */
+    public int getPending() {
+        return pending.size();
+    }
+
+    public long getInserted() {
+        return inserted.get();
+    }
+
+    public long getRetried() {
+        return retried.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * Get the number of creations that failed because no id was available
+     *
+     * @return
+     */
+    public long getIdsExhausted() {
+        return pluginIds.getExhausted() + graphIds.getExhausted() + columnIds.getExhausted();
+    }
+
+    /**
+     * Queue an insert to run straight away
+     *
+     * @param insert
+     */
+    private void submit(Insert insert) {
+        pending.add(insert.entity);
+        insert.schedule(0, sequence.incrementAndGet());
+        queue.offer(insert);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void run() {
+        while (true) {
+            Insert insert;
+
+            try {
+                insert = queue.take();
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            persist(insert);
+        }
+    }
+
+    /**
+     * Run an insert once. If it fails it is scheduled again with backoff until it runs out of
+     * attempts.
+     *
+     * @param insert
+     */
+    private void persist(Insert insert) {
+        if (insert.owner != null && dropped.getIfPresent(insert.owner) != null) {
+            // what it belongs to has no row; it is created again under the reloaded owner when next reported
+            logger.warn("Dropping " + insert.description + ", what it belongs to was not inserted");
+            drop(insert, false);
+            return;
+        }
+
+        if (insert.owner != null && pending.contains(insert.owner)) {
+            // run once what it belongs to has been inserted
+            List<Insert> inserts = waiting.get(insert.owner);
+
+            if (inserts == null) {
+                inserts = new ArrayList<Insert>();
+                waiting.put(insert.owner, inserts);
+            }
+
+            inserts.add(insert);
+            return;
+        }
+
+        insert.attempts ++;
+
+        try {
+            insert.run(mcstats.getDatabase());
+            inserted.incrementAndGet();
+            pending.remove(insert.entity);
+
+            List<Insert> released = waiting.remove(insert.entity);
+
+            if (released != null) {
+                for (Insert dependent : released) {
+                    dependent.schedule(0, sequence.incrementAndGet());
+                    queue.offer(dependent);
+                }
+            }
+        } catch (SQLIntegrityConstraintViolationException e) {
+            // the row already exists, so retrying cannot help
+            logger.error("Failed to insert " + insert.description + ", reloading it: " + e.getMessage());
+            drop(insert, true);
+        } catch (SQLException e) {
+            if (insert.attempts >= maxAttempts) {
+                logger.error("Giving up on inserting " + insert.description + " after " + insert.attempts + " attempts, reloading it", e);
+                drop(insert, true);
+                return;
+            }
+
+            retried.incrementAndGet();
+            logger.warn("Failed to insert " + insert.description + ", retrying in " + insert.backoff + "ms: " + e.getMessage());
+            insert.schedule(insert.backoff, sequence.incrementAndGet());
+            insert.backoff = Math.min(insert.backoff * 2, MAX_BACKOFF);
+            queue.offer(insert);
+        }
+    }
+
+    /**
+     * Give up on an insert, evicting its entity from the caches along with anything held back
+     * waiting for it
+     *
+     * @param insert
+     * @param reload if the entity should be loaded again by name
+     */
+    private void drop(Insert insert, boolean reload) {
+        failed.incrementAndGet();
+        dropped.put(insert.entity, Boolean.TRUE);
+        pending.remove(insert.entity);
+        insert.evict();
+
+        List<Insert> dependents = waiting.remove(insert.entity);
+
+        if (dependents != null) {
+            for (Insert dependent : dependents) {
+                logger.warn("Dropping " + dependent.description + ", what it belongs to was not inserted");
+                drop(dependent, false);
+            }
+        }
+
+        if (reload) {
+            try {
+                insert.reload();
+            } catch (RuntimeException e) {
+                // it is loaded again when it is next reported
+                logger.error("Failed to reload " + insert.description, e);
+            }
+        }
+    }
+
+    /**
+     * An insert waiting to run
+     */
+    private abstract static class Insert implements Delayed {
+
+        /**
+         * What is being inserted, for logging
+         */
+        private final String description;
+
+        /**
+         * The entity being inserted
+         */
+        private final Object entity;
+
+        /**
+         * The entity it belongs to, or null
+         */
+        private final Object owner;
+
+        /**
+         * The number of times it has been run
+         */
+        private int attempts = 0;
+
+        /**
+         * How long to wait after the next failure, in milliseconds
+         */
+        private long backoff = 1000;
+
+        /**
+         * When it is due to run, from {@link System#nanoTime()}
+         */
+        private long due;
+
+        /**
+         * Orders inserts due at the same time
+         */
+        private long order;
+
+        Insert(String description, Object entity, Object owner) {
+            this.description = description;
+            this.entity = entity;
+            this.owner = owner;
+        }
+
+        /**
+         * Schedule the next attempt
+         *
+         * @param delay milliseconds from now
+         * @param order
+         */
+        void schedule(long delay, long order) {
+            due = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+            this.order = order;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(due - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public int compareTo(Delayed o) {
+            Insert other = (Insert) o;
+
+            if (due != other.due) {
+                return due - other.due < 0 ? -1 : 1;
+            }
+
+            return order < other.order ? -1 : (order == other.order ? 0 : 1);
+        }
+
+        abstract void run(Database database) throws SQLException;
+
+        /**
+         * Remove the entity from the caches
+         */
+        abstract void evict();
+
+        /**
+         * Load the entity again by name, creating it if there is still no row
+         */
+        abstract void reload();
+
+    }
+
+}
@@ -2,42 +2,66 @@ package org.mcstats;
 
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
 import com.google.common.cache.LoadingCache;
-import com.google.common.collect.Sets;
 import it.sauronsoftware.cron4j.Scheduler;
 import org.apache.log4j.Logger;
+import org.apache.tomcat.InstanceManager;
+import org.apache.tomcat.SimpleInstanceManager;
+import org.eclipse.jetty.annotations.ServletContainerInitializersStarter;
+import org.eclipse.jetty.apache.jsp.JettyJasperInitializer;
+import org.eclipse.jetty.plus.annotation.ContainerInitializer;
 import org.eclipse.jetty.server.Connector;
 import org.eclipse.jetty.server.Handler;
 import org.eclipse.jetty.server.ServerConnector;
 import org.eclipse.jetty.server.handler.HandlerList;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.eclipse.jetty.webapp.WebAppContext;
+import org.mcstats.cache.ActivityIndex;
+import org.mcstats.cache.DenyList;
+import org.mcstats.cache.KnownServers;
 import org.mcstats.cron.MainlineGraphs;
 import org.mcstats.db.GraphStore;
+import org.mcstats.db.InMemoryDatabase;
+import org.mcstats.db.InMemoryGraphStore;
 import org.mcstats.db.MongoDBGraphStore;
 import org.mcstats.handler.BlackholeHandler;
+import org.mcstats.handler.KeepAlivePolicy;
+import org.mcstats.handler.MetricsHandler;
 import org.mcstats.handler.ReportHandler;
+import org.mcstats.ingest.IngestServer;
+import org.mcstats.metrics.GenerationProfiler;
+import org.mcstats.metrics.Metrics;
+import org.mcstats.metrics.Stage;
 import org.mcstats.model.Column;
 import org.mcstats.model.Graph;
 import org.mcstats.model.Plugin;
 import org.mcstats.model.PluginVersion;
 import org.mcstats.model.Server;
 import org.mcstats.model.ServerPlugin;
+import org.mcstats.model.ServerTable;
 import org.mcstats.db.Database;
 import org.mcstats.db.MySQLDatabase;
+import org.mcstats.db.SimulatedLatency;
+import org.mcstats.decoder.PlatformNormalizer;
 import org.mcstats.util.RequestCalculator;
 import org.mcstats.util.ServerBuildIdentifier;
+import org.mcstats.util.SingleFlight;
+import org.mcstats.util.StringInterner;
+import org.mcstats.util.UniqueServerCounter;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
@@ -57,6 +81,16 @@ public class MCStats {
      */
     private org.eclipse.jetty.server.Server webServer;
 
+    /**
+     * All of the web servers, the report listener first
+     */
+    private final List<org.eclipse.jetty.server.Server> webServers = new ArrayList<org.eclipse.jetty.server.Server>();
+
+    /**
+     * The thread pool for each web server, by its name
+     */
+    private final Map<String, QueuedThreadPool> threadPools = new LinkedHashMap<String, QueuedThreadPool>();
+
     /**
      * The amount of requests that have been served
      */
@@ -85,7 +119,32 @@ public class MCStats {
     /**
      * The report handler for requests
      */
-    private ReportHandler handler = new ReportHandler(this);
+    private ReportHandler handler;
+
+    /**
+     * Latency recorders for the ingest stages
+     */
+    private final Metrics metrics = new Metrics();
+
+    /**
+     * Profiles graph generation runs
+     */
+    private GenerationProfiler generationProfiler;
+
+    /**
+     * The graph generator, or null if graphs are not generated on this instance
+     */
+    private MainlineGraphs graphGenerator = null;
+
+    /**
+     * The raw ingest server, or null if it is not enabled
+     */
+    private IngestServer ingestServer = null;
+
+    /**
+     * If background work runs on virtual threads
+     */
+    private boolean virtualThreads = false;
 
     /**
      * The server build identifier
@@ -107,15 +166,67 @@ public class MCStats {
      */
     private boolean debug = false;
 
+    /**
+     * Columnar storage for the attributes of all loaded servers
+     */
+    private ServerTable serverTable;
+
+    /**
+     * Canonical instances of low cardinality server attributes seen on decode
+     */
+    private StringInterner attributeInterner;
+
+    /**
+     * Creates plugins, graphs and columns without waiting on the database
+     */
+    private EntityCreator entityCreator;
+
+    /**
+     * Plugins and servers whose reports are turned away early
+     */
+    private DenyList denyList;
+
+    /**
+     * The guids of every server in the database
+     */
+    private KnownServers knownServers;
+
+    /**
+     * Normalizes the os and java attributes of reports
+     */
+    private PlatformNormalizer platformNormalizer;
+
     /**
      * A map of all of the currently loaded servers
      */
     private final LoadingCache<String, Server> servers = CacheBuilder.newBuilder()
             .maximumSize(400000) // 100k
+            .recordStats()
             .build(new CacheLoader<String, Server>() {
 
                 public Server load(String key) {
-                    Server server = database.loadServer(key);
+                    long started = System.nanoTime();
+
+                    try {
+                        return loadUncached(key);
+                    } finally {
+                        metrics.recorder(Stage.SERVER_CACHE_MISS).recordSince(started);
+                    }
+                }
+
+                /**
+                 * Load a server from the database, creating it if it does not exist
+                 *
+                 * @param key
+                 * @return
+                 */
+                private Server loadUncached(String key) {
+                    Server server = null;
+
+                    // a server that was never seen before cannot be in the database
+                    if (!knownServers.isDefinitelyNew(key)) {
+                        server = database.loadServer(key);
+                    }
 
                     if (server == null) {
                         server = database.createServer(key);
@@ -126,6 +237,8 @@ public class MCStats {
                         return null;
                     }
 
+                    knownServers.add(key);
+
                     // Now load the plugins
                     for (ServerPlugin serverPlugin : database.loadServerPlugins(server)) {
                         server.addPlugin(serverPlugin);
@@ -140,6 +253,22 @@ public class MCStats {
 
             });
 
+    /**
+     * Plugins being loaded by name, keyed by the lower case name
+     */
+    private final SingleFlight<String, Plugin> pluginLoads = new SingleFlight<String, Plugin>();
+
+    /**
+     * Graphs being loaded, keyed by plugin id and lower case name
+     */
+    private final SingleFlight<String, Graph> graphLoads = new SingleFlight<String, Graph>();
+
+    /**
+     * If every plugin in the database has been cached, so a plugin name that is not cached is new.
+     * A cached plugin always has all of its graphs cached as well.
+     */
+    private volatile boolean pluginsLoaded = false;
+
     /**
      * A map of all of the currently loaded pluginsByName, by the plugin's name
      */
@@ -156,9 +285,24 @@ public class MCStats {
     private final Map<String, String> countries = new ConcurrentHashMap<String, String>();
 
     /**
-     * Cache of server plugins mapped by their plugins
+     * Index of the servers and server plugins that recently sent data
+     */
+    private final ActivityIndex activityIndex = new ActivityIndex();
+
+    /**
+     * Unique server counters for each plugin
      */
-    private final Map<Plugin, Set<ServerPlugin>> serverPluginsByPlugin = new ConcurrentHashMap<Plugin, Set<ServerPlugin>>();
+    private final ConcurrentHashMap<Plugin, UniqueServerCounter> serverCounters = new ConcurrentHashMap<Plugin, UniqueServerCounter>();
+
+    /**
+     * Unique server counter for all servers
+     */
+    private UniqueServerCounter globalServerCounter;
+
+    /**
+     * The precision used for unique server counters
+     */
+    private int serverCounterPrecision = 12;
 
     private MCStats() {
         // create the request callable
@@ -185,26 +329,86 @@ public class MCStats {
             return;
         }
 
+        configure();
+
+        // Connect to the database
+        connectToDatabase();
+
+        loadData();
+
+        // Create & open the webserver
+        createWebServer();
+    }
+
+    /**
+     * Start the backend against the given database and graph store without opening the web servers
+     * or scheduling graph generation, e.g. for benchmarks
+     *
+     * @param config
+     * @param database
+     * @param graphStore
+     */
+    public void startEmbedded(Properties config, Database database, GraphStore graphStore) {
+        this.config = config;
+        configure();
+
+        this.database = database;
+        this.graphStore = graphStore;
+
+        loadData();
+    }
+
+    /**
+     * Set up everything that only depends on the config
+     */
+    private void configure() {
         debug = config.getProperty("debug").equalsIgnoreCase("true");
 
         logger.info("Starting MCStats");
         logger.info("Debug mode is " + (debug ? "ON" : "OFF"));
 
+        serverCounterPrecision = Integer.parseInt(config.getProperty("sketch.precision", "12"));
+        globalServerCounter = new UniqueServerCounter(serverCounterPrecision);
+        serverTable = new ServerTable(Integer.parseInt(config.getProperty("dictionary.maxSize", "100000")));
+        attributeInterner = new StringInterner(Integer.parseInt(config.getProperty("interner.maxSize", "50000")));
+        platformNormalizer = new PlatformNormalizer(Integer.parseInt(config.getProperty("normalizer.maxSize", "10000")), attributeInterner);
+
+        denyList = new DenyList(new File(DenyList.DENY_LIST_FILE),
+                Integer.parseInt(config.getProperty("denylist.rejectedTtl", "300")),
+                Integer.parseInt(config.getProperty("denylist.maxRejected", "100000")));
+
+        knownServers = new KnownServers(new File(config.getProperty("knownservers.file", "known-servers.bloom")),
+                Long.parseLong(config.getProperty("knownservers.expected", "20000000")),
+                Double.parseDouble(config.getProperty("knownservers.falsePositiveRate", "0.01")));
+
+        generationProfiler = new GenerationProfiler(Integer.parseInt(config.getProperty("generation.profiler.history", "48")));
+
+        virtualThreads = Boolean.parseBoolean(config.getProperty("threads.virtual", "false"));
+
+        if (virtualThreads) {
+            logger.info("Background work is running on virtual threads");
+        }
+
         databaseQueue = new DatabaseQueue(this);
+        handler = new ReportHandler(this);
+    }
 
-        // Connect to the database
-        connectToDatabase();
+    /**
+     * Load the countries, plugins and graphs from the database
+     */
+    private void loadData() {
+        entityCreator = new EntityCreator(this);
+        entityCreator.start();
+
+        knownServers.load(database);
 
         countries.putAll(database.loadCountries());
         logger.info("Loaded " + countries.size() + " countries");
 
-        graphStore = new MongoDBGraphStore(this);
-
         // Load all of the pluginsByName
         for (Plugin plugin : database.loadPlugins()) {
             if (plugin.getId() >= 0) {
                 addPlugin(plugin);
-                serverPluginsByPlugin.put(plugin, Sets.newSetFromMap(new ConcurrentHashMap<ServerPlugin, Boolean>()));
             }
         }
 
@@ -212,16 +416,11 @@ public class MCStats {
 
         int numGraphs = 0;
         for (Plugin plugin : pluginsByName.values()) {
-            for (Graph graph : database.loadGraphs(plugin)) {
-                plugin.addGraph(graph);
-                numGraphs ++;
-            }
+            numGraphs += loadGraphs(plugin);
         }
 
         logger.info("Loaded " + numGraphs + " graphs");
-
-        // Create & open the webserver
-        createWebServer();
+        pluginsLoaded = true;
     }
 
     /**
@@ -242,6 +441,51 @@ public class MCStats {
         return debug;
     }
 
+    /**
+     * Get the profiler for graph generation runs
+     *
+     * @return
+     */
+    public GenerationProfiler getGenerationProfiler() {
+        return generationProfiler;
+    }
+
+    /**
+     * Get the graph generator
+     *
+     * @return the graph generator, or null if graphs are not generated on this instance
+     */
+    public MainlineGraphs getGraphGenerator() {
+        return graphGenerator;
+    }
+
+    /**
+     * Get the latency recorders for the ingest stages
+     *
+     * @return
+     */
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Get the raw ingest server
+     *
+     * @return the ingest server, or null if it is not enabled
+     */
+    public IngestServer getIngestServer() {
+        return ingestServer;
+    }
+
+    /**
+     * Check if background work runs on virtual threads
+     *
+     * @return
+     */
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
     /**
      * Get the shortcode for a country
      *
@@ -261,6 +505,24 @@ public class MCStats {
         return Collections.unmodifiableList(new ArrayList<Server>(servers.asMap().values()));
     }
 
+    /**
+     * Get the number of cached servers without copying the cache
+     *
+     * @return
+     */
+    public long getCachedServerCount() {
+        return servers.size();
+    }
+
+    /**
+     * Get the hit and load statistics of the server cache
+     *
+     * @return
+     */
+    public CacheStats getServerCacheStats() {
+        return servers.stats();
+    }
+
     /**
      * Get an unmodifiable list of the cached plugins
      *
@@ -271,17 +533,44 @@ public class MCStats {
     }
 
     /**
-     * Get the server plugins for a given plugin
+     * Get the number of cached plugins without copying them
+     *
+     * @return
+     */
+    public int getCachedPluginCount() {
+        return pluginsById.size();
+    }
+
+    /**
+     * Get the server plugins for a given plugin that sent data in the current or previous graphing interval
      *
      * @param plugin
      * @return
      */
     public Set<ServerPlugin> getServerPlugins(Plugin plugin) {
-        return serverPluginsByPlugin.containsKey(plugin) ? serverPluginsByPlugin.get(plugin) : new HashSet<ServerPlugin>();
+        return activityIndex.getServerPlugins(plugin);
+    }
+
+    /**
+     * Get the servers that sent data in the current or previous graphing interval
+     *
+     * @return
+     */
+    public Set<Server> getActiveServers() {
+        return activityIndex.getServers();
     }
 
     /**
-     * Notify an addition of server plugin
+     * Get the number of servers that sent data in the current graphing interval
+     *
+     * @return
+     */
+    public int getActiveServerCount() {
+        return activityIndex.countServers();
+    }
+
+    /**
+     * Notify that a server plugin has sent data
      *
      * @param serverPlugin
      */
@@ -290,14 +579,46 @@ public class MCStats {
             return;
         }
 
-        Set<ServerPlugin> serverPlugins = serverPluginsByPlugin.get(serverPlugin.getPlugin());
+        activityIndex.touch(serverPlugin);
+    }
+
+    /**
+     * Get the unique server counter for a plugin, creating it if necessary
+     *
+     * @param plugin
+     * @return
+     */
+    public UniqueServerCounter getServerCounter(Plugin plugin) {
+        UniqueServerCounter counter = serverCounters.get(plugin);
+
+        if (counter == null) {
+            counter = new UniqueServerCounter(serverCounterPrecision);
+            UniqueServerCounter existing = serverCounters.putIfAbsent(plugin, counter);
 
-        if (serverPlugins == null) {
-            serverPlugins = Sets.newSetFromMap(new ConcurrentHashMap<ServerPlugin, Boolean>());
-            serverPluginsByPlugin.put(serverPlugin.getPlugin(), serverPlugins);
+            if (existing != null) {
+                counter = existing;
+            }
         }
 
-        serverPlugins.add(serverPlugin);
+        return counter;
+    }
+
+    /**
+     * Get the unique server counter for all servers
+     *
+     * @return
+     */
+    public UniqueServerCounter getGlobalServerCounter() {
+        return globalServerCounter;
+    }
+
+    /**
+     * Get the amount of requests served on the server
+     *
+     * @return
+     */
+    public long getRequests() {
+        return requests.get();
     }
 
     /**
@@ -347,26 +668,35 @@ public class MCStats {
      * @param name
      * @return
      */
-    public Graph loadGraph(Plugin plugin, String name) {
+    public Graph loadGraph(final Plugin plugin, final String name) {
         Graph graph = plugin.getGraph(name);
 
         if (graph != null) {
             return graph;
         }
 
-        graph = database.loadGraph(plugin, name);
+        // only one request loads a given graph, the rest wait for it
+        return graphLoads.load(plugin.getId() + "/" + name.toLowerCase(), new Callable<Graph>() {
+            public Graph call() {
+                // another request may have created it while we waited
+                Graph graph = plugin.getGraph(name);
 
-        if (graph == null) {
-            graph = database.createGraph(plugin, name);
-        }
+                if (graph != null) {
+                    return graph;
+                }
 
-        if (graph == null) {
-            logger.error("Failed to create graph for " + plugin.getName() + ", \"" + name + "\"");
-            return null;
-        }
+                // a cached plugin has all of its graphs cached, so this one is new and is inserted in the background
+                graph = entityCreator.createGraph(plugin, name);
 
-        plugin.addGraph(graph);
-        return graph;
+                if (graph == null) {
+                    logger.error("Failed to create graph for " + plugin.getName() + ", \"" + name + "\"");
+                    return null;
+                }
+
+                plugin.addGraph(graph);
+                return graph;
+            }
+        });
     }
 
     /**
@@ -385,12 +715,17 @@ public class MCStats {
             return serverPlugin;
         }
 
-        // attempt to load the plugin
-        serverPlugin = database.loadServerPlugin(server, plugin);
+        if (entityCreator.isPending(plugin)) {
+            // the plugin has no row yet so neither can this; it is inserted once the plugin is
+            serverPlugin = entityCreator.createServerPlugin(server, plugin, version);
+        } else {
+            // attempt to load the plugin
+            serverPlugin = database.loadServerPlugin(server, plugin);
 
-        if (serverPlugin == null) {
-            // we just need to create it
-            serverPlugin = database.createServerPlugin(server, plugin, version);
+            if (serverPlugin == null) {
+                // we just need to create it
+                serverPlugin = database.createServerPlugin(server, plugin, version);
+            }
         }
 
         // now cache it
@@ -417,29 +752,7 @@ public class MCStats {
             return null;
         }
 
-        // Check if the plugin is just a child
-        if (plugin.getParent() != -1) {
-            // Load the parent
-            Plugin parent = loadPlugin(plugin.getParent());
-
-            if (parent != null) {
-                // cache the child's plugin name via the parent
-                addPlugin(plugin.getName(), parent);
-            }
-
-            return parent;
-        }
-
-        // Load the versions
-        for (PluginVersion version : database.loadPluginVersions(plugin)) {
-            plugin.addVersion(version);
-        }
-
-        // Cache it
-        addPlugin(plugin);
-
-        // and go !
-        return plugin;
+        return cachePlugin(plugin);
     }
 
     /**
@@ -448,8 +761,8 @@ public class MCStats {
      * @param name
      * @return
      */
-    public Plugin loadPlugin(String name) {
-        String cacheKey = name.toLowerCase();
+    public Plugin loadPlugin(final String name) {
+        final String cacheKey = name.toLowerCase();
 
         if (pluginsByName.containsKey(cacheKey)) {
             return pluginsByName.get(cacheKey);
@@ -457,21 +770,88 @@ public class MCStats {
 
         logger.info("Plugin not cached: " + name);
 
-        // Attempt to load from the database
+        // only one request loads a given name, the rest wait for it
+        return pluginLoads.load(cacheKey, new Callable<Plugin>() {
+            public Plugin call() {
+                // another request may have created it while we waited
+                if (pluginsByName.containsKey(cacheKey)) {
+                    return pluginsByName.get(cacheKey);
+                }
+
+                // every plugin was cached at startup, so one that is not cached is new. If another writer created it
+                // since, inserting it fails on the name and it is reloaded from the database
+                Plugin plugin = pluginsLoaded ? null : database.loadPlugin(name);
+
+                // Did we not find it ?
+                if (plugin == null) {
+                    // inserted in the background, and new so it has no versions to load
+                    plugin = entityCreator.createPlugin(name);
+
+                    if (plugin == null) {
+                        logger.error("Failed to create plugin for \"" + name + "\"");
+                        return null;
+                    }
+
+                    addPlugin(plugin);
+                    return plugin;
+                }
+
+                return cachePlugin(plugin);
+            }
+        });
+    }
+
+    /**
+     * Load a plugin from the database by name, creating it again if it is not there
+     *
+     * @param name
+     * @return
+     */
+    public Plugin reloadPlugin(String name) {
         Plugin plugin = database.loadPlugin(name);
 
-        // Did we not find it ?
         if (plugin == null) {
-            plugin = database.createPlugin(name);
+            return loadPlugin(name);
         }
 
-        // is it _still_ null?
-        // if it is, we have some problems :(
-        if (plugin == null) {
-            logger.error("Failed to create plugin for \"" + name + "\"");
-            return null;
+        return cachePlugin(plugin);
+    }
+
+    /**
+     * Load a graph from the database by name, creating it again if it is not there
+     *
+     * @param plugin
+     * @param name
+     * @return
+     */
+    public Graph reloadGraph(Plugin plugin, String name) {
+        Graph graph = database.loadGraph(plugin, name);
+
+        if (graph == null) {
+            return loadGraph(plugin, name);
         }
 
+        plugin.addGraph(graph);
+        return graph;
+    }
+
+    /**
+     * Forget a plugin that could not be inserted so it is loaded again by name
+     *
+     * @param plugin
+     */
+    public void evictPlugin(Plugin plugin) {
+        pluginsByName.remove(plugin.getName().toLowerCase(), plugin);
+        pluginsById.remove(plugin.getId(), plugin);
+    }
+
+    /**
+     * Cache a plugin loaded from the database, or its parent if it is a child
+     *
+     * @param plugin
+     * @return the plugin that was cached
+     */
+    private Plugin cachePlugin(Plugin plugin) {
         // Check if the plugin is just a child
         if (plugin.getParent() != -1) {
             // Load the parent
@@ -490,6 +870,9 @@ public class MCStats {
             plugin.addVersion(version);
         }
 
+        // graphs are never looked up for a cached plugin, so all of them are cached with it
+        loadGraphs(plugin);
+
         // Cache it
         addPlugin(plugin);
 
@@ -497,6 +880,23 @@ public class MCStats {
         return plugin;
     }
 
+    /**
+     * Cache all of a plugin's graphs
+     *
+     * @param plugin
+     * @return the number of graphs loaded
+     */
+    private int loadGraphs(Plugin plugin) {
+        int loaded = 0;
+
+        for (Graph graph : database.loadGraphs(plugin)) {
+            plugin.addGraph(graph);
+            loaded ++;
+        }
+
+        return loaded;
+    }
+
     /**
      * Load a server and if it does not exist it will be created
      *
@@ -512,6 +912,15 @@ public class MCStats {
         }
     }
 
+    /**
+     * Get the thread pools of the web servers, by name
+     *
+     * @return
+     */
+    public Map<String, QueuedThreadPool> getThreadPools() {
+        return Collections.unmodifiableMap(threadPools);
+    }
+
     /**
      * Get the number of currently open connections
      *
@@ -520,20 +929,26 @@ public class MCStats {
     public int countOpenConnections() {
         int conn = 0;
 
-        for (Connector connector : webServer.getConnectors()) {
-            conn += connector.getConnectedEndPoints().size();
+        for (org.eclipse.jetty.server.Server server : webServers) {
+            for (Connector connector : server.getConnectors()) {
+                conn += connector.getConnectedEndPoints().size();
+            }
+        }
+
+        if (ingestServer != null) {
+            conn += ingestServer.getOpenConnections();
         }
 
         return conn;
     }
 
     /**
-     * Create and open the web server
+     * Create and open the web servers
      */
     private void createWebServer() {
         int listenPort = Integer.parseInt(config.getProperty("listen.port"));
         int blackholePort = Integer.parseInt(config.getProperty("blackhole.port"));
-        webServer = new org.eclipse.jetty.server.Server();
+        int webappPort = Integer.parseInt(config.getProperty("webapp.port", Integer.toString(listenPort)));
 
         String webApp = config.getProperty("webapp.path");
         String contextPath = config.getProperty("webapp.context");
@@ -545,28 +960,73 @@ public class MCStats {
         URL warURL = getClass().getClassLoader().getResource(webApp);
         WebAppContext webAppContext = new WebAppContext(warURL.toExternalForm(), contextPath);
 
-        // Create the handler list
-        HandlerList handlers = new HandlerList();
-        handlers.setHandlers(new Handler[] { handler , webAppContext });
+        // Jasper is started directly rather than found by scanning the classpath for initializers
+        webAppContext.setAttribute("org.eclipse.jetty.containerInitializers", Collections.singletonList(new ContainerInitializer(new JettyJasperInitializer(), null)));
+        webAppContext.setAttribute(InstanceManager.class.getName(), new SimpleInstanceManager());
+        webAppContext.addBean(new ServletContainerInitializersStarter(webAppContext), true);
 
-        webServer.setHandler(handlers);
+        // status.jsp shows the web servers' thread pools
+        webAppContext.prependServerClass("-org.eclipse.jetty.util.thread.");
 
-        ServerConnector connector = new ServerConnector(webServer, 2, 2);
-        connector.setPort(listenPort);
-        connector.setAcceptQueueSize(1024);
-        connector.setSoLingerTime(0);
-        webServer.addConnector(connector);
+        // Keep-alive is opt-in, otherwise every connection is closed after its report
+        boolean keepAlive = Boolean.parseBoolean(config.getProperty("keepalive.enabled", "false"));
+        int keepAliveMaxRequests = Integer.parseInt(config.getProperty("keepalive.maxRequests", "100"));
+        long keepAliveIdleTimeout = keepAlive ? Long.parseLong(config.getProperty("keepalive.idleTimeout", "15000")) : 0;
+        handler.setKeepAlivePolicy(new KeepAlivePolicy(keepAlive, keepAliveMaxRequests));
+
+        if (keepAlive) {
+            logger.info("Keep-alive is enabled (idle timeout " + keepAliveIdleTimeout + "ms, max " + keepAliveMaxRequests + " requests)");
+        }
+
+        // Report ingestion
+        webServer = createServer("listen", listenPort, keepAliveIdleTimeout);
+
+        MetricsHandler metricsHandler = new MetricsHandler(this);
+
+        if (webappPort == listenPort) {
+            // the webapp shares the ingest server
+            HandlerList handlers = new HandlerList();
+            handlers.setHandlers(new Handler[] { handler , metricsHandler, webAppContext });
+            webServer.setHandler(handlers);
+        } else {
+            webServer.setHandler(handler);
+
+            HandlerList handlers = new HandlerList();
+            handlers.setHandlers(new Handler[] { metricsHandler, webAppContext });
+
+            org.eclipse.jetty.server.Server webappServer = createServer("webapp", webappPort, 0);
+            webappServer.setHandler(handlers);
+        }
 
-        org.eclipse.jetty.server.Server blackholeServer = new org.eclipse.jetty.server.Server();
-        blackholeServer.setHandler(new BlackholeHandler());
-        ServerConnector connector2 = new ServerConnector(blackholeServer, 2, 2);
-        connector2.setPort(blackholePort);
-        connector2.setSoLingerTime(0);
-        blackholeServer.addConnector(connector2);
+        org.eclipse.jetty.server.Server blackholeServer = createServer("blackhole", blackholePort, keepAliveIdleTimeout);
+        blackholeServer.setHandler(new BlackholeHandler(new KeepAlivePolicy(keepAlive, keepAliveMaxRequests)));
+
+        // Raw report ingestion that bypasses the servlet container
+        if (Boolean.parseBoolean(config.getProperty("ingest.enabled", "false"))) {
+            ingestServer = new IngestServer(this);
+        }
+
+        // Pick up edits to the server definitions without a restart
+        int definitionsReloadInterval = Integer.parseInt(config.getProperty("definitions.reloadInterval", "30"));
+        if (definitionsReloadInterval > 0) {
+            serverBuildIdentifier.startWatching(definitionsReloadInterval * 1000L);
+        }
+
+        // and to the deny list
+        int denyListReloadInterval = Integer.parseInt(config.getProperty("denylist.reloadInterval", "30"));
+        if (denyListReloadInterval > 0) {
+            denyList.startWatching(denyListReloadInterval * 1000L);
+        }
+
+        int knownServersSnapshotInterval = Integer.parseInt(config.getProperty("knownservers.snapshotInterval", "300"));
+        if (knownServersSnapshotInterval > 0) {
+            knownServers.startSnapshots(knownServersSnapshotInterval * 1000L);
+        }
 
         if (Boolean.parseBoolean(config.getProperty("graphs.generate"))) {
             Scheduler scheduler = new Scheduler();
-            scheduler.schedule("*/30 * * * *", new MainlineGraphs(this));
+            graphGenerator = new MainlineGraphs(this);
+            scheduler.schedule("*/30 * * * *", graphGenerator);
             scheduler.start();
             logger.info("Graph generator is active");
         } else {
@@ -574,12 +1034,24 @@ public class MCStats {
         }
 
         try {
-            // Start the server
-            webServer.start();
-            blackholeServer.start();
+            // Start the servers
+            for (org.eclipse.jetty.server.Server server : webServers) {
+                server.start();
+            }
+
             logger.info("Created web server on port " + listenPort);
+
+            if (webappPort != listenPort) {
+                logger.info("Created webapp server on port " + webappPort);
+            }
+
             logger.info("Created blackhole server on port " + blackholePort);
 
+            if (ingestServer != null) {
+                ingestServer.start();
+                logger.info("Created raw ingest server on port " + ingestServer.getPort());
+            }
+
             // and now join it
             webServer.join();
         } catch (Exception e) {
@@ -589,23 +1061,145 @@ public class MCStats {
     }
 
     /**
-     * Connect to the database
+     * Create a web server with its own connector and thread pool. The connector and pool are
+     * configured from the properties prefixed with the given name, e.g. listen.maxThreads
+     *
+     * @param name
+     * @param port
+     * @param idleTimeout the connector idle timeout in milliseconds, or 0 to use the default
+     * @return
+     */
+    private org.eclipse.jetty.server.Server createServer(String name, int port, long idleTimeout) {
+        int acceptors = Integer.parseInt(config.getProperty(name + ".acceptors", "2"));
+        int selectors = Integer.parseInt(config.getProperty(name + ".selectors", "2"));
+        int acceptQueueSize = Integer.parseInt(config.getProperty(name + ".acceptQueueSize", "1024"));
+        int minThreads = Integer.parseInt(config.getProperty(name + ".minThreads", "8"));
+        int maxThreads = Integer.parseInt(config.getProperty(name + ".maxThreads", "200"));
+        int maxQueued = Integer.parseInt(config.getProperty(name + ".maxQueued", "0"));
+        int threadIdleTimeout = Integer.parseInt(config.getProperty(name + ".threadIdleTimeout", "60000"));
+
+        QueuedThreadPool threadPool;
+
+        if (maxQueued > 0) {
+            threadPool = new QueuedThreadPool(maxThreads, minThreads, threadIdleTimeout, new ArrayBlockingQueue<Runnable>(maxQueued));
+        } else {
+            threadPool = new QueuedThreadPool(maxThreads, minThreads, threadIdleTimeout);
+        }
+
+        threadPool.setName(name);
+
+        org.eclipse.jetty.server.Server server = new org.eclipse.jetty.server.Server(threadPool);
+
+        ServerConnector connector = new ServerConnector(server, acceptors, selectors);
+        connector.setName(name);
+        connector.setPort(port);
+        connector.setAcceptQueueSize(acceptQueueSize);
+        connector.setSoLingerTime(0);
+
+        if (idleTimeout > 0) {
+            connector.setIdleTimeout(idleTimeout);
+        }
+
+        server.addConnector(connector);
+        webServers.add(server);
+        threadPools.put(name, threadPool);
+
+        if (debug) {
+            logger.debug("Server " + name + ": " + acceptors + " acceptors, " + selectors + " selectors, " + minThreads + "-" + maxThreads + " threads, queue " + (maxQueued > 0 ? maxQueued : "unbounded"));
+        }
+
+        return server;
+    }
+
+    /**
+     * Connect to the database and graph store, or create in-memory ones if configured to
      */
     private void connectToDatabase() {
-        // First load the mysql.properties file
-        Properties properties = new Properties();
+        if (config.getProperty("database.type", "mysql").equalsIgnoreCase("memory")) {
+            SimulatedLatency readLatency = SimulatedLatency.parse(config.getProperty("memory.readLatency"));
+            SimulatedLatency writeLatency = SimulatedLatency.parse(config.getProperty("memory.writeLatency"));
+            database = new InMemoryDatabase(this, readLatency, writeLatency);
 
-        try {
-            properties.load(new FileInputStream("mysql.properties"));
-        } catch (IOException e) {
-            e.printStackTrace();
+            logger.info("Using an in-memory database (read latency: " + readLatency + ", write latency: " + writeLatency + ")");
+        } else {
+            // First load the mysql.properties file
+            Properties properties = new Properties();
+
+            try {
+                properties.load(new FileInputStream("mysql.properties"));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+
+            // Create the database
+            database = new MySQLDatabase(this, properties.getProperty("mysql.hostname"), properties.getProperty("mysql.database")
+                    , properties.getProperty("mysql.username"), properties.getProperty("mysql.password"));
+
+            logger.info("Connected to MySQL");
+        }
+
+        if (config.getProperty("graphstore.type", "mongodb").equalsIgnoreCase("memory")) {
+            SimulatedLatency latency = SimulatedLatency.parse(config.getProperty("memory.graphLatency"));
+            graphStore = new InMemoryGraphStore(latency);
+
+            logger.info("Using an in-memory graph store (latency: " + latency + ")");
+        } else {
+            graphStore = new MongoDBGraphStore(this);
         }
+    }
+
+    /**
+     * Get the interner for low cardinality server attributes
+     *
+     * @return
+     */
+    public StringInterner getAttributeInterner() {
+        return attributeInterner;
+    }
+
+    /**
+     * Get the creator of new plugins, graphs and columns
+     *
+     * @return
+     */
+    public EntityCreator getEntityCreator() {
+        return entityCreator;
+    }
 
-        // Create the database
-        database = new MySQLDatabase(this, properties.getProperty("mysql.hostname"), properties.getProperty("mysql.database")
-                , properties.getProperty("mysql.username"), properties.getProperty("mysql.password"));
+    /**
+     * Get the list of plugins and servers whose reports are turned away early
+     *
+     * @return
+     */
+    public DenyList getDenyList() {
+        return denyList;
+    }
 
-        logger.info("Connected to MySQL");
+    /**
+     * Get the filter of servers in the database
+     *
+     * @return
+     */
+    public KnownServers getKnownServers() {
+        return knownServers;
+    }
+
+    /**
+     * Get the normalizer for the os and java attributes of reports
+     *
+     * @return
+     */
+    public PlatformNormalizer getPlatformNormalizer() {
+        return platformNormalizer;
+    }
+
+    /**
+     * Get the table server attributes are stored in
+     *
+     * @return
+     */
+    public ServerTable getServerTable() {
+        return serverTable;
     }
 
     /**
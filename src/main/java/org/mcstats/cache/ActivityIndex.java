@@ -0,0 +1,188 @@
+package org.mcstats.cache;
+
+import com.google.common.collect.Sets;
+import org.mcstats.model.Plugin;
+import org.mcstats.model.Server;
+import org.mcstats.model.ServerPlugin;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index of the servers and server plugins that have sent data, bucketed by graphing interval.
+ * Only the current and the previous interval are retained so servers that stop sending data
+ * (or are evicted from the server cache) are released once their interval closes.
+ */
+public class ActivityIndex {
+
+    /**
+     * The length of an interval in seconds
+     */
+    private static final int INTERVAL = 1800;
+
+    /**
+     * The bucket for the current interval
+     */
+    private volatile Bucket current = new Bucket(Long.MIN_VALUE);
+
+    /**
+     * The bucket for the previous interval
+     */
+    private volatile Bucket previous = new Bucket(Long.MIN_VALUE);
+
+    /**
+     * Mark a server plugin (and its server) as active now
+     *
+     * @param serverPlugin
+     */
+    public void touch(ServerPlugin serverPlugin) {
+        Bucket bucket = getBucket(System.currentTimeMillis() / 1000L / INTERVAL);
+        bucket.getServerPlugins(serverPlugin.getPlugin()).add(serverPlugin);
+        bucket.servers.add(serverPlugin.getServer());
+    }
+
+    /**
+     * Get the server plugins for a plugin that were active in the current or previous interval
+     *
+     * @param plugin
+     * @return a read-only view of both intervals; iterate it once rather than asking for its size
+     */
+    public Set<ServerPlugin> getServerPlugins(Plugin plugin) {
+        Bucket previous = this.previous;
+        Bucket current = this.current;
+
+        Set<ServerPlugin> previousSet = previous.plugins.get(plugin);
+        Set<ServerPlugin> currentSet = current.plugins.get(plugin);
+
+        return union(previousSet, currentSet);
+    }
+
+    /**
+     * Get all servers that were active in the current or previous interval
+     *
+     * @return a read-only view of both intervals; iterate it once rather than asking for its size
+     */
+    public Set<Server> getServers() {
+        Bucket previous = this.previous;
+        Bucket current = this.current;
+
+        return union(previous.servers, current.servers);
+    }
+
+    /**
+     * Get the number of servers in the current interval
+     *
+     * @return
+     */
+    public int countServers() {
+        return current.servers.size();
+    }
+
+    /**
+     * Get the number of server plugins in the current interval
+     *
+     * @return
+     */
+    public int size() {
+        int size = 0;
+
+        for (Set<ServerPlugin> set : current.plugins.values()) {
+            size += set.size();
+        }
+
+        return size;
+    }
+
+    /**
+     * Get the bucket for the given interval, rotating out the old buckets if necessary
+     *
+     * @param id
+     * @return
+     */
+    private Bucket getBucket(long id) {
+        Bucket bucket = current;
+
+        if (bucket.id == id) {
+            return bucket;
+        }
+
+        synchronized (this) {
+            bucket = current;
+
+            if (id > bucket.id) {
+                previous = bucket.id == id - 1 ? bucket : new Bucket(id - 1);
+                bucket = new Bucket(id);
+                current = bucket;
+            }
+
+            return bucket;
+        }
+    }
+
+    /**
+     * View the union of two sets, either of which may be null, without copying them. Iterating the
+     * view walks the first set and then whatever of the second set is not in the first.
+     *
+     * @param first
+     * @param second
+     * @return
+     */
+    private static <T> Set<T> union(Set<T> first, Set<T> second) {
+        if (first == null && second == null) {
+            return Collections.emptySet();
+        }
+
+        if (first == null) {
+            return Collections.unmodifiableSet(second);
+        }
+
+        if (second == null) {
+            return Collections.unmodifiableSet(first);
+        }
+
+        return Sets.union(first, second);
+    }
+
+    /**
+     * The activity for a single interval
+     */
+    private static class Bucket {
+
+        /**
+         * The interval's id
+         */
+        private final long id;
+
+        /**
+         * The server plugins active in the interval, by plugin
+         */
+        private final ConcurrentHashMap<Plugin, Set<ServerPlugin>> plugins = new ConcurrentHashMap<Plugin, Set<ServerPlugin>>();
+
+        /**
+         * The servers active in the interval
+         */
+        private final Set<Server> servers = Sets.newSetFromMap(new ConcurrentHashMap<Server, Boolean>());
+
+        public Bucket(long id) {
+            this.id = id;
+        }
+
+        public Set<ServerPlugin> getServerPlugins(Plugin plugin) {
+            Set<ServerPlugin> set = plugins.get(plugin);
+
+            if (set == null) {
+                set = Sets.newSetFromMap(new ConcurrentHashMap<ServerPlugin, Boolean>());
+                Set<ServerPlugin> existing = plugins.putIfAbsent(plugin, set);
+
+                if (existing != null) {
+                    set = existing;
+                }
+            }
+
+            return set;
+        }
+
+    }
+
+}
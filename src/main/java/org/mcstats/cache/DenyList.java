@@ -0,0 +1,304 @@
+package org.mcstats.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.log4j.Logger;
+import org.mcstats.util.ReloadableFile;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides which reports can be turned away before any real work is done on them. There are two
+ * parts: a deny list read from a file, which can be edited and is reloaded while running, and a
+ * negative cache of plugin names that were recently rejected, so a bogus plugin name does not go
+ * back to the database on every report.
+ *
+ * Plugin ids in {@link #DEFAULT_PLUGIN_IDS} are always dropped, and the file adds to them. Each
+ * line of the file is one entry, and # starts a comment:
+ * <pre>
+ * plugin &lt;name&gt;     reject reports for a plugin name
+ * plugin-id &lt;id&gt;    accept reports for a plugin but drop them
+ * server &lt;guid&gt;     accept reports from a server but drop them
+ * </pre>
+ */
+public class DenyList {
+
+    private Logger logger = Logger.getLogger("DenyList");
+
+    /**
+     * The file the deny list is stored in
+     */
+    public static final String DENY_LIST_FILE = "denylist.txt";
+
+    /**
+     * Plugin ids that are dropped even when the file is missing
+     */
+    public static final Set<Integer> DEFAULT_PLUGIN_IDS = Collections.unmodifiableSet(new HashSet<Integer>(Arrays.asList(4930)));
+
+    /**
+     * The entries loaded from the file, along with the defaults
+     */
+    private volatile Entries entries = new Entries(Collections.<String>emptySet(), DEFAULT_PLUGIN_IDS, Collections.<String>emptySet());
+
+    /**
+     * Plugin names rejected recently, lower case
+     */
+    private final Cache<String, Boolean> rejected;
+
+    /**
+     * The file the entries are loaded from
+     */
+    private final ReloadableFile file;
+
+    /**
+     * The number of reports turned away by plugin name
+     */
+    private final AtomicLong deniedPlugins = new AtomicLong(0);
+
+    /**
+     * The number of reports dropped by plugin id
+     */
+    private final AtomicLong deniedPluginIds = new AtomicLong(0);
+
+    /**
+     * The number of reports dropped by server
+     */
+    private final AtomicLong deniedServers = new AtomicLong(0);
+
+    /**
+     * @param file the file to load entries from
+     * @param rejectedTtl how long a rejected plugin name is remembered, in seconds
+     * @param maxRejected the most rejected plugin names to remember
+     */
+    public DenyList(File file, int rejectedTtl, int maxRejected) {
+        this.file = new ReloadableFile(file, "deny list entries", new ReloadableFile.Loader() {
+            public int load(File file) throws IOException {
+                return readEntries(file);
+            }
+        });
+        rejected = CacheBuilder.newBuilder()
+                .expireAfterWrite(rejectedTtl, TimeUnit.SECONDS)
+                .maximumSize(maxRejected)
+                .build();
+
+        if (file.exists()) {
+            try {
+                load();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        } else {
+            logger.warn(file.getName() + " does not exist, only the default plugin ids are denied until it is created");
+        }
+    }
+
+    /**
+     * Check if reports for a plugin name should be rejected
+     *
+     * @param name
+     * @return
+     */
+    public boolean isPluginDenied(String name) {
+        String key = name.toLowerCase();
+
+        if (entries.plugins.contains(key) || rejected.getIfPresent(key) != null) {
+            deniedPlugins.incrementAndGet();
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Check if reports for a plugin should be dropped
+     *
+     * @param id
+     * @return
+     */
+    public boolean isPluginIdDenied(int id) {
+        if (entries.pluginIds.contains(id)) {
+            deniedPluginIds.incrementAndGet();
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Check if reports from a server should be dropped
+     *
+     * @param guid
+     * @return
+     */
+    public boolean isServerDenied(String guid) {
+        if (entries.servers.contains(guid)) {
+            deniedServers.incrementAndGet();
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Remember that a plugin name was rejected so its next reports are rejected without a lookup
+     *
+     * @param name
+     */
+    public void reject(String name) {
+        rejected.put(name.toLowerCase(), Boolean.TRUE);
+    }
+
+    /**
+     * Get the number of plugin names being remembered as rejected
+     *
+     * @return
+     */
+    public long getRejectedSize() {
+        return rejected.size();
+    }
+
+    /**
+     * Get the number of entries, including the defaults
+     *
+     * @return
+     */
+    public int getEntryCount() {
+        Entries current = entries;
+        return current.plugins.size() + current.pluginIds.size() + current.servers.size();
+    }
+
+    public long getDeniedPlugins() {
+        return deniedPlugins.get();
+    }
+
+    public long getDeniedPluginIds() {
+        return deniedPluginIds.get();
+    }
+
+    public long getDeniedServers() {
+        return deniedServers.get();
+    }
+
+    /**
+     * Load the entries from the file, replacing the current ones
+     *
+     * @throws IOException
+     */
+    public void load() throws IOException {
+        file.load();
+    }
+
+    /**
+     * Reload the entries in the background whenever the file changes
+     *
+     * @param interval how often to check the file, in milliseconds
+     */
+    public void startWatching(long interval) {
+        file.startWatching(interval, "DenyListWatcher");
+    }
+
+    /**
+     * Read the entries from a file and replace the current ones
+     *
+     * @param file
+     * @return the number of entries read
+     * @throws IOException
+     */
+    private int readEntries(File file) throws IOException {
+        Set<String> plugins = new HashSet<String>();
+        Set<Integer> pluginIds = new HashSet<Integer>();
+        Set<String> servers = new HashSet<String>();
+
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+
+        try {
+            String line;
+            int lineNumber = 0;
+
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+
+                int comment = line.indexOf('#');
+                if (comment != -1) {
+                    line = line.substring(0, comment);
+                }
+
+                line = line.trim();
+
+                if (line.isEmpty()) {
+                    continue;
+                }
+
+                int split = line.indexOf(' ');
+
+                if (split == -1) {
+                    logger.warn("Ignoring line " + lineNumber + " of " + file.getName() + ": no value");
+                    continue;
+                }
+
+                String type = line.substring(0, split);
+                String value = line.substring(split + 1).trim();
+
+                if (type.equals("plugin")) {
+                    plugins.add(value.toLowerCase());
+                } else if (type.equals("plugin-id")) {
+                    try {
+                        pluginIds.add(Integer.parseInt(value));
+                    } catch (NumberFormatException e) {
+                        logger.warn("Ignoring line " + lineNumber + " of " + file.getName() + ": invalid plugin id " + value);
+                    }
+                } else if (type.equals("server")) {
+                    servers.add(value);
+                } else {
+                    logger.warn("Ignoring line " + lineNumber + " of " + file.getName() + ": unknown type " + type);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        int count = plugins.size() + pluginIds.size() + servers.size();
+
+        pluginIds.addAll(DEFAULT_PLUGIN_IDS);
+        entries = new Entries(plugins, pluginIds, servers);
+        return count;
+    }
+
+    /**
+     * A loaded set of entries
+     */
+    private static final class Entries {
+
+        /**
+         * Rejected plugin names, lower case
+         */
+        private final Set<String> plugins;
+
+        /**
+         * Dropped plugin ids
+         */
+        private final Set<Integer> pluginIds;
+
+        /**
+         * Dropped server guids
+         */
+        private final Set<String> servers;
+
+        private Entries(Set<String> plugins, Set<Integer> pluginIds, Set<String> servers) {
+            this.plugins = plugins;
+            this.pluginIds = pluginIds;
+            this.servers = servers;
+        }
+
+    }
+
+}
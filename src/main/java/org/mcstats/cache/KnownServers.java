@@ -0,0 +1,232 @@
+package org.mcstats.cache;
+
+import org.apache.log4j.Logger;
+import org.mcstats.db.Database;
+import org.mcstats.util.BloomFilter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A Bloom filter of the guid of every server in the database, so a server that has never been seen
+ * can be created without first looking for it. The filter is read from a snapshot on disk at startup
+ * (or built from the database if there is none) and written back periodically.
+ *
+ * A snapshot can be older than the database, e.g. after a crash; a server missing from it is then
+ * created again, which fails on the unique guid and falls back to loading it, so a stale filter only
+ * costs time.
+ */
+public class KnownServers {
+
+    private Logger logger = Logger.getLogger("KnownServers");
+
+    /**
+     * The file snapshots are written to
+     */
+    private final File file;
+
+    /**
+     * The guids of known servers. Replaced only while the filter is not ready yet.
+     */
+    private volatile BloomFilter filter;
+
+    /**
+     * If the filter holds every server in the database. Until then every server is looked up.
+     */
+    private volatile boolean ready = false;
+
+    /**
+     * The number of servers that were definitely new
+     */
+    private final AtomicLong definitelyNew = new AtomicLong(0);
+
+    /**
+     * The number of servers that might have been known
+     */
+    private final AtomicLong probablyKnown = new AtomicLong(0);
+
+    /**
+     * @param file the file to snapshot the filter to
+     * @param expected the number of servers expected
+     * @param falsePositiveRate the chance of a new server looking known once that many are added
+     */
+    public KnownServers(File file, long expected, double falsePositiveRate) {
+        this.file = file;
+        this.filter = new BloomFilter(expected, falsePositiveRate);
+    }
+
+    /**
+     * Read the snapshot, or if there is no usable one, add every server in the database to the
+     * filter in the background
+     *
+     * @param database
+     */
+    public void load(final Database database) {
+        if (file.exists()) {
+            try {
+                BloomFilter snapshot = readSnapshot();
+
+                if (snapshot.isCompatible(filter)) {
+                    filter = snapshot;
+                    ready = true;
+                    logger.info("Loaded known servers from " + file.getName());
+                    return;
+                }
+
+                logger.info("Known servers snapshot was sized differently, rebuilding it");
+            } catch (IOException e) {
+                logger.error("Failed to read known servers from " + file.getName() + ", rebuilding it", e);
+            }
+        }
+
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                long started = System.currentTimeMillis();
+                int count = database.loadServerGuids(filter);
+
+                if (count == -1) {
+                    logger.error("Failed to load known servers, every server will be looked up");
+                    return;
+                }
+
+                ready = true;
+                logger.info("Loaded " + count + " known servers in " + (System.currentTimeMillis() - started) + "ms");
+            }
+        }, "KnownServersLoader");
+
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Check if a server is definitely not in the database
+     *
+     * @param guid
+     * @return false if the server might be in the database, or the filter is not ready yet
+     */
+    public boolean isDefinitelyNew(String guid) {
+        if (!ready) {
+            return false;
+        }
+
+        if (filter.mightContain(guid)) {
+            probablyKnown.incrementAndGet();
+            return false;
+        }
+
+        definitelyNew.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Add a server that was loaded or created
+     *
+     * @param guid
+     */
+    public void add(String guid) {
+        filter.add(guid);
+    }
+
+    /**
+     * Write the filter to the snapshot file. The file is replaced as a whole so a crash midway
+     * leaves the previous snapshot.
+     *
+     * @throws IOException
+     */
+    public synchronized void snapshot() throws IOException {
+        if (!ready) {
+            return;
+        }
+
+        File temp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 65536));
+
+        try {
+            filter.writeTo(out);
+        } finally {
+            out.close();
+        }
+
+        if (!temp.renameTo(file)) {
+            throw new IOException("Failed to replace " + file.getName());
+        }
+    }
+
+    /**
+     * Snapshot the filter in the background
+     *
+     * @param interval how often to snapshot, in milliseconds
+     */
+    public void startSnapshots(final long interval) {
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                while (true) {
+                    try {
+                        Thread.sleep(interval);
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+
+                    try {
+                        snapshot();
+                    } catch (IOException e) {
+                        logger.error("Failed to snapshot known servers", e);
+                    }
+                }
+            }
+        }, "KnownServersSnapshot");
+
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Check if the filter holds every server in the database
+     *
+     * @return
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    public long getDefinitelyNew() {
+        return definitelyNew.get();
+    }
+
+    public long getProbablyKnown() {
+        return probablyKnown.get();
+    }
+
+    /**
+     * Get the memory used by the filter, in bytes
+     *
+     * @return
+     */
+    public long getSizeInBytes() {
+        return filter.getSizeInBytes();
+    }
+
+    /**
+     * Read the snapshot file
+     *
+     * @return
+     * @throws IOException
+     */
+    private BloomFilter readSnapshot() throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 65536));
+
+        try {
+            return BloomFilter.readFrom(in);
+        } finally {
+            in.close();
+        }
+    }
+
+}
@@ -0,0 +1,79 @@
+package org.mcstats.capture;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads the requests in a capture file, gzipped or not. A file that was cut off while it was being
+ * written (e.g. the capture is still running) is read up to the last complete request.
+ */
+public class CaptureReader {
+
+    private final BufferedReader reader;
+
+    public CaptureReader(File file) throws IOException {
+        InputStream input = new FileInputStream(file);
+
+        if (file.getName().endsWith(".gz")) {
+            input = new GZIPInputStream(input, 65536);
+        }
+
+        reader = new BufferedReader(new InputStreamReader(input, "UTF-8"));
+    }
+
+    /**
+     * Read the next request
+     *
+     * @return the request, or null at the end of the file
+     * @throws IOException
+     */
+    public CapturedRequest next() throws IOException {
+        String line;
+
+        while ((line = readLine()) != null) {
+            line = line.trim();
+
+            if (line.isEmpty()) {
+                continue;
+            }
+
+            CapturedRequest request = CapturedRequest.fromJSON(line);
+
+            if (request != null) {
+                return request;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Close the file
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Read a line, treating a truncated file as its end
+     *
+     * @return
+     * @throws IOException
+     */
+    private String readLine() throws IOException {
+        try {
+            return reader.readLine();
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+}
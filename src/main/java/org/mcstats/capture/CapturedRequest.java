@@ -0,0 +1,118 @@
+package org.mcstats.capture;
+
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+
+import java.util.Base64;
+
+/**
+ * A report as it was received, before decoding. Stored as one JSON object per line with the body
+ * base64 encoded.
+ */
+public class CapturedRequest {
+
+    /**
+     * When the request was received, in milliseconds
+     */
+    private final long time;
+
+    private final String uri;
+
+    private final String userAgent;
+
+    /**
+     * The Content-Encoding header, or null
+     */
+    private final String contentEncoding;
+
+    /**
+     * The country code from the GEOIP header, or null
+     */
+    private final String geoipCountryCode;
+
+    /**
+     * The raw body, still compressed if it was sent compressed
+     */
+    private final byte[] body;
+
+    public CapturedRequest(long time, String uri, String userAgent, String contentEncoding, String geoipCountryCode, byte[] body) {
+        this.time = time;
+        this.uri = uri;
+        this.userAgent = userAgent;
+        this.contentEncoding = contentEncoding;
+        this.geoipCountryCode = geoipCountryCode;
+        this.body = body;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public String getUri() {
+        return uri;
+    }
+
+    public String getUserAgent() {
+        return userAgent;
+    }
+
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    public String getGeoipCountryCode() {
+        return geoipCountryCode;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    /**
+     * Encode the request as a single line of JSON
+     *
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public String toJSON() {
+        JSONObject object = new JSONObject();
+        object.put("time", time);
+        object.put("uri", uri);
+        object.put("user_agent", userAgent);
+        object.put("content_encoding", contentEncoding);
+        object.put("geoip", geoipCountryCode);
+        object.put("body", Base64.getEncoder().encodeToString(body));
+        return object.toJSONString();
+    }
+
+    /**
+     * Decode a request from a line of JSON
+     *
+     * @param line
+     * @return the request, or null if the line is not a captured request
+     */
+    public static CapturedRequest fromJSON(String line) {
+        Object parsed = JSONValue.parse(line);
+
+        if (!(parsed instanceof JSONObject)) {
+            return null;
+        }
+
+        JSONObject object = (JSONObject) parsed;
+        Object time = object.get("time");
+        Object uri = object.get("uri");
+        Object body = object.get("body");
+
+        if (!(time instanceof Number) || uri == null || body == null) {
+            return null;
+        }
+
+        try {
+            return new CapturedRequest(((Number) time).longValue(), uri.toString(), (String) object.get("user_agent"),
+                    (String) object.get("content_encoding"), (String) object.get("geoip"), Base64.getDecoder().decode(body.toString()));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+}
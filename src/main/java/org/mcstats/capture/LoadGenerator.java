@@ -0,0 +1,307 @@
+package org.mcstats.capture;
+
+import org.mcstats.metrics.Histogram;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays captured requests against a running instance. Scheduling is open-loop: every request is
+ * sent at its original offset from the start of the capture divided by the rate multiplier, no
+ * matter how many earlier requests are still outstanding. Latency is measured from the time a
+ * request was scheduled to be sent, so a server that falls behind is not hidden by the generator
+ * waiting on it.
+ *
+ * Usage: LoadGenerator [--rate multiplier] [--duration seconds] target-url capture-file...
+ */
+public class LoadGenerator {
+
+    /**
+     * How often progress is reported, in milliseconds
+     */
+    private static final long REPORT_INTERVAL = 10000;
+
+    /**
+     * The url requests are sent to, without a trailing slash
+     */
+    private final String target;
+
+    /**
+     * The multiple of the captured rate to send at
+     */
+    private final double rate;
+
+    /**
+     * The longest to send for, in nanoseconds, or 0 to replay everything
+     */
+    private final long durationNanos;
+
+    /**
+     * Latency since the start, in microseconds
+     */
+    private final Histogram total = new Histogram();
+
+    /**
+     * Latency since the last progress report, in microseconds
+     */
+    private final Histogram interval = new Histogram();
+
+    /**
+     * The number of responses by status code
+     */
+    private final ConcurrentHashMap<Integer, AtomicLong> statuses = new ConcurrentHashMap<Integer, AtomicLong>();
+
+    /**
+     * The number of requests that failed with an IO error
+     */
+    private final AtomicLong errors = new AtomicLong(0);
+
+    /**
+     * The number of requests in flight
+     */
+    private final AtomicInteger outstanding = new AtomicInteger(0);
+
+    /**
+     * The number of requests sent
+     */
+    private long sent = 0;
+
+    /**
+     * The furthest a request was sent behind its schedule, in nanoseconds
+     */
+    private long maxDispatchLag = 0;
+
+    public LoadGenerator(String target, double rate, long durationNanos) {
+        this.target = target.endsWith("/") ? target.substring(0, target.length() - 1) : target;
+        this.rate = rate;
+        this.durationNanos = durationNanos;
+    }
+
+    public static void main(String[] args) throws Exception {
+        double rate = 1;
+        long duration = 0;
+        int index = 0;
+
+        while (index < args.length && args[index].startsWith("--")) {
+            if (args[index].equals("--rate") && index + 1 < args.length) {
+                rate = Double.parseDouble(args[index + 1]);
+            } else if (args[index].equals("--duration") && index + 1 < args.length) {
+                duration = TimeUnit.SECONDS.toNanos(Long.parseLong(args[index + 1]));
+            } else {
+                usage();
+                return;
+            }
+
+            index += 2;
+        }
+
+        if (args.length - index < 2 || rate <= 0) {
+            usage();
+            return;
+        }
+
+        List<File> files = new ArrayList<File>();
+
+        for (int i = index + 1; i < args.length; i++) {
+            files.add(new File(args[i]));
+        }
+
+        // capture file names sort by the time they were started
+        File[] sorted = files.toArray(new File[files.size()]);
+        Arrays.sort(sorted);
+
+        new LoadGenerator(args[index], rate, duration).run(Arrays.asList(sorted));
+    }
+
+    private static void usage() {
+        System.err.println("Usage: LoadGenerator [--rate multiplier] [--duration seconds] target-url capture-file...");
+    }
+
+    /**
+     * Replay the captures in order and print the results
+     *
+     * @param files
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public void run(List<File> files) throws IOException, InterruptedException {
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        long start = System.nanoTime();
+        long nextReport = start + TimeUnit.MILLISECONDS.toNanos(REPORT_INTERVAL);
+        long firstTime = -1;
+
+        replay:
+        for (File file : files) {
+            CaptureReader reader = new CaptureReader(file);
+
+            try {
+                CapturedRequest request;
+
+                while ((request = reader.next()) != null) {
+                    if (firstTime < 0) {
+                        firstTime = request.getTime();
+                    }
+
+                    long offset = (long) (TimeUnit.MILLISECONDS.toNanos(request.getTime() - firstTime) / rate);
+
+                    if (durationNanos > 0 && offset > durationNanos) {
+                        break replay;
+                    }
+
+                    final long scheduled = start + offset;
+                    long now;
+
+                    while ((now = System.nanoTime()) < scheduled) {
+                        if (now >= nextReport) {
+                            report(now - start);
+                            nextReport += TimeUnit.MILLISECONDS.toNanos(REPORT_INTERVAL);
+                        }
+
+                        LockSupport.parkNanos(Math.min(scheduled, nextReport) - now);
+                    }
+
+                    maxDispatchLag = Math.max(maxDispatchLag, now - scheduled);
+                    sent ++;
+                    outstanding.incrementAndGet();
+
+                    final CapturedRequest toSend = request;
+                    executor.execute(new Runnable() {
+                        public void run() {
+                            try {
+                                send(toSend, scheduled);
+                            } finally {
+                                outstanding.decrementAndGet();
+                            }
+                        }
+                    });
+                }
+            } finally {
+                reader.close();
+            }
+        }
+
+        executor.shutdown();
+
+        while (!executor.awaitTermination(REPORT_INTERVAL, TimeUnit.MILLISECONDS)) {
+            report(System.nanoTime() - start);
+        }
+
+        long elapsed = System.nanoTime() - start;
+        System.out.println();
+        System.out.println("Sent " + sent + " requests in " + (elapsed / 1000000L) + "ms (" + String.format("%.1f", sent / (elapsed / 1e9)) + "/s) at " + rate + "x the captured rate");
+        System.out.println("Furthest behind schedule: " + (maxDispatchLag / 1000000L) + "ms");
+        System.out.println("IO errors: " + errors.get());
+        System.out.println("Responses: " + new TreeMap<Integer, AtomicLong>(statuses));
+
+        synchronized (total) {
+            System.out.println("Latency: " + describe(total));
+        }
+    }
+
+    /**
+     * Send a request and record its latency from the time it was scheduled
+     *
+     * @param request
+     * @param scheduled
+     */
+    private void send(CapturedRequest request, long scheduled) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) URI.create(target + request.getUri()).toURL().openConnection();
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(request.getBody().length);
+            connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+
+            if (request.getUserAgent() != null) {
+                connection.setRequestProperty("User-Agent", request.getUserAgent());
+            }
+
+            if (request.getContentEncoding() != null) {
+                connection.setRequestProperty("Content-Encoding", request.getContentEncoding());
+            }
+
+            if (request.getGeoipCountryCode() != null) {
+                connection.setRequestProperty("GEOIP_COUNTRY_CODE", request.getGeoipCountryCode());
+            }
+
+            OutputStream output = connection.getOutputStream();
+            output.write(request.getBody());
+            output.close();
+
+            int status = connection.getResponseCode();
+            InputStream input = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+
+            if (input != null) {
+                // drain the response so the connection can be reused
+                byte[] buffer = new byte[1024];
+                while (input.read(buffer) != -1) {
+                }
+                input.close();
+            }
+
+            long micros = (System.nanoTime() - scheduled) / 1000L;
+
+            synchronized (total) {
+                total.record(micros);
+                interval.record(micros);
+            }
+
+            AtomicLong count = statuses.get(status);
+
+            if (count == null) {
+                AtomicLong created = new AtomicLong(0);
+                count = statuses.putIfAbsent(status, created);
+
+                if (count == null) {
+                    count = created;
+                }
+            }
+
+            count.incrementAndGet();
+        } catch (IOException e) {
+            errors.incrementAndGet();
+        }
+    }
+
+    /**
+     * Print the progress since the last report
+     *
+     * @param elapsed
+     */
+    private void report(long elapsed) {
+        synchronized (total) {
+            System.out.println("[" + (elapsed / 1000000000L) + "s] sent=" + sent + " outstanding=" + outstanding.get()
+                    + " errors=" + errors.get() + " " + describe(interval));
+            interval.reset();
+        }
+    }
+
+    /**
+     * Describe the latency percentiles of a histogram
+     *
+     * @param histogram
+     * @return
+     */
+    private static String describe(Histogram histogram) {
+        return String.format("n=%d p50=%.1fms p90=%.1fms p99=%.1fms p99.9=%.1fms max=%.1fms", histogram.getCount(),
+                histogram.getValueAtPercentile(50) / 1000D, histogram.getValueAtPercentile(90) / 1000D,
+                histogram.getValueAtPercentile(99) / 1000D, histogram.getValueAtPercentile(99.9) / 1000D,
+                histogram.getMax() / 1000D);
+    }
+
+}
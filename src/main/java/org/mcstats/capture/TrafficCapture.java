@@ -0,0 +1,241 @@
+package org.mcstats.capture;
+
+import org.apache.log4j.Logger;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes captured requests to gzipped JSONL files in the background. A new file is started once
+ * the current one holds the configured number of (uncompressed) bytes and only the newest files
+ * are kept. When the writer cannot keep up, requests are dropped rather than slowing down
+ * request handling.
+ */
+public class TrafficCapture implements Runnable {
+
+    private Logger logger = Logger.getLogger("TrafficCapture");
+
+    /**
+     * The prefix of capture file names
+     */
+    private static final String FILE_PREFIX = "capture-";
+
+    /**
+     * The suffix of capture file names
+     */
+    private static final String FILE_SUFFIX = ".jsonl.gz";
+
+    /**
+     * The directory captures are written to
+     */
+    private final File directory;
+
+    /**
+     * The fraction of requests to capture
+     */
+    private final double sampleRate;
+
+    /**
+     * The uncompressed size at which a new file is started
+     */
+    private final long rotateBytes;
+
+    /**
+     * The number of files to keep
+     */
+    private final int maxFiles;
+
+    /**
+     * Requests waiting to be written
+     */
+    private final BlockingQueue<CapturedRequest> queue;
+
+    /**
+     * The number of requests captured
+     */
+    private final AtomicLong captured = new AtomicLong(0);
+
+    /**
+     * The number of requests dropped because the queue was full
+     */
+    private final AtomicLong dropped = new AtomicLong(0);
+
+    /**
+     * The file being written to, or null if none is open
+     */
+    private Writer writer = null;
+
+    /**
+     * The uncompressed bytes written to the current file
+     */
+    private long written = 0;
+
+    public TrafficCapture(File directory, double sampleRate, long rotateBytes, int maxFiles, int queueSize) {
+        this.directory = directory;
+        this.sampleRate = sampleRate;
+        this.rotateBytes = rotateBytes;
+        this.maxFiles = maxFiles;
+        queue = new ArrayBlockingQueue<CapturedRequest>(queueSize);
+    }
+
+    /**
+     * Start writing captured requests
+     */
+    public void start() {
+        directory.mkdirs();
+
+        Thread thread = new Thread(this, "TrafficCapture");
+        thread.setDaemon(true);
+        thread.start();
+
+        logger.info("Capturing " + (sampleRate * 100) + "% of requests to " + directory.getAbsolutePath());
+    }
+
+    /**
+     * Decide if the next request should be captured
+     *
+     * @return
+     */
+    public boolean shouldCapture() {
+        return sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate;
+    }
+
+    /**
+     * Queue a request to be written
+     *
+     * @param request
+     */
+    public void offer(CapturedRequest request) {
+        if (queue.offer(request)) {
+            captured.incrementAndGet();
+        } else {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Get the number of requests captured
+     *
+     * @return
+     */
+    public long getCaptured() {
+        return captured.get();
+    }
+
+    /**
+     * Get the number of requests dropped because the writer could not keep up
+     *
+     * @return
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void run() {
+        while (true) {
+            try {
+                CapturedRequest request = queue.poll(1, TimeUnit.SECONDS);
+
+                if (request == null) {
+                    // idle, so make what was written so far readable
+                    if (writer != null) {
+                        writer.flush();
+                    }
+
+                    continue;
+                }
+
+                write(request);
+            } catch (InterruptedException e) {
+                break;
+            } catch (IOException e) {
+                logger.error("Failed to write captured request", e);
+                close();
+            }
+        }
+
+        close();
+    }
+
+    /**
+     * Write a request to the current file, starting a new file if necessary
+     *
+     * @param request
+     * @throws IOException
+     */
+    private void write(CapturedRequest request) throws IOException {
+        if (writer == null || written >= rotateBytes) {
+            rotate();
+        }
+
+        String line = request.toJSON();
+        writer.write(line);
+        writer.write('\n');
+        written += line.length() + 1;
+    }
+
+    /**
+     * Close the current file and start a new one, removing the oldest files over the limit
+     *
+     * @throws IOException
+     */
+    private void rotate() throws IOException {
+        close();
+
+        String name = FILE_PREFIX + new SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new Date()) + FILE_SUFFIX;
+        writer = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(new File(directory, name)), 65536, true), "UTF-8"));
+        written = 0;
+
+        File[] files = directory.listFiles(new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX);
+            }
+        });
+
+        if (files != null && files.length > maxFiles) {
+            // the names sort by the time they were started
+            Arrays.sort(files);
+
+            for (int i = 0; i < files.length - maxFiles; i++) {
+                if (!files[i].delete()) {
+                    logger.warn("Failed to delete old capture " + files[i].getName());
+                }
+            }
+        }
+    }
+
+    /**
+     * Close the current file, if any
+     */
+    private void close() {
+        if (writer == null) {
+            return;
+        }
+
+        try {
+            writer.close();
+        } catch (IOException e) {
+            logger.error("Failed to close capture file", e);
+        }
+
+        writer = null;
+    }
+
+}
@@ -17,17 +17,20 @@ import org.mcstats.generator.aggregator.RevisionAggregator;
 import org.mcstats.generator.aggregator.VersionChangesAggregator;
 import org.mcstats.generator.aggregator.VersionDemographicsAggregator;
 import org.mcstats.handler.ReportHandler;
+import org.mcstats.metrics.GenerationProfiler;
 import org.mcstats.model.Column;
 import org.mcstats.model.Graph;
 import org.mcstats.model.Plugin;
 import org.mcstats.model.ServerPlugin;
 import org.mcstats.util.Tuple;
+import org.mcstats.util.UniqueServerCounter;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Logger;
 
 public class MainlineGraphs implements Runnable {
@@ -41,6 +44,26 @@ public class MainlineGraphs implements Runnable {
      */
     private List<GraphGenerator> generators = new LinkedList<GraphGenerator>();
 
+    /**
+     * If graphs are being generated right now
+     */
+    private volatile boolean running = false;
+
+    /**
+     * The number of completed generation runs
+     */
+    private volatile int runs = 0;
+
+    /**
+     * The time the last run started, in milliseconds
+     */
+    private volatile long lastStarted = 0;
+
+    /**
+     * The duration of the last completed run, in milliseconds
+     */
+    private volatile long lastDuration = 0;
+
     public MainlineGraphs(MCStats mcstats) {
         this.mcstats = mcstats;
 
@@ -98,18 +121,78 @@ public class MainlineGraphs implements Runnable {
         }));
     }
 
+    /**
+     * Check if graphs are being generated right now
+     *
+     * @return
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Get the number of completed generation runs
+     *
+     * @return
+     */
+    public int getRuns() {
+        return runs;
+    }
+
+    /**
+     * Get the time the last generation run started, in milliseconds
+     *
+     * @return the start time, or 0 if graphs have not been generated yet
+     */
+    public long getLastStarted() {
+        return lastStarted;
+    }
+
+    /**
+     * Get the duration of the last completed generation run, in milliseconds
+     *
+     * @return
+     */
+    public long getLastDuration() {
+        return lastDuration;
+    }
+
+    /**
+     * Get the name of a generator for its profile
+     *
+     * @param generator
+     * @return
+     */
+    private static String getName(GraphGenerator generator) {
+        String name = generator.toString();
+
+        // generators without a toString of their own are named after their class
+        if (name.startsWith(generator.getClass().getName() + "@")) {
+            return generator.getClass().getSimpleName();
+        }
+
+        return name;
+    }
+
     /**
      * {@inheritDoc}
      */
     public void run() {
+        long start = System.currentTimeMillis();
+        GenerationProfiler profiler = mcstats.getGenerationProfiler();
+        boolean failed = true;
+        running = true;
+        lastStarted = start;
+        profiler.startRun();
+
         try {
             logger.info("Beginning graph generation");
             GraphStore store = mcstats.getGraphStore();
 
-            long start = System.currentTimeMillis();
-
             for (GraphGenerator generator : generators) {
                 logger.info("Generating graph for: " + generator);
+                profiler.startGenerator(getName(generator));
+                long bytesWritten = store.getBytesWritten();
 
                 Map<Column, GeneratedData> data = generator.generate(mcstats);
 
@@ -124,6 +207,11 @@ public class MainlineGraphs implements Runnable {
                     Column column = entry.getKey();
                     GeneratedData columnData = entry.getValue();
 
+                    // a column with no row yet may still be dropped, which would orphan its data
+                    if (mcstats.getEntityCreator().isPending(column)) {
+                        continue;
+                    }
+
                     List<Tuple<Column, GeneratedData>> listdata = grouped.get(column.getGraph());
 
                     if (listdata == null) {
@@ -139,31 +227,60 @@ public class MainlineGraphs implements Runnable {
                     store.insert(entry.getKey(), listdata, epoch);
                 }
 
+                profiler.finishGenerator(data.size(), store.getBytesWritten() - bytesWritten);
                 // logger.info("Aggregated: " + data);
             }
 
             logger.info("Beginning final stage of graph generation");
+            profiler.startGenerator("Final stage");
+
+            // the interval that just finished, relative to when generation started
+            long interval = UniqueServerCounter.Window.HALF_HOUR.bucket(start / 1000L) - 1;
 
             for (Plugin plugin : mcstats.getCachedPlugins()) {
-                int numServers30 = 0;
+                Set<ServerPlugin> serverPlugins = mcstats.getServerPlugins(plugin);
+                int scanned = 0;
+                int recentlyUpdated = 0;
+
+                for (ServerPlugin serverPlugin : serverPlugins) {
+                    scanned ++;
 
-                for (ServerPlugin serverPlugin : mcstats.getServerPlugins(plugin)) {
                     if (serverPlugin.recentlyUpdated()) {
                         serverPlugin.getServer().setViolationCount(0);
                         serverPlugin.getServer().save();
                         serverPlugin.save();
-                        numServers30 ++;
+                        recentlyUpdated ++;
                     }
                 }
 
-                plugin.setServerCount30(numServers30);
+                profiler.addServersScanned(scanned);
+                UniqueServerCounter counter = mcstats.getServerCounter(plugin);
+
+                // the sketches start empty after a restart, so until a whole interval has been counted
+                // the servers are counted from their last update times, which survive a restart
+                if (counter.isComplete(UniqueServerCounter.Window.HALF_HOUR, interval)) {
+                    plugin.setServerCount30((int) counter.estimate(UniqueServerCounter.Window.HALF_HOUR, interval));
+                } else {
+                    plugin.setServerCount30(recentlyUpdated);
+                }
+
                 plugin.save();
             }
 
-            ((MongoDBGraphStore) store).finishGeneration();
+            if (store instanceof MongoDBGraphStore) {
+                ((MongoDBGraphStore) store).finishGeneration();
+            }
+
+            profiler.finishGenerator(0, 0);
+            failed = false;
             logger.info("Finished graph generation in " + (System.currentTimeMillis() - start) + "ms");
         } catch (Exception e) {
             e.printStackTrace();
+        } finally {
+            profiler.finishRun(failed);
+            lastDuration = System.currentTimeMillis() - start;
+            runs ++;
+            running = false;
         }
     }
 }
@@ -6,6 +6,7 @@ import org.mcstats.model.Plugin;
 import org.mcstats.model.PluginVersion;
 import org.mcstats.model.Server;
 import org.mcstats.model.ServerPlugin;
+import org.mcstats.util.BloomFilter;
 
 import java.sql.SQLException;
 import java.util.List;
@@ -33,6 +34,26 @@ public interface Database {
      */
     public Plugin createPlugin(String name);
 
+    /**
+     * Reserve a block of ids for new rows in the given table. No other caller is given an id in
+     * the block, including inserts that let the table assign the id: ids are reserved from a range
+     * below where the table's own numbering starts.
+     *
+     * @param table
+     * @param count the number of ids to reserve
+     * @return the first id in the block
+     * @throws SQLException
+     */
+    public int reserveIds(String table, int count) throws SQLException;
+
+    /**
+     * Insert a plugin that was given its id by {@link #reserveIds(String, int)}
+     *
+     * @param plugin
+     * @throws SQLException
+     */
+    public void insertPlugin(Plugin plugin) throws SQLException;
+
     /**
      * Load all of the plugins from the database
      *
@@ -96,6 +117,14 @@ public interface Database {
      */
     public ServerPlugin createServerPlugin(Server server, Plugin plugin, String version);
 
+    /**
+     * Insert a ServerPlugin that was cached before its plugin had a row
+     *
+     * @param serverPlugin
+     * @throws SQLException
+     */
+    public void insertServerPlugin(ServerPlugin serverPlugin) throws SQLException;
+
     /**
      * Load the ServerPlugin object for the server/plugin pair
      *
@@ -144,6 +173,14 @@ public interface Database {
      */
     public Server loadServer(String guid);
 
+    /**
+     * Add the guid of every server in the database to a filter
+     *
+     * @param filter
+     * @return the number of servers added, or -1 if they could not be loaded
+     */
+    public int loadServerGuids(BloomFilter filter);
+
     /**
      * Save the given server to the database
      *
@@ -160,6 +197,14 @@ public interface Database {
      */
     public Graph createGraph(Plugin plugin, String name);
 
+    /**
+     * Insert a graph that was given its id by {@link #reserveIds(String, int)}
+     *
+     * @param graph
+     * @throws SQLException
+     */
+    public void insertGraph(Graph graph) throws SQLException;
+
     /**
      * Load the graph for the given plugin
      *
@@ -186,6 +231,14 @@ public interface Database {
      */
     public Column createColumn(Graph graph, String name);
 
+    /**
+     * Insert a column that was given its id by {@link #reserveIds(String, int)}
+     *
+     * @param column
+     * @throws SQLException
+     */
+    public void insertColumn(Column column) throws SQLException;
+
     /**
      * Load a column for the given graph
      *
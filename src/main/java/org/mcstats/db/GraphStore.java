@@ -20,7 +20,7 @@ public interface GraphStore {
      * @param max
      * @param min
      */
-    public void insert(Column column, int epoch, int sum, int count, int avg, int max, int min);
+    public void insert(Column column, int epoch, long sum, int count, long avg, long max, long min);
 
     /**
      * Insert data into the graph store
@@ -29,4 +29,11 @@ public interface GraphStore {
      */
     public void insert(Graph graph, List<Tuple<Column, GeneratedData>> data, int epoch);
 
+    /**
+     * Get the approximate number of bytes written to the graph store since it was opened
+     *
+     * @return
+     */
+    public long getBytesWritten();
+
 }
@@ -0,0 +1,157 @@
+package org.mcstats.db;
+
+import org.apache.log4j.Logger;
+
+import java.sql.SQLException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out ids for new rows of a table from blocks reserved in the database (a hi/lo sequence).
+ * A spare block is always being reserved in the background, so handing out an id never waits on
+ * the database; if the database falls so far behind that both blocks are used up, no id is given
+ * out until the next block arrives.
+ */
+public class IdAllocator {
+
+    private Logger logger = Logger.getLogger("IdAllocator");
+
+    private final Database database;
+
+    /**
+     * The table ids are reserved for
+     */
+    private final String table;
+
+    /**
+     * The number of ids in a block
+     */
+    private final int blockSize;
+
+    /**
+     * Runs block reservations
+     */
+    private final Executor reserver;
+
+    /**
+     * The next id to hand out from the current block
+     */
+    private int next = 0;
+
+    /**
+     * The end (exclusive) of the current block
+     */
+    private int end = 0;
+
+    /**
+     * The start of the spare block, or -1 if there is none
+     */
+    private int spare = -1;
+
+    /**
+     * If a block is being reserved
+     */
+    private boolean reserving = false;
+
+    /**
+     * The number of times an id was asked for while no block was available
+     */
+    private final AtomicLong exhausted = new AtomicLong(0);
+
+    public IdAllocator(Database database, String table, int blockSize, Executor reserver) {
+        this.database = database;
+        this.table = table;
+        this.blockSize = blockSize;
+        this.reserver = reserver;
+    }
+
+    /**
+     * Reserve the current and spare blocks, waiting for the database
+     *
+     * @throws SQLException
+     */
+    public void reserveNow() throws SQLException {
+        int current = database.reserveIds(table, blockSize);
+        int reserved = database.reserveIds(table, blockSize);
+
+        synchronized (this) {
+            next = current;
+            end = current + blockSize;
+            spare = reserved;
+        }
+    }
+
+    /**
+     * Get the next id
+     *
+     * @return the id, or -1 if no block is available yet
+     */
+    public synchronized int next() {
+        if (next >= end) {
+            if (spare == -1) {
+                exhausted.incrementAndGet();
+                reserveSpare();
+                return -1;
+            }
+
+            next = spare;
+            end = spare + blockSize;
+            spare = -1;
+        }
+
+        if (spare == -1) {
+            reserveSpare();
+        }
+
+        return next++;
+    }
+
+    /**
+     * Get the table ids are handed out for
+     *
+     * @return
+     */
+    public String getTable() {
+        return table;
+    }
+
+    /**
+     * Get the number of times an id was asked for while no block was available
+     *
+     * @return
+     */
+    public long getExhausted() {
+        return exhausted.get();
+    }
+
+    /**
+     * Reserve a spare block in the background, unless that is already happening
+     */
+    private void reserveSpare() {
+        if (reserving) {
+            return;
+        }
+
+        reserving = true;
+        reserver.execute(new Runnable() {
+            public void run() {
+                int reserved = -1;
+
+                try {
+                    reserved = database.reserveIds(table, blockSize);
+                } catch (SQLException e) {
+                    logger.error("Failed to reserve ids for " + table, e);
+                }
+
+                synchronized (IdAllocator.this) {
+                    if (reserved != -1) {
+                        spare = reserved;
+                    }
+
+                    reserving = false;
+                }
+            }
+        });
+    }
+
+}
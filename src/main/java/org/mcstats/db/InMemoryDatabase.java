@@ -0,0 +1,501 @@
+package org.mcstats.db;
+
+import org.mcstats.MCStats;
+import org.mcstats.model.Column;
+import org.mcstats.model.Graph;
+import org.mcstats.model.Plugin;
+import org.mcstats.model.PluginVersion;
+import org.mcstats.model.Server;
+import org.mcstats.model.ServerPlugin;
+import org.mcstats.util.BloomFilter;
+
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A database kept entirely in memory, for benchmarks and load tests that run without MySQL. Rows
+ * are keyed the same way as their unique keys in the real schema; saves only wait out the
+ * simulated latency since the objects are stored directly. New graphs are created active so
+ * custom data is accepted.
+ */
+public class InMemoryDatabase implements Database {
+
+    private final MCStats mcstats;
+
+    /**
+     * The latency of queries that read
+     */
+    private final SimulatedLatency readLatency;
+
+    /**
+     * The latency of queries that write
+     */
+    private final SimulatedLatency writeLatency;
+
+    /**
+     * The next id of each table
+     */
+    private final AtomicInteger nextPluginId = new AtomicInteger(1);
+    private final AtomicInteger nextVersionId = new AtomicInteger(1);
+    private final AtomicInteger nextServerId = new AtomicInteger(1);
+    private final AtomicInteger nextGraphId = new AtomicInteger(1);
+    private final AtomicInteger nextColumnId = new AtomicInteger(1);
+
+    private final ConcurrentHashMap<String, Plugin> pluginsByName = new ConcurrentHashMap<String, Plugin>();
+
+    private final ConcurrentHashMap<Integer, Plugin> pluginsById = new ConcurrentHashMap<Integer, Plugin>();
+
+    /**
+     * Versions keyed by plugin id and version
+     */
+    private final ConcurrentHashMap<String, PluginVersion> versions = new ConcurrentHashMap<String, PluginVersion>();
+
+    private final ConcurrentHashMap<String, Server> servers = new ConcurrentHashMap<String, Server>();
+
+    /**
+     * Server plugins keyed by server id and plugin id
+     */
+    private final ConcurrentHashMap<String, ServerPlugin> serverPlugins = new ConcurrentHashMap<String, ServerPlugin>();
+
+    /**
+     * Graphs keyed by plugin id and lower case name
+     */
+    private final ConcurrentHashMap<String, Graph> graphs = new ConcurrentHashMap<String, Graph>();
+
+    /**
+     * Columns keyed by graph id and lower case name
+     */
+    private final ConcurrentHashMap<String, Column> columns = new ConcurrentHashMap<String, Column>();
+
+    private final Set<Integer> blacklisted = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+
+    public InMemoryDatabase(MCStats mcstats) {
+        this(mcstats, SimulatedLatency.NONE, SimulatedLatency.NONE);
+    }
+
+    public InMemoryDatabase(MCStats mcstats, SimulatedLatency readLatency, SimulatedLatency writeLatency) {
+        this.mcstats = mcstats;
+        this.readLatency = readLatency;
+        this.writeLatency = writeLatency;
+
+        // the pseudo plugin all servers are aggregated under
+        Plugin global = newPlugin(-1, "All Servers");
+        pluginsById.put(global.getId(), global);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void executeUpdate(String query) throws SQLException {
+        writeLatency.await();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Map<String, String> loadCountries() {
+        readLatency.await();
+
+        Map<String, String> countries = new HashMap<String, String>();
+        countries.put("ZZ", "Unknown");
+        countries.put("US", "United States");
+        countries.put("DE", "Germany");
+        countries.put("GB", "United Kingdom");
+        return countries;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Plugin createPlugin(String name) {
+        writeLatency.await();
+
+        Plugin plugin = newPlugin(nextPluginId.getAndIncrement(), name);
+        Plugin existing = pluginsByName.putIfAbsent(name.toLowerCase(), plugin);
+
+        if (existing != null) {
+            return existing;
+        }
+
+        pluginsById.put(plugin.getId(), plugin);
+        return plugin;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int reserveIds(String table, int count) throws SQLException {
+        writeLatency.await();
+
+        if (table.equals("Plugin")) {
+            return nextPluginId.getAndAdd(count);
+        } else if (table.equals("Graph")) {
+            return nextGraphId.getAndAdd(count);
+        } else if (table.equals("CustomColumn")) {
+            return nextColumnId.getAndAdd(count);
+        }
+
+        throw new SQLException("No id sequence for " + table);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void insertPlugin(Plugin plugin) throws SQLException {
+        writeLatency.await();
+
+        if (pluginsByName.putIfAbsent(plugin.getName().toLowerCase(), plugin) != null) {
+            throw new SQLIntegrityConstraintViolationException("Duplicate plugin " + plugin.getName());
+        }
+
+        pluginsById.put(plugin.getId(), plugin);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public List<Plugin> loadPlugins() {
+        readLatency.await();
+
+        return new ArrayList<Plugin>(pluginsById.values());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Plugin loadPlugin(int id) {
+        readLatency.await();
+
+        return pluginsById.get(id);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Plugin loadPlugin(String name) {
+        readLatency.await();
+
+        return pluginsByName.get(name.toLowerCase());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void savePlugin(Plugin plugin) {
+        writeLatency.await();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public PluginVersion createPluginVersion(Plugin plugin, String version) {
+        writeLatency.await();
+
+        PluginVersion pluginVersion = new PluginVersion(mcstats, plugin);
+        pluginVersion.setId(nextVersionId.getAndIncrement());
+        pluginVersion.setVersion(version);
+        pluginVersion.setCreated((int) (System.currentTimeMillis() / 1000L));
+
+        PluginVersion existing = versions.putIfAbsent(plugin.getId() + "/" + version, pluginVersion);
+        return existing != null ? existing : pluginVersion;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public List<PluginVersion> loadPluginVersions(Plugin plugin) {
+        readLatency.await();
+
+        List<PluginVersion> result = new ArrayList<PluginVersion>();
+        String prefix = plugin.getId() + "/";
+
+        for (Map.Entry<String, PluginVersion> entry : versions.entrySet()) {
+            if (entry.getKey().startsWith(prefix)) {
+                result.add(entry.getValue());
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public PluginVersion loadPluginVersion(Plugin plugin, String version) {
+        readLatency.await();
+
+        return versions.get(plugin.getId() + "/" + version);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public ServerPlugin createServerPlugin(Server server, Plugin plugin, String version) {
+        writeLatency.await();
+
+        if (plugin.getVersionByName(version) == null) {
+            plugin.addVersion(createPluginVersion(plugin, version));
+        }
+
+        ServerPlugin serverPlugin = new ServerPlugin(mcstats, server, plugin);
+        serverPlugin.setVersion(version);
+        serverPlugin.setUpdated((int) (System.currentTimeMillis() / 1000L));
+        serverPlugin.setModified(false);
+
+        ServerPlugin existing = serverPlugins.putIfAbsent(server.getId() + "/" + plugin.getId(), serverPlugin);
+        return existing != null ? existing : serverPlugin;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void insertServerPlugin(ServerPlugin serverPlugin) throws SQLException {
+        writeLatency.await();
+
+        Plugin plugin = serverPlugin.getPlugin();
+
+        if (plugin.getVersionByName(serverPlugin.getVersion()) == null) {
+            plugin.addVersion(createPluginVersion(plugin, serverPlugin.getVersion()));
+        }
+
+        if (serverPlugins.putIfAbsent(serverPlugin.getServer().getId() + "/" + plugin.getId(), serverPlugin) != null) {
+            throw new SQLIntegrityConstraintViolationException("Duplicate server plugin " + serverPlugin.getServer().getId() + "/" + plugin.getName());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public ServerPlugin loadServerPlugin(Server server, Plugin plugin) {
+        readLatency.await();
+
+        return serverPlugins.get(server.getId() + "/" + plugin.getId());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public List<ServerPlugin> loadServerPlugins(Server server) {
+        readLatency.await();
+
+        return new ArrayList<ServerPlugin>(server.getPlugins().values());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void saveServerPlugin(ServerPlugin serverPlugin) {
+        writeLatency.await();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void addPluginVersionHistory(Server server, PluginVersion version) {
+        writeLatency.await();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Server createServer(String guid) {
+        writeLatency.await();
+
+        Server server = new Server(mcstats);
+        server.setId(nextServerId.getAndIncrement());
+        server.setGUID(guid);
+        server.setCountry("ZZ");
+        server.setServerVersion("");
+        server.setCreated((int) (System.currentTimeMillis() / 1000L));
+        server.setModified(false);
+
+        Server existing = servers.putIfAbsent(guid, server);
+        return existing != null ? existing : server;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Server loadServer(String guid) {
+        readLatency.await();
+
+        return servers.get(guid);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int loadServerGuids(BloomFilter filter) {
+        readLatency.await();
+
+        int count = 0;
+
+        for (String guid : servers.keySet()) {
+            filter.add(guid);
+            count++;
+        }
+
+        return count;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void saveServer(Server server) {
+        writeLatency.await();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Graph createGraph(Plugin plugin, String name) {
+        writeLatency.await();
+
+        Graph graph = new Graph(mcstats, plugin);
+        graph.setId(nextGraphId.getAndIncrement());
+        graph.setType(0);
+        graph.setActive(1);
+        graph.setName(name);
+        graph.setDisplayName(name);
+        graph.setScale("linear");
+
+        Graph existing = graphs.putIfAbsent(plugin.getId() + "/" + name.toLowerCase(), graph);
+        return existing != null ? existing : graph;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void insertGraph(Graph graph) throws SQLException {
+        writeLatency.await();
+
+        if (graphs.putIfAbsent(graph.getPlugin().getId() + "/" + graph.getName().toLowerCase(), graph) != null) {
+            throw new SQLIntegrityConstraintViolationException("Duplicate graph " + graph.getName());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Graph loadGraph(Plugin plugin, String name) {
+        readLatency.await();
+
+        return graphs.get(plugin.getId() + "/" + name.toLowerCase());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public List<Graph> loadGraphs(Plugin plugin) {
+        readLatency.await();
+
+        List<Graph> result = new ArrayList<Graph>();
+
+        for (Graph graph : graphs.values()) {
+            if (graph.getPlugin() == plugin) {
+                result.add(graph);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Column createColumn(Graph graph, String name) {
+        writeLatency.await();
+
+        Column column = new Column(mcstats, graph, graph.getPlugin());
+        column.setId(nextColumnId.getAndIncrement());
+        column.setName(name);
+
+        Column existing = columns.putIfAbsent(graph.getId() + "/" + name.toLowerCase(), column);
+        return existing != null ? existing : column;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void insertColumn(Column column) throws SQLException {
+        writeLatency.await();
+
+        if (columns.putIfAbsent(column.getGraph().getId() + "/" + column.getName().toLowerCase(), column) != null) {
+            throw new SQLIntegrityConstraintViolationException("Duplicate column " + column.getName());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Column loadColumn(Graph graph, String name) {
+        readLatency.await();
+
+        return columns.get(graph.getId() + "/" + name.toLowerCase());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public List<Column> loadColumns(Graph graph) {
+        readLatency.await();
+
+        List<Column> result = new ArrayList<Column>();
+
+        for (Column column : columns.values()) {
+            if (column.getGraph() == graph) {
+                result.add(column);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void blacklistServer(Server server) {
+        writeLatency.await();
+
+        blacklisted.add(server.getId());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isServerBlacklisted(Server server) {
+        readLatency.await();
+
+        return blacklisted.contains(server.getId());
+    }
+
+    /**
+     * Create a top level plugin
+     *
+     * @param id
+     * @param name
+     * @return
+     */
+    private Plugin newPlugin(int id, String name) {
+        int now = (int) (System.currentTimeMillis() / 1000L);
+
+        Plugin plugin = new Plugin(mcstats);
+        plugin.setId(id);
+        plugin.setParent(-1);
+        plugin.setName(name);
+        plugin.setAuthors("");
+        plugin.setCreated(now);
+        plugin.setLastUpdated(now);
+        plugin.setModified(false);
+        return plugin;
+    }
+
+}
@@ -0,0 +1,99 @@
+package org.mcstats.db;
+
+import org.mcstats.generator.GeneratedData;
+import org.mcstats.model.Column;
+import org.mcstats.model.Graph;
+import org.mcstats.util.Tuple;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A graph store kept in memory, for benchmarks and load tests that run without MongoDB. Documents
+ * are built exactly as they would be for MongoDB, but only the latest one for each graph is kept
+ * so a long soak test does not grow without bound.
+ */
+public class InMemoryGraphStore implements GraphStore {
+
+    /**
+     * The latency of each insert
+     */
+    private final SimulatedLatency latency;
+
+    /**
+     * The latest document inserted for each graph, keyed by graph id
+     */
+    private final ConcurrentHashMap<Integer, Map<String, Object>> latest = new ConcurrentHashMap<Integer, Map<String, Object>>();
+
+    /**
+     * The number of documents inserted
+     */
+    private final AtomicLong inserts = new AtomicLong(0);
+
+    /**
+     * The approximate number of bytes written
+     */
+    private final AtomicLong bytesWritten = new AtomicLong(0);
+
+    public InMemoryGraphStore() {
+        this(SimulatedLatency.NONE);
+    }
+
+    public InMemoryGraphStore(SimulatedLatency latency) {
+        this.latency = latency;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void insert(Column column, int epoch, long sum, int count, long avg, long max, long min) {
+        Map<String, Object> document = MongoDBGraphStore.createDocument(column, epoch, sum, count, avg, max, min);
+
+        latency.await();
+
+        inserts.incrementAndGet();
+        bytesWritten.addAndGet(MongoDBGraphStore.encodedSize(document));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void insert(Graph graph, List<Tuple<Column, GeneratedData>> data, int epoch) {
+        Map<String, Object> document = MongoDBGraphStore.createDocument(graph, data, epoch);
+
+        latency.await();
+
+        latest.put(graph.getId(), document);
+        inserts.incrementAndGet();
+        bytesWritten.addAndGet(MongoDBGraphStore.encodedSize(document));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    /**
+     * Get the number of documents inserted
+     *
+     * @return
+     */
+    public long getInserts() {
+        return inserts.get();
+    }
+
+    /**
+     * Get the latest document inserted for a graph
+     *
+     * @param graph
+     * @return the document, or null if none was inserted
+     */
+    public Map<String, Object> getLatest(Graph graph) {
+        return latest.get(graph.getId());
+    }
+
+}
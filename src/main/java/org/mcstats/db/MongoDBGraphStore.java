@@ -9,6 +9,8 @@ import com.mongodb.WriteConcern;
 import org.mcstats.MCStats;
 import org.mcstats.generator.GeneratedData;
 import org.mcstats.handler.ReportHandler;
+import org.mcstats.metrics.LatencyRecorder;
+import org.mcstats.metrics.Stage;
 import org.mcstats.model.Column;
 import org.mcstats.model.Graph;
 import org.mcstats.model.Plugin;
@@ -16,12 +18,20 @@ import org.mcstats.util.Tuple;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
 public class MongoDBGraphStore implements GraphStore {
 
     private Logger logger = Logger.getLogger("MongoDB");
 
+    /**
+     * The encoded size of the _id the driver adds to each inserted document
+     */
+    private static final int OBJECT_ID_SIZE = 2 + 3 + 12;
+
     /**
      * The mongo client
      */
@@ -42,7 +52,30 @@ public class MongoDBGraphStore implements GraphStore {
      */
     private DBCollection collStatistic;
 
+    /**
+     * Records the latency of graph data writes
+     */
+    private final LatencyRecorder writeLatency;
+
+    /**
+     * The approximate number of bytes written
+     */
+    private final AtomicLong bytesWritten = new AtomicLong(0);
+
+    /**
+     * Bounds concurrent writes when running on virtual threads, otherwise null
+     */
+    private final Semaphore permits;
+
     public MongoDBGraphStore(MCStats mcstats) {
+        writeLatency = mcstats.getMetrics().recorder(Stage.MONGO_WRITE);
+
+        if (mcstats.isVirtualThreads()) {
+            permits = new Semaphore(Integer.parseInt(mcstats.getConfig().getProperty("threads.virtual.mongoPermits", "20")), true);
+        } else {
+            permits = null;
+        }
+
         try {
             client = new MongoClient(mcstats.getConfig().getProperty("mongo.host"));
 
@@ -65,95 +98,199 @@ public class MongoDBGraphStore implements GraphStore {
         DBObject query = new BasicDBObject().append("_id", 1);
         DBObject op = new BasicDBObject().append("$set", new BasicDBObject("max.epoch", ReportHandler.normalizeTime()));
 
-        collStatistic.update(query, op, true, false);
+        acquire();
+
+        try {
+            collStatistic.update(query, op, true, false);
+        } finally {
+            release();
+        }
     }
 
     /**
      * {@inheritDoc}
      */
-    public void insert(Column column, int epoch, int sum, int count, int avg, int max, int min) {
-        Graph graph = column.getGraph();
-        Plugin plugin = column.getPlugin();
-
+    public void insert(Column column, int epoch, long sum, int count, long avg, long max, long min) {
         // logger.info(String.format("insert(%s, %d, %d, %d, %d, %d, %d)", column.toString(), epoch, sum, count, avg, max, min));
 
-        BasicDBObject toset = new BasicDBObject().append("epoch", epoch).append("plugin", plugin.getId()).append("graph", graph.getId());
-        BasicDBObject data = new BasicDBObject();
-        BasicDBObject col = new BasicDBObject();
+        BasicDBObject toset = createDocument(column, epoch, sum, count, avg, max, min);
 
-        if (sum != 0) {
-            col.append("sum", sum);
-        }
+        write(toset);
+    }
 
-        if (count != 0) {
-            col.append("count", count);
+    /**
+     * {@inheritDoc}
+     */
+    public void insert(Graph graph, List<Tuple<Column, GeneratedData>> listdata, int epoch) {
+        BasicDBObject toset = createDocument(graph, listdata, epoch);
+
+        write(toset);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    /**
+     * Insert a graph data document
+     *
+     * @param document
+     */
+    private void write(BasicDBObject document) {
+        acquire();
+
+        try {
+            long started = System.nanoTime();
+            coll.insert(document);
+            writeLatency.recordSince(started);
+        } finally {
+            release();
         }
 
-        if (avg != 0) {
-            col.append("avg", avg);
+        bytesWritten.addAndGet(OBJECT_ID_SIZE + encodedSize(document));
+    }
+
+    private void acquire() {
+        if (permits != null) {
+            permits.acquireUninterruptibly();
         }
+    }
 
-        if (max != 0) {
-            col.append("max", max);
+    private void release() {
+        if (permits != null) {
+            permits.release();
         }
+    }
 
-        if (min != 0) {
-            col.append("min", min);
+    /**
+     * Calculate the encoded BSON size of a document holding only ints, longs and documents
+     *
+     * @param document
+     * @return
+     */
+    static int encodedSize(Map<?, ?> document) {
+        int size = 5; // length prefix and terminator
+
+        for (Map.Entry<?, ?> entry : document.entrySet()) {
+            Object value = entry.getValue();
+            size += 2 + entry.getKey().toString().length(); // type and key
+
+            if (value instanceof Integer) {
+                size += 4;
+            } else if (value instanceof Map) {
+                size += encodedSize((Map<?, ?>) value);
+            } else {
+                size += 8;
+            }
         }
 
+        return size;
+    }
+
+    /**
+     * Build the document for a single column's data point
+     *
+     * @param column
+     * @param epoch
+     * @param sum
+     * @param count
+     * @param avg
+     * @param max
+     * @param min
+     * @return
+     */
+    public static BasicDBObject createDocument(Column column, int epoch, long sum, int count, long avg, long max, long min) {
+        Graph graph = column.getGraph();
+        Plugin plugin = column.getPlugin();
+
+        BasicDBObject toset = new BasicDBObject().append("epoch", epoch).append("plugin", plugin.getId()).append("graph", graph.getId());
+        BasicDBObject data = new BasicDBObject();
+        BasicDBObject col = createColumnDocument(sum, count, avg, max, min);
+
         data.append(Integer.toString(column.getId()), col);
         toset.append("data", data);
-
-        coll.insert(toset);
+        return toset;
     }
 
     /**
-     * {@inheritDoc}
+     * Create the document holding the data of every column of a graph for an epoch
+     *
+     * @param graph
+     * @param listdata
+     * @param epoch
+     * @return
      */
-    public void insert(Graph graph, List<Tuple<Column, GeneratedData>> listdata, int epoch) {
+    public static BasicDBObject createDocument(Graph graph, List<Tuple<Column, GeneratedData>> listdata, int epoch) {
         Plugin plugin = graph.getPlugin();
 
-        // logger.info(String.format("insert(%s, %d, %d, %d, %d, %d, %d)", column.toString(), epoch, sum, count, avg, max, min));
-
         BasicDBObject toset = new BasicDBObject().append("epoch", epoch).append("plugin", plugin.getId()).append("graph", graph.getId());
         BasicDBObject data = new BasicDBObject();
 
         for (Tuple<Column, GeneratedData> tuple : listdata) {
-            BasicDBObject col = new BasicDBObject();
             Column column = tuple.first();
             GeneratedData gdata = tuple.second();
 
-            int sum = gdata.getSum();
-            int count = gdata.getCount();
-            int avg = gdata.getAverage();
-            int max = gdata.getMax();
-            int min = gdata.getMin();
+            BasicDBObject col = createColumnDocument(gdata.getSum(), gdata.getCount(), gdata.getAverage(), gdata.getMax(), gdata.getMin());
 
-            if (sum != 0) {
-                col.append("sum", sum);
-            }
+            data.append(Integer.toString(column.getId()), col);
+        }
 
-            if (count != 0) {
-                col.append("count", count);
-            }
+        toset.append("data", data);
+        return toset;
+    }
 
-            if (avg != 0) {
-                col.append("avg", avg);
-            }
+    /**
+     * Create the document for a single column's data. Zero values are omitted.
+     *
+     * @param sum
+     * @param count
+     * @param avg
+     * @param max
+     * @param min
+     * @return
+     */
+    private static BasicDBObject createColumnDocument(long sum, int count, long avg, long max, long min) {
+        BasicDBObject col = new BasicDBObject();
 
-            if (max != 0) {
-                col.append("max", max);
-            }
+        if (sum != 0) {
+            col.append("sum", narrow(sum));
+        }
 
-            if (min != 0) {
-                col.append("min", min);
-            }
+        if (count != 0) {
+            col.append("count", count);
+        }
 
-            data.append(Integer.toString(column.getId()), col);
+        if (avg != 0) {
+            col.append("avg", narrow(avg));
         }
 
-        toset.append("data", data);
+        if (max != 0) {
+            col.append("max", narrow(max));
+        }
+
+        if (min != 0) {
+            col.append("min", narrow(min));
+        }
+
+        return col;
+    }
+
+    /**
+     * Narrow a value to a 32-bit int if it fits so existing documents and readers keep seeing
+     * int32 values. Only values outside of the int range are stored as int64.
+     *
+     * @param value
+     * @return
+     */
+    private static Object narrow(long value) {
+        if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+            return (int) value;
+        }
 
-        coll.insert(toset);
+        return value;
     }
+
 }
@@ -3,12 +3,15 @@ package org.mcstats.db;
 import org.apache.commons.dbcp.BasicDataSource;
 import org.apache.log4j.Logger;
 import org.mcstats.MCStats;
+import org.mcstats.metrics.QueryMetrics;
+import org.mcstats.metrics.QueryStats;
 import org.mcstats.model.Column;
 import org.mcstats.model.Graph;
 import org.mcstats.model.Plugin;
 import org.mcstats.model.PluginVersion;
 import org.mcstats.model.Server;
 import org.mcstats.model.ServerPlugin;
+import org.mcstats.util.BloomFilter;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -24,8 +27,6 @@ public class MySQLDatabase implements Database {
 
     private Logger logger = Logger.getLogger("Database");
 
-    public static long QUERIES = 0;
-
     /**
      * The mcstats object
      */
@@ -41,12 +42,18 @@ public class MySQLDatabase implements Database {
      */
     private BasicDataSource ds;
 
+    /**
+     * Statistics for every query
+     */
+    private final QueryMetrics queryMetrics;
+
     public MySQLDatabase(MCStats mcstats, String hostname, String databaseName, String username, String password) {
         if (hostname == null || databaseName == null || username == null || password == null) {
             throw new IllegalArgumentException("All arguments must not be null");
         }
 
         this.mcstats = mcstats;
+        queryMetrics = mcstats.getMetrics().getQueries();
 
         // Create the mysql data dataSource.getConnectionion() pool
         ds = new BasicDataSource();
@@ -63,10 +70,18 @@ public class MySQLDatabase implements Database {
         Connection connection = null;
 
         try {
-            connection = ds.getConnection();
+            connection = getConnection();
             statement = connection.createStatement();
-            statement.executeUpdate(query);
-            QUERIES++;
+
+            QueryStats stats = queryMetrics.get("executeUpdate");
+            long started = System.nanoTime();
+
+            try {
+                stats.record(started, statement.executeUpdate(query));
+            } catch (SQLException e) {
+                stats.recordError(started);
+                throw e;
+            }
         } finally {
             if (statement != null) {
                 statement.close();
@@ -80,9 +95,9 @@ public class MySQLDatabase implements Database {
         Map<String, String> countries = new HashMap<String, String>();
 
         try {
-            Connection connection = ds.getConnection();
+            Connection connection = getConnection();
             PreparedStatement statement = connection.prepareStatement("SELECT ShortCode, FullName FROM Country");
-            ResultSet set = statement.executeQuery();
+            ResultSet set = executeQuery("loadCountries", statement);
 
             while (set.next()) {
                 countries.put(set.getString("ShortCode"), set.getString("FullName"));
@@ -99,11 +114,10 @@ public class MySQLDatabase implements Database {
         Connection connection = null;
 
         try {
-            connection = ds.getConnection();
+            connection = getConnection();
             PreparedStatement statement = connection.prepareStatement("INSERT INTO Plugin (Name, Author, Hidden, GlobalHits, Created) VALUES (?, '', 0, 0, UNIX_TIMESTAMP())");
             statement.setString(1, name);
-            statement.executeUpdate();
-            QUERIES++;
+            executeUpdate("createPlugin", statement);
         } catch (SQLException e) {
             e.printStackTrace();
         } finally {
@@ -114,13 +128,84 @@ public class MySQLDatabase implements Database {
         return loadPlugin(name);
     }
 
+    public int reserveIds(String table, int count) throws SQLException {
+        Connection connection = null;
+
+        try {
+            connection = getConnection();
+
+            // the range is set up by id-sequence.sql, which starts the table's AUTO_INCREMENT at the end of it. Before
+            // MySQL 8 the counter is recomputed from MAX(ID) on a restart and can fall back into the range, so nothing
+            // is reserved unless it is still past the end
+            PreparedStatement check = connection.prepareStatement("SELECT s.EndId, t.AUTO_INCREMENT FROM IdSequence s, information_schema.TABLES t WHERE s.Name = ? AND t.TABLE_SCHEMA = DATABASE() AND t.TABLE_NAME = ?");
+            check.setString(1, table);
+            check.setString(2, table);
+            ResultSet set = executeQuery("reserveIdsCheck", check);
+
+            try {
+                if (!set.next()) {
+                    throw new SQLException("No id range for " + table + ", run id-sequence.sql");
+                }
+
+                if (set.getLong(2) < set.getLong(1)) {
+                    throw new SQLException("The AUTO_INCREMENT of " + table + " is inside its reserved id range, run id-sequence.sql again");
+                }
+            } finally {
+                set.close();
+            }
+
+            // LAST_INSERT_ID(expr) makes the new value readable on this connection
+            PreparedStatement reserve = connection.prepareStatement("UPDATE IdSequence SET NextId = LAST_INSERT_ID(NextId + ?) WHERE Name = ? AND NextId + ? <= EndId");
+            reserve.setInt(1, count);
+            reserve.setString(2, table);
+            reserve.setInt(3, count);
+
+            if (executeUpdate("reserveIds", reserve) == 0) {
+                throw new SQLException("The reserved id range for " + table + " is used up");
+            }
+
+            set = executeQuery("reserveIds", connection.prepareStatement("SELECT LAST_INSERT_ID()"));
+
+            try {
+                if (!set.next()) {
+                    throw new SQLException("No id was reserved for " + table);
+                }
+
+                return set.getInt(1) - count;
+            } finally {
+                set.close();
+            }
+        } finally {
+            safeClose(connection);
+        }
+    }
+
+    public void insertPlugin(Plugin plugin) throws SQLException {
+        Connection connection = null;
+
+        try {
+            connection = getConnection();
+            PreparedStatement statement = connection.prepareStatement("INSERT INTO Plugin (ID, Parent, Name, Author, Hidden, GlobalHits, Created) VALUES (?, ?, ?, ?, ?, ?, ?)");
+            statement.setInt(1, plugin.getId());
+            statement.setInt(2, plugin.getParent());
+            statement.setString(3, plugin.getName());
+            statement.setString(4, plugin.getAuthors());
+            statement.setInt(5, plugin.getHidden());
+            statement.setInt(6, plugin.getGlobalHits());
+            statement.setInt(7, plugin.getCreated());
+            executeUpdate("insertPlugin", statement);
+        } finally {
+            safeClose(connection);
+        }
+    }
+
     public List<Plugin> loadPlugins() {
         List<Plugin> plugins = new ArrayList<Plugin>();
 
         try {
-            Connection connection = ds.getConnection();
+            Connection connection = getConnection();
             PreparedStatement statement = connection.prepareStatement("SELECT ID, Parent, Name, Author, Hidden, GlobalHits, Rank, LastRank, LastRankChange, Created, LastUpdated, ServerCount30 FROM Plugin WHERE Parent = -1");
-            ResultSet set = statement.executeQuery();
+            ResultSet set = executeQuery("loadPlugins", statement);
 
             while (set.next()) {
                 plugins.add(resolvePlugin(set));
@@ -138,10 +223,10 @@ public class MySQLDatabase implements Database {
 
     public Plugin loadPlugin(int id) {
         try {
-            Connection connection = ds.getConnection();
+            Connection connection = getConnection();
             PreparedStatement statement = connection.prepareStatement("SELECT ID, Parent, Name, Author, Hidden, GlobalHits, Rank, LastRank, LastRankChange, Created, LastUpdated, ServerCount30 FROM Plugin WHERE ID = ?");
             statement.setInt(1, id);
-            ResultSet set = statement.executeQuery();
+            ResultSet set = executeQuery("loadPlugin", statement);
 
             if (set.next()) {
                 Plugin plugin = resolvePlugin(set);
@@ -159,10 +244,10 @@ public class MySQLDatabase implements Database {
 
     public Plugin loadPlugin(String name) {
         try {
-            Connection connection = ds.getConnection();
+            Connection connection = getConnection();
             PreparedStatement statement = connection.prepareStatement("SELECT ID, Parent, Name, Author, Hidden, GlobalHits, Rank, LastRank, LastRankChange, Created, LastUpdated, ServerCount30 FROM Plugin WHERE Name = ?");
             statement.setString(1, name);
-            ResultSet set = statement.executeQuery();
+            ResultSet set = executeQuery("loadPlugin", statement);
 
             if (set.next()) {
                 Plugin plugin = resolvePlugin(set);
@@ -180,7 +265,7 @@ public class MySQLDatabase implements Database {
 
     public void savePlugin(Plugin plugin) {
         try {
-            Connection connection = ds.getConnection();
+            Connection connection = getConnection();
             PreparedStatement statement = connection.prepareStatement("UPDATE Plugin SET Name = ?, Hidden = ?, GlobalHits = ?, Rank = ?, LastRank = ?, LastRankChange = ?, Created = ?, LastUpdated = ?, ServerCount30 = ? WHERE ID = ?");
             statement.setString(1, plugin.getName());
             statement.setInt(2, plugin.getHidden());
@@ -193,9 +278,8 @@ public class MySQLDatabase implements Database {
             statement.setInt(9, plugin.getServerCount30());
             statement.setInt(10, plugin.getId());
 
-            statement.executeUpdate();
+            executeUpdate("savePlugin", statement);
             safeClose(connection);
-            QUERIES++;
         } catch (SQLException e) {
             e.printStackTrace();
         }
@@ -205,12 +289,11 @@ public class MySQLDatabase implements Database {
         Connection connection = null;
 
         try {
-            connection = ds.getConnection();
+            connection = getConnection();
             PreparedStatement statement = connection.prepareStatement("INSERT INTO Versions (Plugin, Version, Created) VALUES (?, ?, UNIX_TIMESTAMP())");
             statement.setInt(1, plugin.getId());
             statement.setString(2, version);
-            statement.executeUpdate();
-            QUERIES++;
+            executeUpdate("createPluginVersion", statement);
         } catch (SQLException e) {
             e.printStackTrace();
         } finally {
@@ -224,10 +307,10 @@ public class MySQLDatabase implements Database {
         List<PluginVersion> versions = new ArrayList<PluginVersion>();
 
         try {
-            Connection connection = ds.getConnection();
+            Connection connection = getConnection();
             PreparedStatement statement = connection.prepareStatement("SELECT ID, Version, Created FROM Versions WHERE Plugin = ?");
             statement.setInt(1, plugin.getId());
-            ResultSet set = statement.executeQuery();
+            ResultSet set = executeQuery("loadPluginVersions", statement);
 
             while (set.next()) {
                 versions.add(resolvePluginVersion(plugin, set));
@@ -235,7 +318,6 @@ public class MySQLDatabase implements Database {
 
             set.close();
             safeClose(connection);
-            QUERIES++;
         } catch (SQLException e) {
             e.printStackTrace();
         }
@@ -245,11 +327,11 @@ public class MySQLDatabase implements Database {
 
     public PluginVersion loadPluginVersion(Plugin plugin, String version) {
         try {
-            Connection connection = ds.getConnection();
+            Connection connection = getConnection();
             PreparedStatement statement = connection.prepareStatement("SELECT ID, Version, Created FROM Versions WHERE Plugin = ? AND Version = ?");
             statement.setInt(1, plugin.getId());
             statement.setString(2, version);
-            ResultSet set = statement.executeQuery();
+            ResultSet set = executeQuery("loadPluginVersion", statement);
 
             if (set.next()) {
                 PluginVersion pluginVersion = resolvePluginVersion(plugin, set);
@@ -259,7 +341,6 @@ public class MySQLDatabase implements Database {
             }
 
             safeClose(connection);
-            QUERIES++;
         } catch (SQLException e) {
             e.printStackTrace();
         }
@@ -283,31 +364,60 @@ public class MySQLDatabase implements Database {
 
         Connection connection = null;
         try {
-            connection = ds.getConnection();
+            connection = getConnection();
             PreparedStatement statement = connection.prepareStatement("INSERT INTO ServerPlugin (Server, Plugin, Version, Updated) VALUES (?, ?, ?, UNIX_TIMESTAMP())");
             statement.setInt(1, server.getId());
             statement.setInt(2, plugin.getId());
             statement.setString(3, version);
 
-            statement.executeUpdate();
+            executeUpdate("createServerPlugin", statement);
         } catch (SQLException e) {
             logger.info("createServerPlugin() => " + e.getMessage());
         } finally {
             safeClose(connection);
         }
 
-        QUERIES++;
         return loadServerPlugin(server, plugin);
     }
 
+    public void insertServerPlugin(ServerPlugin serverPlugin) throws SQLException {
+        Plugin plugin = serverPlugin.getPlugin();
+        String version = serverPlugin.getVersion();
+
+        // make sure there's a Versions row for that version
+        if (plugin.getVersionByName(version) == null && loadPluginVersion(plugin, version) == null) {
+            PluginVersion pluginVersion = createPluginVersion(plugin, version);
+
+            if (pluginVersion == null) {
+                throw new SQLException("Failed to create version " + version + " of " + plugin.getName());
+            }
+
+            plugin.addVersion(pluginVersion);
+        }
+
+        Connection connection = null;
+
+        try {
+            connection = getConnection();
+            PreparedStatement statement = connection.prepareStatement("INSERT INTO ServerPlugin (Server, Plugin, Version, Revision, Updated) VALUES (?, ?, ?, ?, ?)");
+            statement.setInt(1, serverPlugin.getServer().getId());
+            statement.setInt(2, plugin.getId());
+            statement.setString(3, version);
+            statement.setInt(4, serverPlugin.getRevision());
+            statement.setInt(5, serverPlugin.getUpdated());
+            executeUpdate("insertServerPlugin", statement);
+        } finally {
+            safeClose(connection);
+        }
+    }
+
     public ServerPlugin loadServerPlugin(Server server, Plugin plugin) {
         try {
-            Connection connection = ds.getConnection();
+            Connection connection = getConnection();
             PreparedStatement statement = connection.prepareStatement("SELECT Version, Revision, Updated FROM ServerPlugin WHERE Server = ? AND Plugin = ?");
             statement.setInt(1, server.getId());
             statement.setInt(2, plugin.getId());
-            ResultSet set = statement.executeQuery();
-            QUERIES++;
+            ResultSet set = executeQuery("loadServerPlugin", statement);
 
             if (set.next()) {
                 String version = set.getString("Version");
@@ -337,11 +447,10 @@ public class MySQLDatabase implements Database {
         List<ServerPlugin> plugins = new ArrayList<ServerPlugin>();
 
         try {
-            Connection connection = ds.getConnection();
+            Connection connection = getConnection();
             PreparedStatement statement = connection.prepareStatement("SELECT Plugin, Version, Revision, Updated FROM ServerPlugin WHERE Server = ?");
             statement.setInt(1, server.getId());
-            ResultSet set = statement.executeQuery();
-            QUERIES++;
+            ResultSet set = executeQuery("loadServerPlugins", statement);
 
             while (set.next()) {
                 int pluginId = set.getInt("Plugin");
@@ -373,7 +482,7 @@ public class MySQLDatabase implements Database {
     public void saveServerPlugin(ServerPlugin serverPlugin) {
         Connection connection = null;
         try {
-            connection = ds.getConnection();
+            connection = getConnection();
             PreparedStatement statement;
 
             if (serverPlugin.isVersionModified()) {
@@ -389,8 +498,7 @@ public class MySQLDatabase implements Database {
                 statement.setInt(3, serverPlugin.getPlugin().getId());
             }
 
-            statement.executeUpdate();
-            QUERIES++;
+            executeUpdate("saveServerPlugin", statement);
         } catch (SQLException e) {
             e.printStackTrace();
         } finally {
@@ -400,13 +508,13 @@ public class MySQLDatabase implements Database {
 
     public void addPluginVersionHistory(Server server, PluginVersion version) {
         try {
-            Connection connection = ds.getConnection();
+            Connection connection = getConnection();
             PreparedStatement statement = connection.prepareStatement("INSERT INTO VersionHistory (Plugin, Server, Version, Created) VALUES (?, ?, ?, UNIX_TIMESTAMP())");
             statement.setInt(1, version.getPlugin().getId());
             statement.setInt(2, server.getId());
             statement.setInt(3, version.getId());
 
-            statement.executeUpdate();
+            executeUpdate("addPluginVersionHistory", statement);
             safeClose(connection);
         } catch (SQLException e) {
             e.printStackTrace();
@@ -417,11 +525,10 @@ public class MySQLDatabase implements Database {
         Connection connection = null;
 
         try {
-            connection = ds.getConnection();
+            connection = getConnection();
             PreparedStatement statement = connection.prepareStatement("INSERT INTO Server (GUID, Players, Country, ServerVersion, Created) VALUES (?, 0, 'ZZ', '', UNIX_TIMESTAMP())");
             statement.setString(1, guid);
-            statement.executeUpdate();
-            QUERIES++;
+            executeUpdate("createServer", statement);
         } catch (SQLException e) {
             logger.info("createServer() => " + e.getMessage());
             return loadServer(guid);
@@ -435,11 +542,10 @@ public class MySQLDatabase implements Database {
 
     public Server loadServer(String guid) {
         try {
-            Connection connection = ds.getConnection();
+            Connection connection = getConnection();
             PreparedStatement statement = connection.prepareStatement("SELECT ID, GUID, Players, Country, ServerVersion, Created, ServerSoftware, MinecraftVersion, osname, osarch, osversion, cores, online_mode, java_name, java_version FROM Server WHERE GUID = ?");
             statement.setString(1, guid);
-            ResultSet set = statement.executeQuery();
-            QUERIES++;
+            ResultSet set = executeQuery("loadServer", statement);
 
             if (set.next()) {
                 Server server = resolveServer(set);
@@ -456,10 +562,37 @@ public class MySQLDatabase implements Database {
         return null;
     }
 
+    public int loadServerGuids(BloomFilter filter) {
+        Connection connection = null;
+
+        try {
+            connection = getConnection();
+
+            // stream the rows rather than buffering every guid in the driver
+            PreparedStatement statement = connection.prepareStatement("SELECT GUID FROM Server", ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(Integer.MIN_VALUE);
+            ResultSet set = executeQuery("loadServerGuids", statement);
+            int count = 0;
+
+            while (set.next()) {
+                filter.add(set.getString(1));
+                count++;
+            }
+
+            set.close();
+            return count;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return -1;
+        } finally {
+            safeClose(connection);
+        }
+    }
+
     public void saveServer(Server server) {
         Connection connection = null;
         try {
-            connection = ds.getConnection();
+            connection = getConnection();
             PreparedStatement statement = connection.prepareStatement("UPDATE Server SET GUID = ?, ServerVersion = ?, Players = ?, Country = ?, Created = ?, ServerSoftware = ?, MinecraftVersion = ?, osname = ?, osarch = ?, osversion = ?, cores = ?, online_mode = ?, java_name = ?, java_version = ? WHERE ID = ?");
             statement.setString(1, server.getGUID());
             statement.setString(2, server.getServerVersion());
@@ -477,8 +610,7 @@ public class MySQLDatabase implements Database {
             statement.setString(14, server.getJavaVersion());
             statement.setInt(15, server.getId());
 
-            statement.executeUpdate();
-            QUERIES++;
+            executeUpdate("saveServer", statement);
         } catch (SQLException e) {
             e.printStackTrace();
         } finally {
@@ -490,7 +622,7 @@ public class MySQLDatabase implements Database {
         Connection connection = null;
 
         try {
-            connection = ds.getConnection();
+            connection = getConnection();
             PreparedStatement statement = connection.prepareStatement("INSERT INTO Graph (Plugin, Type, Active, Name, DisplayName, Scale) VALUES (?, ?, ?, ?, ?, ?)");
             statement.setInt(1, plugin.getId());
             statement.setInt(2, 0); // line
@@ -498,7 +630,7 @@ public class MySQLDatabase implements Database {
             statement.setString(4, name);
             statement.setString(5, name);
             statement.setString(6, "linear");
-            statement.executeUpdate();
+            executeUpdate("createGraph", statement);
         } catch (SQLException e) {
             e.printStackTrace();
         } finally {
@@ -508,13 +640,32 @@ public class MySQLDatabase implements Database {
         return loadGraph(plugin, name);
     }
 
+    public void insertGraph(Graph graph) throws SQLException {
+        Connection connection = null;
+
+        try {
+            connection = getConnection();
+            PreparedStatement statement = connection.prepareStatement("INSERT INTO Graph (ID, Plugin, Type, Active, Name, DisplayName, Scale) VALUES (?, ?, ?, ?, ?, ?, ?)");
+            statement.setInt(1, graph.getId());
+            statement.setInt(2, graph.getPlugin().getId());
+            statement.setInt(3, graph.getType());
+            statement.setInt(4, graph.getActive());
+            statement.setString(5, graph.getName());
+            statement.setString(6, graph.getDisplayName());
+            statement.setString(7, graph.getScale());
+            executeUpdate("insertGraph", statement);
+        } finally {
+            safeClose(connection);
+        }
+    }
+
     public Graph loadGraph(Plugin plugin, String name) {
         try {
-            Connection connection = ds.getConnection();
+            Connection connection = getConnection();
             PreparedStatement statement = connection.prepareStatement("SELECT ID, Type, Position, Active, Name, DisplayName, Scale FROM Graph WHERE Plugin = ? AND Name = ?");
             statement.setInt(1, plugin.getId());
             statement.setString(2, name);
-            ResultSet set = statement.executeQuery();
+            ResultSet set = executeQuery("loadGraph", statement);
 
             if (set.next()) {
                 Graph graph = resolveGraph(plugin, set);
@@ -534,10 +685,10 @@ public class MySQLDatabase implements Database {
     public List<Graph> loadGraphs(Plugin plugin) {
         List<Graph> graphs = new ArrayList<Graph>();
         try {
-            Connection connection = ds.getConnection();
+            Connection connection = getConnection();
             PreparedStatement statement = connection.prepareStatement("SELECT ID, Type, Position, Active, Name, DisplayName, Scale FROM Graph WHERE Plugin = ?");
             statement.setInt(1, plugin.getId());
-            ResultSet set = statement.executeQuery();
+            ResultSet set = executeQuery("loadGraphs", statement);
 
             while (set.next()) {
                 Graph graph = resolveGraph(plugin, set);
@@ -561,13 +712,12 @@ public class MySQLDatabase implements Database {
         Connection connection = null;
 
         try {
-            connection = ds.getConnection();
+            connection = getConnection();
             PreparedStatement statement = connection.prepareStatement("INSERT INTO CustomColumn (Plugin, Graph, Name) VALUES (?, ?, ?)");
             statement.setInt(1, graph.getPlugin().getId());
             statement.setInt(2, graph.getId());
             statement.setString(3, name);
-            statement.executeUpdate();
-            QUERIES++;
+            executeUpdate("createColumn", statement);
         } catch (SQLException e) {
 
 
@@ -578,18 +728,33 @@ public class MySQLDatabase implements Database {
         return loadColumn(graph, name);
     }
 
+    public void insertColumn(Column column) throws SQLException {
+        Connection connection = null;
+
+        try {
+            connection = getConnection();
+            PreparedStatement statement = connection.prepareStatement("INSERT INTO CustomColumn (ID, Plugin, Graph, Name) VALUES (?, ?, ?, ?)");
+            statement.setInt(1, column.getId());
+            statement.setInt(2, column.getPlugin().getId());
+            statement.setInt(3, column.getGraph().getId());
+            statement.setString(4, column.getName());
+            executeUpdate("insertColumn", statement);
+        } finally {
+            safeClose(connection);
+        }
+    }
+
     public Column loadColumn(Graph graph, String name) {
         if (name.length() > 100) {
             return null;
         }
 
         try {
-            Connection connection = ds.getConnection();
+            Connection connection = getConnection();
             PreparedStatement statement = connection.prepareStatement("SELECT ID, Name FROM CustomColumn WHERE Graph = ? AND Name = ?");
             statement.setInt(1, graph.getId());
             statement.setString(2, name);
-            ResultSet set = statement.executeQuery();
-            QUERIES++;
+            ResultSet set = executeQuery("loadColumn", statement);
 
             if (set.next()) {
                 Column column = resolveColumn(graph.getPlugin(), graph, set);
@@ -609,11 +774,10 @@ public class MySQLDatabase implements Database {
     public List<Column> loadColumns(Graph graph) {
         List<Column> columns = new ArrayList<Column>();
         try {
-            Connection connection = ds.getConnection();
+            Connection connection = getConnection();
             PreparedStatement statement = connection.prepareStatement("SELECT ID, Name FROM CustomColumn WHERE Graph = ?");
             statement.setInt(1, graph.getId());
-            ResultSet set = statement.executeQuery();
-            QUERIES++;
+            ResultSet set = executeQuery("loadColumns", statement);
 
             while (set.next()) {
                 Column column = resolveColumn(graph.getPlugin(), graph, set);
@@ -631,12 +795,11 @@ public class MySQLDatabase implements Database {
 
     public void blacklistServer(Server server) {
         try {
-            Connection connection = ds.getConnection();
+            Connection connection = getConnection();
             PreparedStatement statement = connection.prepareStatement("INSERT INTO ServerBlacklist (Server, Violations) VALUES (?, ?)");
             statement.setInt(1, server.getId());
             statement.setInt(2, server.getViolationCount());
-            statement.executeUpdate();
-            QUERIES++;
+            executeUpdate("blacklistServer", statement);
 
             // Now remove any version history
             statement = connection.prepareStatement("DELETE FROM VersionHistory WHERE Server = ?");
@@ -651,12 +814,11 @@ public class MySQLDatabase implements Database {
 
     public boolean isServerBlacklisted(Server server) {
         try {
-            Connection connection = ds.getConnection();
+            Connection connection = getConnection();
             PreparedStatement statement = connection.prepareStatement("SELECT Violations FROM ServerBlacklist WHERE Server = ?");
             statement.setInt(1, server.getId());
-            QUERIES++;
 
-            ResultSet set = statement.executeQuery();
+            ResultSet set = executeQuery("isServerBlacklisted", statement);
             int violations = -1;
             if (set.next()) {
                 violations = set.getInt("Violations");
@@ -671,6 +833,96 @@ public class MySQLDatabase implements Database {
         }
     }
 
+    /**
+     * Get the number of connections in use
+     *
+     * @return
+     */
+    public int getActiveConnections() {
+        return ds.getNumActive();
+    }
+
+    /**
+     * Get the number of idle connections in the pool
+     *
+     * @return
+     */
+    public int getIdleConnections() {
+        return ds.getNumIdle();
+    }
+
+    /**
+     * Get the maximum number of connections in the pool
+     *
+     * @return
+     */
+    public int getMaxConnections() {
+        return ds.getMaxActive();
+    }
+
+    /**
+     * Get a connection from the pool, recording how long it took
+     *
+     * @return
+     * @throws SQLException
+     */
+    private Connection getConnection() throws SQLException {
+        long started = System.nanoTime();
+
+        try {
+            return ds.getConnection();
+        } catch (SQLException e) {
+            queryMetrics.recordConnectionError();
+            throw e;
+        } finally {
+            queryMetrics.recordConnectionWait(started);
+        }
+    }
+
+    /**
+     * Run a select, recording its statistics under the given name
+     *
+     * @param name
+     * @param statement
+     * @return
+     * @throws SQLException
+     */
+    private ResultSet executeQuery(String name, PreparedStatement statement) throws SQLException {
+        QueryStats stats = queryMetrics.get(name);
+        long started = System.nanoTime();
+
+        try {
+            ResultSet set = statement.executeQuery();
+            stats.record(started, 0);
+            return set;
+        } catch (SQLException e) {
+            stats.recordError(started);
+            throw e;
+        }
+    }
+
+    /**
+     * Run an update, recording its statistics under the given name
+     *
+     * @param name
+     * @param statement
+     * @return the number of rows affected
+     * @throws SQLException
+     */
+    private int executeUpdate(String name, PreparedStatement statement) throws SQLException {
+        QueryStats stats = queryMetrics.get(name);
+        long started = System.nanoTime();
+
+        try {
+            int rows = statement.executeUpdate();
+            stats.record(started, rows);
+            return rows;
+        } catch (SQLException e) {
+            stats.recordError(started);
+            throw e;
+        }
+    }
+
     /**
      * Close a connection
      *
@@ -0,0 +1,173 @@
+package org.mcstats.db;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A latency distribution that in-memory stores wait on to behave like a remote database. The
+ * distribution is given as a spec, with all times in milliseconds:
+ *
+ * none
+ * fixed:ms
+ * uniform:min:max
+ * exponential:mean
+ * lognormal:median:p99
+ */
+public class SimulatedLatency {
+
+    /**
+     * No latency at all
+     */
+    public static final SimulatedLatency NONE = new SimulatedLatency("none", Type.NONE, 0, 0);
+
+    /**
+     * The z-score of the 99th percentile of a normal distribution
+     */
+    private static final double Z_99 = 2.326348;
+
+    private enum Type {
+        NONE, FIXED, UNIFORM, EXPONENTIAL, LOGNORMAL
+    }
+
+    /**
+     * The spec the distribution was parsed from
+     */
+    private final String spec;
+
+    private final Type type;
+
+    /**
+     * The first parameter of the distribution, in nanoseconds (for lognormal, the log of it)
+     */
+    private final double a;
+
+    /**
+     * The second parameter of the distribution, in nanoseconds (for lognormal, the sigma)
+     */
+    private final double b;
+
+    private SimulatedLatency(String spec, Type type, double a, double b) {
+        this.spec = spec;
+        this.type = type;
+        this.a = a;
+        this.b = b;
+    }
+
+    /**
+     * Parse a latency spec
+     *
+     * @param spec
+     * @return
+     * @throws IllegalArgumentException if the spec is not valid
+     */
+    public static SimulatedLatency parse(String spec) {
+        if (spec == null || spec.trim().isEmpty() || spec.trim().equalsIgnoreCase("none")) {
+            return NONE;
+        }
+
+        String[] parts = spec.trim().toLowerCase().split(":");
+
+        try {
+            if (parts[0].equals("fixed") && parts.length == 2) {
+                return new SimulatedLatency(spec, Type.FIXED, millis(parts[1]), 0);
+            } else if (parts[0].equals("uniform") && parts.length == 3) {
+                double min = millis(parts[1]);
+                double max = millis(parts[2]);
+
+                if (max < min) {
+                    throw new IllegalArgumentException("Latency maximum is below the minimum: " + spec);
+                }
+
+                return new SimulatedLatency(spec, Type.UNIFORM, min, max);
+            } else if (parts[0].equals("exponential") && parts.length == 2) {
+                return new SimulatedLatency(spec, Type.EXPONENTIAL, millis(parts[1]), 0);
+            } else if (parts[0].equals("lognormal") && parts.length == 3) {
+                double median = millis(parts[1]);
+                double p99 = millis(parts[2]);
+
+                if (median <= 0 || p99 < median) {
+                    throw new IllegalArgumentException("Latency 99th percentile must be at least the median: " + spec);
+                }
+
+                return new SimulatedLatency(spec, Type.LOGNORMAL, Math.log(median), Math.log(p99 / median) / Z_99);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid latency: " + spec, e);
+        }
+
+        throw new IllegalArgumentException("Invalid latency: " + spec);
+    }
+
+    /**
+     * Draw a latency from the distribution
+     *
+     * @param random
+     * @return the latency in nanoseconds
+     */
+    public long sample(Random random) {
+        switch (type) {
+            case FIXED:
+                return (long) a;
+
+            case UNIFORM:
+                return (long) (a + random.nextDouble() * (b - a));
+
+            case EXPONENTIAL:
+                return (long) (-a * Math.log(1 - random.nextDouble()));
+
+            case LOGNORMAL:
+                return (long) Math.exp(a + b * random.nextGaussian());
+
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Block the calling thread for a latency drawn from the distribution
+     */
+    public void await() {
+        if (type == Type.NONE) {
+            return;
+        }
+
+        long deadline = System.nanoTime() + sample(ThreadLocalRandom.current());
+        long remaining;
+
+        // parkNanos can return early, so keep going until the deadline
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+
+            if (Thread.interrupted()) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Check if this adds any latency
+     *
+     * @return
+     */
+    public boolean isNone() {
+        return type == Type.NONE;
+    }
+
+    @Override
+    public String toString() {
+        return spec;
+    }
+
+    private static double millis(String value) {
+        double millis = Double.parseDouble(value);
+
+        if (millis < 0) {
+            throw new IllegalArgumentException("Latency cannot be negative: " + value);
+        }
+
+        return millis * 1000000D;
+    }
+
+}
@@ -0,0 +1,208 @@
+package org.mcstats.decoder;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Per-thread scratch space for decoding request bodies, so decoding does not allocate
+ * readers, buffers or inflaters for every request. Decoding runs on the request threads,
+ * which are pooled, so each thread keeps its own instance.
+ */
+final class DecodeBuffers {
+
+    private static final ThreadLocal<DecodeBuffers> LOCAL = new ThreadLocal<DecodeBuffers>() {
+        @Override
+        protected DecodeBuffers initialValue() {
+            return new DecodeBuffers();
+        }
+    };
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * The initial size of the buffers
+     */
+    private static final int INITIAL_SIZE = 4096;
+
+    /**
+     * Buffers that grew beyond this for an unusually large request are not kept
+     */
+    private static final int MAX_RETAINED_SIZE = 64 * 1024;
+
+    /**
+     * The bytes of the body as they were received
+     */
+    private byte[] raw = new byte[INITIAL_SIZE];
+
+    /**
+     * The inflated bytes of a gzip encoded body
+     */
+    private byte[] inflated = new byte[INITIAL_SIZE];
+
+    /**
+     * Inflater for gzip encoded bodies
+     */
+    private final Inflater inflater = new Inflater(true);
+
+    /**
+     * The key/value pairs of a form encoded body
+     */
+    private final Map<String, String> form = new HashMap<String, String>();
+
+    private DecodeBuffers() {
+    }
+
+    /**
+     * Get the buffers for the current thread
+     *
+     * @return
+     */
+    public static DecodeBuffers get() {
+        return LOCAL.get();
+    }
+
+    /**
+     * Get the cleared form map for the current request
+     *
+     * @return
+     */
+    public Map<String, String> getForm() {
+        form.clear();
+        return form;
+    }
+
+    /**
+     * Read a body as UTF-8 text, inflating it first if it is gzip encoded. Line breaks are
+     * dropped, as they were when bodies were read line by line.
+     *
+     * @param body
+     * @param gzip
+     * @return
+     * @throws IOException
+     */
+    public String readBody(InputStream body, boolean gzip) throws IOException {
+        int length = readFully(body);
+        String content;
+
+        if (gzip) {
+            int inflatedLength = inflate(length);
+            content = new String(inflated, 0, inflatedLength, UTF_8);
+        } else {
+            content = new String(raw, 0, length, UTF_8);
+        }
+
+        if (raw.length > MAX_RETAINED_SIZE) {
+            raw = new byte[INITIAL_SIZE];
+        }
+
+        if (inflated.length > MAX_RETAINED_SIZE) {
+            inflated = new byte[INITIAL_SIZE];
+        }
+
+        if (content.indexOf('\n') >= 0 || content.indexOf('\r') >= 0) {
+            content = content.replace("\r", "").replace("\n", "");
+        }
+
+        return content;
+    }
+
+    /**
+     * Read a stream into the raw buffer
+     *
+     * @param body
+     * @return the number of bytes read
+     * @throws IOException
+     */
+    private int readFully(InputStream body) throws IOException {
+        int length = 0;
+        int read;
+
+        while ((read = body.read(raw, length, raw.length - length)) != -1) {
+            length += read;
+
+            if (length == raw.length) {
+                raw = Arrays.copyOf(raw, raw.length * 2);
+            }
+        }
+
+        return length;
+    }
+
+    /**
+     * Inflate the gzip encoded raw buffer into the inflated buffer
+     *
+     * @param length the number of raw bytes
+     * @return the number of inflated bytes
+     * @throws IOException
+     */
+    private int inflate(int length) throws IOException {
+        if (length < 10 || (raw[0] & 0xFF) != 0x1F || (raw[1] & 0xFF) != 0x8B || raw[2] != 8) {
+            throw new ZipException("Not in GZIP format");
+        }
+
+        int flags = raw[3] & 0xFF;
+        int offset = 10;
+
+        // FEXTRA
+        if ((flags & 4) != 0) {
+            if (offset + 2 > length) {
+                throw new EOFException();
+            }
+
+            offset += 2 + ((raw[offset] & 0xFF) | ((raw[offset + 1] & 0xFF) << 8));
+        }
+
+        // FNAME and FCOMMENT are zero terminated
+        for (int flag = 8; flag <= 16; flag <<= 1) {
+            if ((flags & flag) != 0) {
+                while (offset < length && raw[offset] != 0) {
+                    offset ++;
+                }
+
+                offset ++;
+            }
+        }
+
+        // FHCRC
+        if ((flags & 2) != 0) {
+            offset += 2;
+        }
+
+        if (offset > length) {
+            throw new EOFException();
+        }
+
+        inflater.reset();
+        inflater.setInput(raw, offset, length - offset);
+        int total = 0;
+
+        try {
+            while (!inflater.finished()) {
+                if (total == inflated.length) {
+                    inflated = Arrays.copyOf(inflated, inflated.length * 2);
+                }
+
+                int read = inflater.inflate(inflated, total, inflated.length - total);
+
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new EOFException("Unexpected end of ZLIB input stream");
+                }
+
+                total += read;
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException(e.getMessage());
+        }
+
+        return total;
+    }
+
+}
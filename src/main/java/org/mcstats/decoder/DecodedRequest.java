@@ -1,9 +1,9 @@
 package org.mcstats.decoder;
 
-import org.mcstats.model.Column;
+import org.mcstats.model.CustomData;
+import org.mcstats.util.StringInterner;
 
 import java.lang.reflect.Field;
-import java.util.Map;
 
 public class DecodedRequest {
 
@@ -75,7 +75,43 @@ public class DecodedRequest {
     /**
      * Any custom data for the plugin this request is for
      */
-    public Map<Column, Long> customData;
+    public final CustomData customData = new CustomData();
+
+    /**
+     * Reused to look up the normalized platform of the request
+     */
+    final PlatformNormalizer.Key platformKey = new PlatformNormalizer.Key();
+
+    /**
+     * Reset every field so the instance can be reused for another request
+     */
+    public void reset() {
+        revision = 0;
+        isPing = false;
+        guid = null;
+        serverVersion = null;
+        pluginVersion = null;
+        playersOnline = 0;
+        osname = null;
+        osversion = null;
+        osarch = null;
+        javaName = null;
+        javaVersion = null;
+        cores = 0;
+        authMode = 0;
+        customData.clear();
+    }
+
+    /**
+     * Replace the low cardinality string attributes with their canonical instances. The platform
+     * attributes already are canonical once normalized.
+     *
+     * @param interner
+     */
+    public void intern(StringInterner interner) {
+        serverVersion = interner.intern(serverVersion);
+        pluginVersion = interner.intern(pluginVersion);
+    }
 
     @Override
     public String toString() {
@@ -0,0 +1,72 @@
+package org.mcstats.decoder;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of reusable decoded requests. A request is acquired when a report arrives and released
+ * once the background work for it has finished, which may be on a different thread.
+ */
+public class DecodedRequestPool {
+
+    /**
+     * The maximum number of idle requests retained
+     */
+    private final int maxRetained;
+
+    /**
+     * Requests free to be reused
+     */
+    private final ConcurrentLinkedQueue<DecodedRequest> free = new ConcurrentLinkedQueue<DecodedRequest>();
+
+    /**
+     * The number of requests in the free queue
+     */
+    private final AtomicInteger freeCount = new AtomicInteger(0);
+
+    public DecodedRequestPool(int maxRetained) {
+        this.maxRetained = maxRetained;
+    }
+
+    /**
+     * Get a reset request from the pool, creating one if none are free
+     *
+     * @return
+     */
+    public DecodedRequest acquire() {
+        DecodedRequest decoded = free.poll();
+
+        if (decoded == null) {
+            return new DecodedRequest();
+        }
+
+        freeCount.decrementAndGet();
+        return decoded;
+    }
+
+    /**
+     * Reset a request and return it to the pool. It must not be used again by the caller.
+     *
+     * @param decoded
+     */
+    public void release(DecodedRequest decoded) {
+        decoded.reset();
+
+        if (freeCount.incrementAndGet() > maxRetained) {
+            freeCount.decrementAndGet();
+            return;
+        }
+
+        free.offer(decoded);
+    }
+
+    /**
+     * Get the number of idle requests in the pool
+     *
+     * @return
+     */
+    public int getFree() {
+        return freeCount.get();
+    }
+
+}
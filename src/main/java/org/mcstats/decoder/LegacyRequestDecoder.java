@@ -1,17 +1,14 @@
 package org.mcstats.decoder;
 
-import org.eclipse.jetty.server.Request;
 import org.mcstats.MCStats;
 import org.mcstats.model.Column;
+import org.mcstats.model.CustomData;
 import org.mcstats.model.Graph;
 import org.mcstats.model.Plugin;
 import org.mcstats.util.URLUtils;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.io.InputStream;
 import java.util.Map;
 
 public class LegacyRequestDecoder implements RequestDecoder {
@@ -25,23 +22,16 @@ public class LegacyRequestDecoder implements RequestDecoder {
     /**
      * {@inheritDoc}
      */
-    public DecodedRequest decode(Plugin plugin, Request request) throws IOException {
-        BufferedReader reader = new BufferedReader(new InputStreamReader(request.getInputStream(), "UTF-8"));
-        String content = "";
+    public boolean decode(Plugin plugin, String userAgent, String contentEncoding, InputStream body, DecodedRequest decoded) throws IOException {
+        DecodeBuffers buffers = DecodeBuffers.get();
+        String content = buffers.readBody(body, false);
 
-        String line;
-        while ((line = reader.readLine()) != null) {
-            content += line;
-        }
-        reader.close();
-
-        Map<String, String> post = processPostRequest(content);
+        Map<String, String> post = processPostRequest(content, buffers.getForm());
 
         if (!post.containsKey("guid")) {
-            return null;
+            return false;
         }
 
-        DecodedRequest decoded = new DecodedRequest();
         decoded.guid = (String) post.get("guid");
         decoded.serverVersion = (String) post.get("server");
         decoded.pluginVersion = (String) post.get("version");
@@ -51,11 +41,11 @@ public class LegacyRequestDecoder implements RequestDecoder {
             decoded.revision = post.containsKey("revision") ? Integer.parseInt((String) post.get("revision")) : 4;
             decoded.playersOnline = post.containsKey("players") ? Integer.parseInt((String) post.get("players")) : 0;
         } catch (NumberFormatException e) {
-            return null;
+            return false;
         }
 
         if (decoded.guid == null || decoded.serverVersion == null || decoded.pluginVersion == null) {
-            return null;
+            return false;
         }
 
         if (decoded.playersOnline < 0 || decoded.playersOnline > 2000) {
@@ -66,7 +56,6 @@ public class LegacyRequestDecoder implements RequestDecoder {
             decoded.osname = (String) post.get("osname");
             decoded.osarch = (String) post.get("osarch");
             decoded.osversion = (String) post.get("osversion");
-            decoded.javaName = "";
             decoded.javaVersion = (String) post.get("java_version");
             if (decoded.osname == null) {
                 decoded.osname = "Unknown";
@@ -75,12 +64,7 @@ public class LegacyRequestDecoder implements RequestDecoder {
             if (decoded.osversion == null) {
                 decoded.osversion = "Unknown";
             }
-            if (decoded.javaVersion == null) {
-                decoded.javaVersion = "Unknown";
-            } else if (decoded.javaVersion.startsWith("1.") && decoded.javaVersion.length() > 3) {
-                decoded.javaName = decoded.javaVersion.substring(0, decoded.javaVersion.indexOf('.', decoded.javaVersion.indexOf('.') + 1));
-                decoded.javaVersion = decoded.javaVersion.substring(decoded.javaName.length() + 1);
-            }
+            mcstats.getPlatformNormalizer().normalize(decoded);
             if (decoded.osname != null) {
                 try {
                     decoded.cores = Integer.parseInt((String) post.get("cores"));
@@ -93,41 +77,71 @@ public class LegacyRequestDecoder implements RequestDecoder {
         }
 
         if (decoded.revision >= 5) {
-            decoded.customData = extractCustomData(plugin, post);
+            extractCustomData(plugin, post, decoded.customData);
         } else {
-            decoded.customData = extractCustomDataLegacy(plugin, post);
+            extractCustomDataLegacy(plugin, post, decoded.customData);
         }
 
-        return decoded;
+        decoded.intern(mcstats.getAttributeInterner());
+        return true;
     }
 
-    private Map<String, String> processPostRequest(String content) {
-        Map store = new HashMap();
-        String arr[] = content.split("&");
-
-        for (int i = 0; i < arr.length; i++) {
-            String entry = arr[i];
-            String data[] = entry.split("=");
-            if (data.length == 2) {
-                String key = URLUtils.decode(data[0]);
-                String value = URLUtils.decode(data[1]);
-                store.put(key, value);
+    /**
+     * Parse a form encoded body. Pairs without exactly one '=' or without a value are skipped.
+     *
+     * @param content
+     * @param store the map to put the pairs into
+     * @return
+     */
+    private Map<String, String> processPostRequest(String content, Map<String, String> store) {
+        int length = content.length();
+        int start = 0;
+
+        while (start < length) {
+            int end = content.indexOf('&', start);
+
+            if (end < 0) {
+                end = length;
+            }
+
+            int equals = content.indexOf('=', start);
+
+            if (equals >= 0 && equals < end - 1) {
+                int nextEquals = content.indexOf('=', equals + 1);
+
+                if (nextEquals < 0 || nextEquals >= end) {
+                    store.put(decode(content.substring(start, equals)), decode(content.substring(equals + 1, end)));
+                }
             }
+
+            start = end + 1;
         }
 
         return store;
     }
 
+    /**
+     * URL decode a form value, skipping the decoder when there is nothing to decode
+     *
+     * @param value
+     * @return
+     */
+    private String decode(String value) {
+        if (value.indexOf('%') < 0 && value.indexOf('+') < 0) {
+            return value;
+        }
+
+        return URLUtils.decode(value);
+    }
+
     /**
      * Extract the custom data from the post request
      *
      * @param plugin
      * @param post
-     * @return
+     * @param customData
      */
-    private Map<Column, Long> extractCustomData(Plugin plugin, Map<String, String> post) {
-        Map<Column, Long> customData = new HashMap<Column, Long>();
-
+    private void extractCustomData(Plugin plugin, Map<String, String> post, CustomData customData) {
         for (Map.Entry<String, String> entry : post.entrySet()) {
             String postKey = (String) entry.getKey();
             String postValue = (String) entry.getValue();
@@ -138,27 +152,27 @@ public class LegacyRequestDecoder implements RequestDecoder {
 
             long value;
             try {
-                value = Integer.parseInt(postValue);
+                value = Long.parseLong(postValue);
             } catch (NumberFormatException e) {
                 continue;
             }
 
-            String graphData[] = postKey.split("~~");
+            // C~~graph~~column
+            int graphStart = postKey.indexOf("~~");
+            int columnStart = graphStart < 0 ? -1 : postKey.indexOf("~~", graphStart + 2);
 
-            if (graphData.length == 3) {
-                String graphName = graphData[1];
-                String columnName = graphData[2];
+            if (columnStart >= 0 && columnStart + 2 < postKey.length() && postKey.indexOf("~~", columnStart + 2) < 0) {
+                String graphName = postKey.substring(graphStart + 2, columnStart);
+                String columnName = postKey.substring(columnStart + 2);
                 Graph graph = mcstats.loadGraph(plugin, graphName);
                 if (graph != null && graph.getActive() != 0) {
                     org.mcstats.model.Column column = graph.loadColumn(columnName);
                     if (column != null) {
-                        customData.put(column, Long.valueOf(value));
+                        customData.put(column, value);
                     }
                 }
             }
         }
-
-        return customData;
     }
 
     /**
@@ -166,10 +180,9 @@ public class LegacyRequestDecoder implements RequestDecoder {
      *
      * @param plugin
      * @param post
-     * @return
+     * @param customData
      */
-    private Map<Column, Long> extractCustomDataLegacy(Plugin plugin, Map<String, String> post) {
-        Map<Column, Long> customData = new HashMap<Column, Long>();
+    private void extractCustomDataLegacy(Plugin plugin, Map<String, String> post, CustomData customData) {
         Graph graph = mcstats.loadGraph(plugin, "Default");
 
         for (Map.Entry<String, String> entry : post.entrySet()) {
@@ -182,23 +195,21 @@ public class LegacyRequestDecoder implements RequestDecoder {
 
             long value;
             try {
-                value = Integer.parseInt(postValue);
+                value = Long.parseLong(postValue);
             } catch (NumberFormatException e) {
                 continue;
             }
 
             if (postKey.startsWith("Custom")) {
-                String columnName = postKey.substring(6).replaceAll("_", " ");
+                String columnName = postKey.substring(6).replace('_', ' ');
                 if (graph != null) {
                     Column column = graph.loadColumn(columnName);
                     if (column != null) {
-                        customData.put(column, Long.valueOf(value));
+                        customData.put(column, value);
                     }
                 }
             }
         }
-
-        return customData;
     }
 
 }
@@ -1,19 +1,15 @@
 package org.mcstats.decoder;
 
-import org.eclipse.jetty.server.Request;
 import org.json.simple.JSONObject;
 import org.json.simple.JSONValue;
 import org.mcstats.MCStats;
-import org.mcstats.model.Column;
+import org.mcstats.model.CustomData;
 import org.mcstats.model.Graph;
 import org.mcstats.model.Plugin;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.util.HashMap;
+import java.io.InputStream;
 import java.util.Map;
-import java.util.zip.GZIPInputStream;
 
 public class ModernRequestDecoder implements RequestDecoder {
 
@@ -26,39 +22,25 @@ public class ModernRequestDecoder implements RequestDecoder {
     /**
      * {@inheritDoc}
      */
-    public DecodedRequest decode(Plugin plugin, Request request) throws IOException {
-        String encoding = request.getHeader("Content-Encoding");
-        String content = "";
-
-        BufferedReader reader;
-        if (encoding != null && encoding.equals("gzip")) {
-            reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(request.getInputStream()), "UTF-8"));
-        } else {
-            reader = new BufferedReader(new InputStreamReader(request.getInputStream(), "UTF-8"));
-        }
-
-        String line;
-        while ((line = reader.readLine()) != null) {
-            content += line;
-        }
+    public boolean decode(Plugin plugin, String userAgent, String contentEncoding, InputStream body, DecodedRequest decoded) throws IOException {
+        boolean gzip = contentEncoding != null && contentEncoding.equals("gzip");
+        String content = DecodeBuffers.get().readBody(body, gzip);
 
-        reader.close();
         JSONObject post = (JSONObject) JSONValue.parse(content);
 
         if (post == null || !post.containsKey("guid")) {
-            return null;
+            return false;
         }
 
-        DecodedRequest decoded = new DecodedRequest();
         decoded.guid = String.valueOf(post.get("guid"));
-        decoded.serverVersion = (new StringBuilder()).append("").append(post.get("server_version")).toString();
-        decoded.pluginVersion = (new StringBuilder()).append("").append(post.get("plugin_version")).toString();
+        decoded.serverVersion = String.valueOf(post.get("server_version"));
+        decoded.pluginVersion = String.valueOf(post.get("plugin_version"));
         decoded.isPing = post.containsKey("ping");
-        decoded.revision = Integer.parseInt(request.getHeader("User-Agent").substring("MCStats/".length()));
+        decoded.revision = Integer.parseInt(userAgent.substring("MCStats/".length()));
         decoded.playersOnline = Long.valueOf(tryParseLong(post.get("players_online"))).intValue();
 
         if (decoded.guid == null || decoded.serverVersion == null || decoded.pluginVersion == null) {
-            return null;
+            return false;
         }
 
         if (decoded.playersOnline < 0 || decoded.playersOnline > 2000) {
@@ -68,8 +50,7 @@ public class ModernRequestDecoder implements RequestDecoder {
         if (decoded.revision >= 6) {
             decoded.osname = (String) post.get("osname");
             decoded.osarch = (String) post.get("osarch");
-            decoded.osversion = (new StringBuilder()).append("").append(post.get("osversion")).toString();
-            decoded.javaName = "";
+            decoded.osversion = String.valueOf(post.get("osversion"));
             decoded.javaVersion = (String) post.get("java_version");
             decoded.cores = Long.valueOf(tryParseLong(post.get("cores"))).intValue();
             decoded.authMode = Long.valueOf(tryParseLong(post.get("auth_mode"))).intValue();
@@ -80,16 +61,12 @@ public class ModernRequestDecoder implements RequestDecoder {
             if (decoded.osversion.isEmpty()) {
                 decoded.osversion = "Unknown";
             }
-            if (decoded.javaVersion == null) {
-                decoded.javaVersion = "Unknown";
-            } else if (decoded.javaVersion.startsWith("1.") && decoded.javaVersion.length() > 3) {
-                decoded.javaName = decoded.javaVersion.substring(0, decoded.javaVersion.indexOf('.', decoded.javaVersion.indexOf('.') + 1));
-                decoded.javaVersion = decoded.javaVersion.substring(decoded.javaName.length() + 1);
-            }
+            mcstats.getPlatformNormalizer().normalize(decoded);
         }
 
-        decoded.customData = extractCustomData(plugin, post);
-        return decoded;
+        extractCustomData(plugin, post, decoded.customData);
+        decoded.intern(mcstats.getAttributeInterner());
+        return true;
     }
 
     /**
@@ -97,12 +74,11 @@ public class ModernRequestDecoder implements RequestDecoder {
      *
      * @param plugin
      * @param post
-     * @return
+     * @param customData
      */
-    private Map<Column, Long> extractCustomData(Plugin plugin, JSONObject post) {
-        Map<Column, Long> customData = new HashMap();
+    private void extractCustomData(Plugin plugin, JSONObject post, CustomData customData) {
         if (!post.containsKey("graphs")) {
-            return customData;
+            return;
         }
 
         JSONObject graphs = (JSONObject) post.get("graphs");
@@ -122,13 +98,11 @@ public class ModernRequestDecoder implements RequestDecoder {
                     org.mcstats.model.Column column = graph.loadColumn(columnName);
 
                     if (column != null) {
-                        customData.put(column, Long.valueOf(value));
+                        customData.put(column, value);
                     }
                 }
             }
         }
-
-        return customData;
     }
 
     /**
@@ -0,0 +1,218 @@
+package org.mcstats.decoder;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import org.mcstats.util.StringInterner;
+
+/**
+ * Canonicalizes the os and java attributes of a report. There are few distinct combinations of
+ * them, so each raw (osname, osversion, osarch, java_version) tuple is normalized once and the
+ * result is kept in a bounded table; after that a report is normalized with a single lookup and
+ * gets shared instances of every attribute.
+ */
+public class PlatformNormalizer {
+
+    /**
+     * Normalized platforms keyed by the raw attributes they were normalized from
+     */
+    private final Cache<Key, Platform> platforms;
+
+    /**
+     * Interns the normalized attributes so they are shared with the rest of the attributes
+     */
+    private final StringInterner interner;
+
+    public PlatformNormalizer(int maximumSize, StringInterner interner) {
+        this.interner = interner;
+        platforms = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Replace the os and java attributes of a request with their normalized, canonical instances
+     *
+     * @param decoded
+     */
+    public void normalize(DecodedRequest decoded) {
+        Key probe = decoded.platformKey;
+        probe.set(decoded.osname, decoded.osversion, decoded.osarch, decoded.javaVersion);
+
+        Platform platform = platforms.getIfPresent(probe);
+
+        if (platform == null) {
+            Key key = probe.copy();
+            platform = normalize(key);
+
+            Platform existing = platforms.asMap().putIfAbsent(key, platform);
+
+            if (existing != null) {
+                platform = existing;
+            }
+        }
+
+        decoded.osname = platform.osname;
+        decoded.osversion = platform.osversion;
+        decoded.osarch = platform.osarch;
+        decoded.javaName = platform.javaName;
+        decoded.javaVersion = platform.javaVersion;
+    }
+
+    /**
+     * Get the number of platforms in the table
+     *
+     * @return
+     */
+    public long size() {
+        return platforms.size();
+    }
+
+    /**
+     * Get the stats of the table
+     *
+     * @return
+     */
+    public CacheStats stats() {
+        return platforms.stats();
+    }
+
+    /**
+     * Normalize a raw platform
+     *
+     * @param raw
+     * @return
+     */
+    private Platform normalize(Key raw) {
+        String osname = raw.osname;
+        String osversion = raw.osversion;
+        String osarch = raw.osarch;
+        String javaName = "";
+        String javaVersion = raw.javaVersion;
+
+        // 1.7.0_25 is java 1.7, version 0_25
+        if (javaVersion == null) {
+            javaVersion = "Unknown";
+        } else if (javaVersion.startsWith("1.") && javaVersion.length() > 3) {
+            int split = javaVersion.indexOf('.', 2);
+
+            if (split != -1) {
+                javaName = javaVersion.substring(0, split);
+                javaVersion = javaVersion.substring(split + 1);
+            }
+        }
+
+        if ((osarch != null) && (osarch.equals("i386"))) {
+            osarch = "x86";
+        }
+
+        if ((osname.startsWith("Windows")) && (osname.length() > 8)) {
+            osversion = osname.substring(8);
+            osname = "Windows";
+        }
+
+        if (osversion.equals("6.1")) {
+            osversion = "7";
+            osname = "Windows";
+        }
+
+        return new Platform(interner.intern(osname), interner.intern(osversion), interner.intern(osarch),
+                interner.intern(javaName), interner.intern(javaVersion));
+    }
+
+    /**
+     * The raw attributes of a platform. A request reuses its own key to look up its platform, so
+     * only keys that are added to the table are copied.
+     */
+    public static final class Key {
+
+        private String osname;
+
+        private String osversion;
+
+        private String osarch;
+
+        private String javaVersion;
+
+        private int hash;
+
+        void set(String osname, String osversion, String osarch, String javaVersion) {
+            this.osname = osname;
+            this.osversion = osversion;
+            this.osarch = osarch;
+            this.javaVersion = javaVersion;
+
+            int hash = hashCode(osname);
+            hash = 31 * hash + hashCode(osversion);
+            hash = 31 * hash + hashCode(osarch);
+            hash = 31 * hash + hashCode(javaVersion);
+            this.hash = hash;
+        }
+
+        Key copy() {
+            Key key = new Key();
+            key.osname = osname;
+            key.osversion = osversion;
+            key.osarch = osarch;
+            key.javaVersion = javaVersion;
+            key.hash = hash;
+            return key;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+
+            if (!(o instanceof Key)) {
+                return false;
+            }
+
+            Key other = (Key) o;
+            return hash == other.hash && equals(osname, other.osname) && equals(osversion, other.osversion)
+                    && equals(osarch, other.osarch) && equals(javaVersion, other.javaVersion);
+        }
+
+        private static int hashCode(String value) {
+            return value == null ? 0 : value.hashCode();
+        }
+
+        private static boolean equals(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+
+    }
+
+    /**
+     * The normalized attributes of a platform
+     */
+    private static final class Platform {
+
+        private final String osname;
+
+        private final String osversion;
+
+        private final String osarch;
+
+        private final String javaName;
+
+        private final String javaVersion;
+
+        private Platform(String osname, String osversion, String osarch, String javaName, String javaVersion) {
+            this.osname = osname;
+            this.osversion = osversion;
+            this.osarch = osarch;
+            this.javaName = javaName;
+            this.javaVersion = javaVersion;
+        }
+
+    }
+
+}
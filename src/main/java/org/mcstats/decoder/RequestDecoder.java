@@ -1,9 +1,9 @@
 package org.mcstats.decoder;
 
-import org.eclipse.jetty.server.Request;
 import org.mcstats.model.Plugin;
 
 import java.io.IOException;
+import java.io.InputStream;
 
 public interface RequestDecoder {
 
@@ -11,10 +11,13 @@ public interface RequestDecoder {
      * Decode a request
      *
      * @param plugin
-     * @param request
-     * @return
+     * @param userAgent the User-Agent header
+     * @param contentEncoding the Content-Encoding header, or null
+     * @param body the request body
+     * @param decoded a reset request to decode into
+     * @return true if the request was valid
      * @throws IOException
      */
-    public DecodedRequest decode(Plugin plugin, Request request) throws IOException;
+    public boolean decode(Plugin plugin, String userAgent, String contentEncoding, InputStream body, DecodedRequest decoded) throws IOException;
 
 }
@@ -37,7 +37,7 @@ public class DecoderAggregator<T> extends ReflectionAggregator {
     public String getColumnName(Server server) {
         try {
             @SuppressWarnings({"unchecked"})
-            T value = (T) field.get(server);
+            T value = (T) server.getColumnValue(column);
             return decoder.decode(value);
         } catch (Exception e) {
             return "Unknown";
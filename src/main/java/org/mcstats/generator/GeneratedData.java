@@ -5,7 +5,7 @@ public class GeneratedData {
     /**
      * The sum of the data in the data set
      */
-    private int sum = 0;
+    private long sum = 0;
 
     /**
      * The number of values in the data set
@@ -15,23 +15,23 @@ public class GeneratedData {
     /**
      * The max value in the data set
      */
-    private int max = 0;
+    private long max = 0;
 
     /**
      * The min value in the data set
      */
-    private int min = 0;
+    private long min = 0;
 
     @Override
     public String toString() {
         return String.format("GeneratedData(sum=%d, count=%d, avg=%d, max=%d, min=%d)", sum, count, getAverage(), max, min);
     }
 
-    public int getAverage() {
+    public long getAverage() {
         return sum / count;
     }
 
-    public void incrementSum(int delta) {
+    public void incrementSum(long delta) {
         this.sum += delta;
 
         if (sum > max) {
@@ -46,11 +46,11 @@ public class GeneratedData {
         this.count ++;
     }
 
-    public int getSum() {
+    public long getSum() {
         return sum;
     }
 
-    public void setSum(int sum) {
+    public void setSum(long sum) {
         this.sum = sum;
 
         if (sum > max) {
@@ -69,19 +69,19 @@ public class GeneratedData {
         this.count = count;
     }
 
-    public int getMax() {
+    public long getMax() {
         return max;
     }
 
-    public void setMax(int max) {
+    public void setMax(long max) {
         this.max = max;
     }
 
-    public int getMin() {
+    public long getMin() {
         return min;
     }
 
-    public void setMin(int min) {
+    public void setMin(long min) {
         this.min = min;
     }
 }
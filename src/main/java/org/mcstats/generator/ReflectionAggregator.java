@@ -6,10 +6,9 @@ import org.mcstats.model.Column;
 import org.mcstats.model.Graph;
 import org.mcstats.model.Plugin;
 import org.mcstats.model.Server;
+import org.mcstats.model.ServerColumn;
 import org.mcstats.util.Tuple;
 
-import java.lang.reflect.Field;
-import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -28,9 +27,9 @@ public class ReflectionAggregator extends SimpleAggregator {
     protected String columnName;
 
     /**
-     * The method we are reflecting into
+     * The server column being aggregated
      */
-    protected Field field;
+    protected ServerColumn column;
 
     /**
      * Create a new reflection aggregator that will use the value returned by
@@ -57,9 +56,8 @@ public class ReflectionAggregator extends SimpleAggregator {
      */
     public ReflectionAggregator(String fieldName, String graphName, String columnName) {
         try {
-            this.field = Server.class.getDeclaredField(fieldName);
-            this.field.setAccessible(true);
-        } catch (Exception e) {
+            this.column = ServerColumn.byFieldName(fieldName);
+        } catch (IllegalArgumentException e) {
             throw new UnsupportedOperationException(e);
         }
 
@@ -109,12 +107,12 @@ public class ReflectionAggregator extends SimpleAggregator {
     public List<Tuple<Column, Long>> getValues(MCStats mcstats, Plugin plugin, Server server) {
         List<Tuple<Column, Long>> res = new ArrayList<Tuple<Column, Long>>();
 
-        if (field == null) {
+        if (column == null) {
             return res;
         }
 
         try {
-            Object value = field.get(server);
+            Object value = server.getColumnValue(column);
 
             String usingColumn = getColumnName(server);
 
@@ -130,9 +128,9 @@ public class ReflectionAggregator extends SimpleAggregator {
 
             // load the graph for the plugin
             Graph graph = mcstats.loadGraph(plugin, graphName);
-            Column column = graph.loadColumn(usingColumn);
+            Column graphColumn = graph.loadColumn(usingColumn);
 
-            res.add(new Tuple<Column, Long>(column, columnValue));
+            res.add(new Tuple<Column, Long>(graphColumn, columnValue));
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -142,7 +140,7 @@ public class ReflectionAggregator extends SimpleAggregator {
 
     @Override
     public String toString() {
-        return String.format("ReflectionAggregator(fieldName = %s, graphName = %s, columnName = %s)", field.getName(), graphName, columnName);
+        return String.format("ReflectionAggregator(fieldName = %s, graphName = %s, columnName = %s)", column.getFieldName(), graphName, columnName);
     }
 
 }
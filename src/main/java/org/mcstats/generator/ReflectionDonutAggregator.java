@@ -6,9 +6,9 @@ import org.mcstats.model.Column;
 import org.mcstats.model.Graph;
 import org.mcstats.model.Plugin;
 import org.mcstats.model.Server;
+import org.mcstats.model.ServerColumn;
 import org.mcstats.util.Tuple;
 
-import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -30,14 +30,14 @@ public class ReflectionDonutAggregator extends SimpleAggregator {
     private String outerColumnName;
 
     /**
-     * The inner donut's field
+     * The inner donut's column
      */
-    private Field innerField;
+    private ServerColumn innerField;
 
     /**
-     * The outer donut's field
+     * The outer donut's column
      */
-    private Field outerField;
+    private ServerColumn outerField;
 
     /**
      * Create a new reflection aggregator that will use the value returned by
@@ -67,11 +67,9 @@ public class ReflectionDonutAggregator extends SimpleAggregator {
      */
     public ReflectionDonutAggregator(String innerFieldName, String outerFieldName, String graphName, String innerColumnName, String outerColumnName) {
         try {
-            this.innerField = Server.class.getDeclaredField(innerFieldName);
-            this.outerField = Server.class.getDeclaredField(outerFieldName);
-            this.innerField.setAccessible(true);
-            this.outerField.setAccessible(true);
-        } catch (Exception e) {
+            this.innerField = ServerColumn.byFieldName(innerFieldName);
+            this.outerField = ServerColumn.byFieldName(outerFieldName);
+        } catch (IllegalArgumentException e) {
             throw new UnsupportedOperationException(e);
         }
 
@@ -96,8 +94,8 @@ public class ReflectionDonutAggregator extends SimpleAggregator {
         }
 
         try {
-            Object innerValue = innerField.get(server);
-            Object outerValue = outerField.get(server);
+            Object innerValue = server.getColumnValue(innerField);
+            Object outerValue = server.getColumnValue(outerField);
 
             String usingInner = innerColumnName;
             String usingOuter = outerColumnName;
@@ -131,7 +129,7 @@ public class ReflectionDonutAggregator extends SimpleAggregator {
 
     @Override
     public String toString() {
-        return String.format("ReflectionDonutAggregator(innerFieldName = %s, outerFieldName = %s, graphName = %s, innerColumnName = %s, outerColumnName = %s)", innerField.getName(), outerField.getName(), graphName, innerColumnName, outerColumnName);
+        return String.format("ReflectionDonutAggregator(innerFieldName = %s, outerFieldName = %s, graphName = %s, innerColumnName = %s, outerColumnName = %s)", innerField.getFieldName(), outerField.getFieldName(), graphName, innerColumnName, outerColumnName);
     }
 
 }
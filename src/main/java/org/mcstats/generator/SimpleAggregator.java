@@ -10,6 +10,7 @@ import org.mcstats.util.Tuple;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Logger;
 
 /**
@@ -62,7 +63,12 @@ public abstract class SimpleAggregator implements GraphGenerator {
         }
 
         if (pluginValue.getId() == -1) {
-            for (Server server : mcstats.getCachedServers()) {
+            Set<Server> servers = mcstats.getActiveServers();
+            int scanned = 0;
+
+            for (Server server : servers) {
+                scanned ++;
+
                 if (!server.recentlySentData()) {
                     continue;
                 }
@@ -83,20 +89,27 @@ public abstract class SimpleAggregator implements GraphGenerator {
                         if (current == null) {
                             current = new GeneratedData();
                             current.setCount(1);
-                            current.setMax((int) columnValue);
-                            current.setMin((int) columnValue);
-                            current.setSum((int) columnValue);
+                            current.setMax(columnValue);
+                            current.setMin(columnValue);
+                            current.setSum(columnValue);
                             data.put(column, current);
                             continue;
                         }
 
                         current.incrementCount();
-                        current.incrementSum((int) columnValue);
+                        current.incrementSum(columnValue);
                     }
                 }
             }
+
+            mcstats.getGenerationProfiler().addServersScanned(scanned);
         } else {
-            for (ServerPlugin serverPlugin : mcstats.getServerPlugins(pluginValue)) {
+            Set<ServerPlugin> serverPlugins = mcstats.getServerPlugins(pluginValue);
+            int scanned = 0;
+
+            for (ServerPlugin serverPlugin : serverPlugins) {
+                scanned ++;
+
                 if (!serverPlugin.recentlyUpdated()) {
                     continue;
                 }
@@ -117,18 +130,20 @@ public abstract class SimpleAggregator implements GraphGenerator {
                         if (current == null) {
                             current = new GeneratedData();
                             current.setCount(1);
-                            current.setMax((int) columnValue);
-                            current.setMin((int) columnValue);
-                            current.setSum((int) columnValue);
+                            current.setMax(columnValue);
+                            current.setMin(columnValue);
+                            current.setSum(columnValue);
                             data.put(column, current);
                             continue;
                         }
 
                         current.incrementCount();
-                        current.incrementSum((int) columnValue);
+                        current.incrementSum(columnValue);
                     }
                 }
             }
+
+            mcstats.getGenerationProfiler().addServersScanned(scanned);
         }
 
         return data;
@@ -3,6 +3,7 @@ package org.mcstats.generator.aggregator;
 import org.mcstats.MCStats;
 import org.mcstats.generator.SimpleAggregator;
 import org.mcstats.model.Column;
+import org.mcstats.model.CustomData;
 import org.mcstats.model.Graph;
 import org.mcstats.model.Plugin;
 import org.mcstats.model.Server;
@@ -11,7 +12,6 @@ import org.mcstats.util.Tuple;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 public class CustomDataAggregator extends SimpleAggregator {
 
@@ -27,8 +27,10 @@ public class CustomDataAggregator extends SimpleAggregator {
             return res;
         }
 
-        for (Map.Entry<Column, Long> entry : serverPlugin.getCustomData().entrySet()) {
-            res.add(new Tuple<Column, Long>(entry.getKey(), entry.getValue()));
+        CustomData customData = serverPlugin.getCustomData();
+
+        for (int i = 0; i < customData.size(); i++) {
+            res.add(new Tuple<Column, Long>(customData.getColumn(i), customData.getValue(i)));
         }
 
         return res;
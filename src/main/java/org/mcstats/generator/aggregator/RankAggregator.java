@@ -35,15 +35,15 @@ public class RankAggregator implements GraphGenerator {
         if (current == null) {
             current = new GeneratedData();
             current.setCount(1);
-            current.setMax((int) columnValue);
-            current.setMin((int) columnValue);
-            current.setSum((int) columnValue);
+            current.setMax(columnValue);
+            current.setMin(columnValue);
+            current.setSum(columnValue);
             data.put(column, current);
             return data;
         }
 
         current.incrementCount();
-        current.incrementSum((int) columnValue);
+        current.incrementSum(columnValue);
 
         return data;
     }
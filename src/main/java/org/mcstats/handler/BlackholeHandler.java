@@ -12,9 +12,17 @@ import java.io.OutputStream;
 
 public class BlackholeHandler extends AbstractHandler {
 
+    /**
+     * Decides if connections are kept alive after a response
+     */
+    private final KeepAlivePolicy keepAlivePolicy;
+
+    public BlackholeHandler(KeepAlivePolicy keepAlivePolicy) {
+        this.keepAlivePolicy = keepAlivePolicy;
+    }
+
     public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
         request.setCharacterEncoding("UTF-8");
-        response.setHeader("Connection", "close");
         baseRequest.setHandled(true);
         response.setStatus(200);
         response.setContentType("text/plain");
@@ -22,6 +30,7 @@ public class BlackholeHandler extends AbstractHandler {
         writer.write("OK");
         writer.flush();
 
+        boolean close = keepAlivePolicy.prepare(baseRequest, response);
         response.setContentLength(writer.size());
 
         OutputStream outputStream = response.getOutputStream();
@@ -29,7 +38,7 @@ public class BlackholeHandler extends AbstractHandler {
 
         outputStream.close();
         writer.close();
-        baseRequest.getHttpChannel().getEndPoint().close();
+        keepAlivePolicy.finish(baseRequest, close);
     }
 
 }
@@ -0,0 +1,135 @@
+package org.mcstats.handler;
+
+import org.eclipse.jetty.server.Request;
+
+import javax.servlet.http.HttpServletResponse;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides if a connection is kept open after a response is sent and keeps statistics on
+ * connection reuse. When disabled every connection is closed after its response.
+ */
+public class KeepAlivePolicy {
+
+    /**
+     * If keep-alive is allowed at all
+     */
+    private final boolean enabled;
+
+    /**
+     * The maximum number of requests served on one connection
+     */
+    private final int maxRequests;
+
+    /**
+     * The number of responses sent
+     */
+    private final AtomicLong responses = new AtomicLong(0);
+
+    /**
+     * The number of responses sent on a connection that had already served a request
+     */
+    private final AtomicLong reused = new AtomicLong(0);
+
+    /**
+     * The number of connections closed because they reached the maximum number of requests
+     */
+    private final AtomicLong closedAtLimit = new AtomicLong(0);
+
+    public KeepAlivePolicy(boolean enabled, int maxRequests) {
+        this.enabled = enabled;
+        this.maxRequests = maxRequests;
+    }
+
+    /**
+     * Prepare the response headers and decide if the connection should be closed once the
+     * response has been written
+     *
+     * @param baseRequest
+     * @param response
+     * @return true if the connection should be closed
+     */
+    public boolean prepare(Request baseRequest, HttpServletResponse response) {
+        responses.incrementAndGet();
+
+        if (!enabled) {
+            response.setHeader("Connection", "close");
+            return true;
+        }
+
+        long served = baseRequest.getHttpChannel().getRequests();
+
+        if (served > 1) {
+            reused.incrementAndGet();
+        }
+
+        String connection = baseRequest.getHeader("Connection");
+        boolean http11 = "HTTP/1.1".equals(baseRequest.getProtocol());
+        boolean wantsKeepAlive = http11 ? !"close".equalsIgnoreCase(connection) : "keep-alive".equalsIgnoreCase(connection);
+
+        if (!wantsKeepAlive) {
+            response.setHeader("Connection", "close");
+            return true;
+        }
+
+        if (maxRequests > 0 && served >= maxRequests) {
+            closedAtLimit.incrementAndGet();
+            response.setHeader("Connection", "close");
+            return true;
+        }
+
+        if (!http11) {
+            response.setHeader("Connection", "keep-alive");
+        }
+
+        return false;
+    }
+
+    /**
+     * Finish a response, closing the connection if it was decided to do so
+     *
+     * @param baseRequest
+     * @param close
+     */
+    public void finish(Request baseRequest, boolean close) {
+        if (close) {
+            baseRequest.getHttpChannel().getEndPoint().close();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getMaxRequests() {
+        return maxRequests;
+    }
+
+    /**
+     * Get the number of responses sent
+     *
+     * @return
+     */
+    public long getResponses() {
+        return responses.get();
+    }
+
+    /**
+     * Get the number of responses sent on a reused connection
+     *
+     * @return
+     */
+    public long getReused() {
+        return reused.get();
+    }
+
+    /**
+     * Get the number of connections closed because they reached the request limit
+     *
+     * @return
+     */
+    public long getClosedAtLimit() {
+        return closedAtLimit.get();
+    }
+
+}
@@ -0,0 +1,126 @@
+package org.mcstats.handler;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.json.simple.JSONValue;
+import org.mcstats.MCStats;
+import org.mcstats.db.MySQLDatabase;
+import org.mcstats.metrics.GaugeCollector;
+import org.mcstats.metrics.GenerationReport;
+import org.mcstats.metrics.LatencyRecorder;
+import org.mcstats.metrics.Stage;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serves machine readable metrics as JSON at /metrics, and the gauges and stage latencies as
+ * plain "name value" lines at /metrics.txt
+ */
+public class MetricsHandler extends AbstractHandler {
+
+    /**
+     * The path metrics are served at
+     */
+    private static final String PATH = "/metrics";
+
+    /**
+     * The path the plain text metrics are served at
+     */
+    private static final String TEXT_PATH = "/metrics.txt";
+
+    private final MCStats mcstats;
+
+    /**
+     * Collects the gauges and counters
+     */
+    private final GaugeCollector gauges;
+
+    public MetricsHandler(MCStats mcstats) {
+        this.mcstats = mcstats;
+        gauges = new GaugeCollector(mcstats);
+    }
+
+    public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
+        if (!request.getMethod().equals("GET")) {
+            return;
+        }
+
+        boolean text = target.equals(TEXT_PATH) || (target.equals(PATH) && "text".equals(request.getParameter("format")));
+
+        if (!text && !target.equals(PATH)) {
+            return;
+        }
+
+        baseRequest.setHandled(true);
+        response.setStatus(200);
+        response.setHeader("Cache-Control", "no-cache");
+
+        if (text) {
+            response.setContentType("text/plain");
+            response.getWriter().write(toText());
+            return;
+        }
+
+        response.setContentType("application/json");
+        Map<String, Object> metrics = new LinkedHashMap<String, Object>();
+        metrics.put("gauges", gauges.collect());
+        metrics.putAll(mcstats.getMetrics().toMap(LatencyRecorder.MAX_WINDOW));
+
+        List<Object> generation = new ArrayList<Object>();
+
+        for (GenerationReport report : mcstats.getGenerationProfiler().getReports()) {
+            generation.add(report.toMap());
+        }
+
+        metrics.put("generation", generation);
+
+        if (mcstats.getDatabase() instanceof MySQLDatabase) {
+            MySQLDatabase database = (MySQLDatabase) mcstats.getDatabase();
+            LatencyRecorder.Snapshot connectionWait = mcstats.getMetrics().getQueries().getConnectionWait().getWindow(LatencyRecorder.MAX_WINDOW);
+
+            Map<String, Object> pool = new LinkedHashMap<String, Object>();
+            pool.put("active", database.getActiveConnections());
+            pool.put("idle", database.getIdleConnections());
+            pool.put("max", database.getMaxConnections());
+            pool.put("wait_p50", connectionWait.getP50());
+            pool.put("wait_p99", connectionWait.getP99());
+            pool.put("wait_max", connectionWait.getMax());
+            pool.put("errors", mcstats.getMetrics().getQueries().getConnectionErrors());
+            metrics.put("database_pool", pool);
+        }
+
+        response.getWriter().write(JSONValue.toJSONString(metrics));
+    }
+
+    /**
+     * Format the gauges and the recent stage latencies as one "name value" line each
+     *
+     * @return
+     */
+    private String toText() {
+        StringBuilder builder = new StringBuilder(4096);
+
+        for (Map.Entry<String, Number> entry : gauges.collect().entrySet()) {
+            builder.append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+        }
+
+        for (Stage stage : Stage.values()) {
+            LatencyRecorder.Snapshot snapshot = mcstats.getMetrics().recorder(stage).getWindow(LatencyRecorder.MAX_WINDOW);
+            String prefix = "latency." + stage.getKey() + ".";
+            builder.append(prefix).append("rate ").append(snapshot.getRate()).append('\n');
+            builder.append(prefix).append("p50_us ").append(snapshot.getP50()).append('\n');
+            builder.append(prefix).append("p99_us ").append(snapshot.getP99()).append('\n');
+            builder.append(prefix).append("max_us ").append(snapshot.getMax()).append('\n');
+        }
+
+        return builder.toString();
+    }
+
+}
@@ -3,13 +3,19 @@ package org.mcstats.handler;
 import org.apache.log4j.Logger;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.handler.AbstractHandler;
-import org.eclipse.jetty.util.ByteArrayISO8859Writer;
+import org.eclipse.jetty.util.Callback;
 import org.mcstats.MCStats;
+import org.mcstats.cache.DenyList;
 import org.mcstats.cache.LRUCache;
+import org.mcstats.capture.CapturedRequest;
+import org.mcstats.capture.TrafficCapture;
 import org.mcstats.decoder.DecodedRequest;
+import org.mcstats.decoder.DecodedRequestPool;
 import org.mcstats.decoder.LegacyRequestDecoder;
 import org.mcstats.decoder.ModernRequestDecoder;
 import org.mcstats.decoder.RequestDecoder;
+import org.mcstats.metrics.Metrics;
+import org.mcstats.metrics.Stage;
 import org.mcstats.model.Column;
 import org.mcstats.model.Graph;
 import org.mcstats.model.Plugin;
@@ -17,22 +23,32 @@ import org.mcstats.model.PluginVersion;
 import org.mcstats.model.RawQuery;
 import org.mcstats.model.Server;
 import org.mcstats.model.ServerPlugin;
+import org.mcstats.util.RateLimiter;
 import org.mcstats.util.URLUtils;
 
+import javax.servlet.AsyncContext;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.util.Enumeration;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Properties;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ReportHandler extends AbstractHandler {
 
@@ -51,7 +67,18 @@ public class ReportHandler extends AbstractHandler {
     /**
      * A queue of work to run in a separate thread
      */
-    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(5, 10, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+    private final ExecutorService executor;
+
+    /**
+     * Bounds concurrent background work when it runs on virtual threads, otherwise null. Only
+     * report work takes these, so a backlog of reports can't hold up the database queue.
+     */
+    private final Semaphore permits;
+
+    /**
+     * The number of background tasks waiting to run
+     */
+    private final AtomicInteger pending = new AtomicInteger(0);
 
     /**
      * Modern request decoder
@@ -63,6 +90,38 @@ public class ReportHandler extends AbstractHandler {
      */
     private final RequestDecoder legacyDecoder;
 
+    /**
+     * Reusable decoded requests
+     */
+    private final DecodedRequestPool decodedRequests;
+
+    /**
+     * Latency recorders for the ingest stages
+     */
+    private final Metrics metrics;
+
+    /**
+     * Captures raw requests for replay, or null if capturing is disabled
+     */
+    private final TrafficCapture capture;
+
+    /**
+     * Plugins and servers whose reports are turned away early
+     */
+    private final DenyList denyList;
+
+    /**
+     * Limits the reports for each plugin on each server and from each client address, or null if
+     * rate limiting is disabled
+     */
+    private final RateLimiter serverLimiter;
+    private final RateLimiter addressLimiter;
+
+    /**
+     * Decides if connections are kept alive after a report
+     */
+    private KeepAlivePolicy keepAlivePolicy = new KeepAlivePolicy(false, 0);
+
     /**
      * Cache of the last sent times
      */
@@ -72,6 +131,49 @@ public class ReportHandler extends AbstractHandler {
         this.mcstats = mcstats;
         modernDecoder = new ModernRequestDecoder(mcstats);
         legacyDecoder = new LegacyRequestDecoder(mcstats);
+        metrics = mcstats.getMetrics();
+        denyList = mcstats.getDenyList();
+        decodedRequests = new DecodedRequestPool(Integer.parseInt(mcstats.getConfig().getProperty("decoder.pooledRequests", "1024")));
+
+        Properties config = mcstats.getConfig();
+
+        if (Boolean.parseBoolean(config.getProperty("capture.enabled", "false"))) {
+            capture = new TrafficCapture(new File(config.getProperty("capture.directory", "captures")),
+                    Double.parseDouble(config.getProperty("capture.sampleRate", "1.0")),
+                    Long.parseLong(config.getProperty("capture.rotateBytes", "268435456")),
+                    Integer.parseInt(config.getProperty("capture.maxFiles", "24")),
+                    Integer.parseInt(config.getProperty("capture.queueSize", "10000")));
+            capture.start();
+        } else {
+            capture = null;
+        }
+
+        if (Boolean.parseBoolean(config.getProperty("ratelimit.enabled", "false"))) {
+            int width = Integer.parseInt(config.getProperty("ratelimit.width", "65536"));
+            int depth = Integer.parseInt(config.getProperty("ratelimit.depth", "4"));
+            long interval = Long.parseLong(config.getProperty("ratelimit.drainInterval", "1000"));
+
+            // each plugin on a server reports on its own, so a server is limited per plugin
+            serverLimiter = new RateLimiter("guid/plugin", width, depth,
+                    Double.parseDouble(config.getProperty("ratelimit.serverPlugin.rate", "2")),
+                    Integer.parseInt(config.getProperty("ratelimit.serverPlugin.burst", "10")), interval);
+            addressLimiter = new RateLimiter("ip", width, depth,
+                    Double.parseDouble(config.getProperty("ratelimit.ip.rate", "2000")),
+                    Integer.parseInt(config.getProperty("ratelimit.ip.burst", "20000")), interval);
+            serverLimiter.start();
+            addressLimiter.start();
+        } else {
+            serverLimiter = null;
+            addressLimiter = null;
+        }
+
+        if (mcstats.isVirtualThreads()) {
+            executor = Executors.newVirtualThreadPerTaskExecutor();
+            permits = new Semaphore(Integer.parseInt(config.getProperty("threads.virtual.reportPermits", "40")), true);
+        } else {
+            executor = new ThreadPoolExecutor(5, 10, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+            permits = null;
+        }
     }
 
     /**
@@ -80,132 +182,241 @@ public class ReportHandler extends AbstractHandler {
      * @return
      */
     public int queueSize() {
-        return executor.getQueue().size();
+        return pending.get();
     }
 
     /**
-     * Finish a request and end it by closing it immediately
+     * Get the pool of reusable decoded requests
      *
-     * @param decoded
-     * @param responseType
-     * @param message
-     * @param baseRequest
-     * @param response
-     * @throws IOException
+     * @return
      */
-    private void finishRequest(DecodedRequest decoded, ResponseType responseType, String message, Request baseRequest, HttpServletResponse response) throws IOException {
-        ByteArrayISO8859Writer writer = new ByteArrayISO8859Writer(1500);
-        if (decoded != null && decoded.revision >= 7) {
-            if (responseType == ResponseType.OK) {
-                writer.write("0");
-            } else if (responseType == ResponseType.OK_FIRST_REQUEST) {
-                writer.write("1");
-            } else if (responseType == ResponseType.OK_REGENERATE_GUID) {
-                writer.write("2");
-            } else if (responseType == ResponseType.ERROR) {
-                writer.write("7");
-            }
-            if (!message.isEmpty()) {
-                writer.write((new StringBuilder()).append(",").append(message).toString());
-            }
-        } else {
-            if (responseType == ResponseType.OK || responseType == ResponseType.OK_REGENERATE_GUID) {
-                writer.write("OK");
-            } else if (responseType == ResponseType.OK_FIRST_REQUEST) {
-                writer.write("OK This is your first update this hour.");
-            } else if (responseType == ResponseType.ERROR) {
-                writer.write("ERR");
-            }
-            if (!message.isEmpty()) {
-                writer.write((new StringBuilder()).append(" ").append(message).toString());
+    public DecodedRequestPool getDecodedRequests() {
+        return decodedRequests;
+    }
+
+    /**
+     * Get the traffic capture
+     *
+     * @return the capture, or null if capturing is disabled
+     */
+    public TrafficCapture getCapture() {
+        return capture;
+    }
+
+    /**
+     * Get the limiter of reports for each plugin on each server
+     *
+     * @return the limiter, or null if rate limiting is disabled
+     */
+    public RateLimiter getServerLimiter() {
+        return serverLimiter;
+    }
+
+    /**
+     * Get the limiter of reports from each client address
+     *
+     * @return the limiter, or null if rate limiting is disabled
+     */
+    public RateLimiter getAddressLimiter() {
+        return addressLimiter;
+    }
+
+    /**
+     * Run work in the background. On virtual threads the work waits for a report permit first.
+     *
+     * @param task
+     */
+    private void submit(final Runnable task) {
+        final long submitted = System.nanoTime();
+        pending.incrementAndGet();
+
+        executor.execute(new Runnable() {
+            public void run() {
+                if (permits != null) {
+                    permits.acquireUninterruptibly();
+                }
+
+                pending.decrementAndGet();
+                long started = System.nanoTime();
+                metrics.recorder(Stage.QUEUE_WAIT).record((started - submitted) / 1000L);
+
+                try {
+                    task.run();
+                } finally {
+                    metrics.recorder(Stage.PROCESSING).recordSince(started);
+
+                    if (permits != null) {
+                        permits.release();
+                    }
+                }
             }
-        }
-        writer.flush();
-        response.setContentLength(writer.size());
-        OutputStream outputStream = response.getOutputStream();
-        writer.writeTo(outputStream);
-        outputStream.close();
-        writer.close();
-        baseRequest.getHttpChannel().getEndPoint().close();
+        });
+    }
+
+    /**
+     * Get the keep-alive policy used for reports
+     *
+     * @return
+     */
+    public KeepAlivePolicy getKeepAlivePolicy() {
+        return keepAlivePolicy;
+    }
+
+    /**
+     * Set the keep-alive policy used for reports
+     *
+     * @param keepAlivePolicy
+     */
+    public void setKeepAlivePolicy(KeepAlivePolicy keepAlivePolicy) {
+        this.keepAlivePolicy = keepAlivePolicy;
     }
 
     /**
-     * Finish a request and end it by closing it immediately
+     * Finish a request and end it, closing the connection unless it is being kept alive
      *
-     * @param decoded
-     * @param responseType
+     * @param body
      * @param baseRequest
      * @param response
      * @throws IOException
      */
-    private void finishRequest(DecodedRequest decoded, ResponseType responseType, Request baseRequest, HttpServletResponse response) throws IOException {
-        finishRequest(decoded, responseType, "", baseRequest, response);
+    private void finishRequest(ByteBuffer body, final Request baseRequest, HttpServletResponse response) throws IOException {
+        final boolean close = keepAlivePolicy.prepare(baseRequest, response);
+        response.setContentLength(body.remaining());
+
+        // write the body asynchronously so the request thread is released immediately
+        final AsyncContext async = baseRequest.startAsync();
+        baseRequest.getResponse().getHttpOutput().sendContent(body.duplicate(), new Callback() {
+            public void succeeded() {
+                keepAlivePolicy.finish(baseRequest, close);
+                async.complete();
+            }
+
+            public void failed(Throwable x) {
+                if (mcstats.isDebug()) {
+                    logger.debug("Failed to write response", x);
+                }
+
+                keepAlivePolicy.finish(baseRequest, true);
+                async.complete();
+            }
+        });
     }
 
     public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
-        try {
-            if (!request.getMethod().equals("POST")) {
-                return;
-            }
+        if (!request.getMethod().equals("POST")) {
+            return;
+        }
+
+        request.setCharacterEncoding("UTF-8");
+        baseRequest.setHandled(true);
+        response.setStatus(200);
+        response.setContentType("text/plain");
 
+        String geoipCountryCode = request.getHeader("GEOIP_COUNTRY_CODE") == null ? request.getHeader("HTTP_X_GEOIP") : request.getHeader("GEOIP_COUNTRY_CODE");
+        ByteBuffer body = process(request.getRequestURI(), request.getHeader("User-Agent"), request.getHeader("Content-Encoding"),
+                geoipCountryCode, request.getHeader("X-Forwarded-For"), request.getInputStream());
+
+        finishRequest(body, baseRequest, response);
+    }
+
+    /**
+     * Process a report independently of how it was received
+     *
+     * @param uri the request uri
+     * @param userAgent the User-Agent header
+     * @param contentEncoding the Content-Encoding header, or null
+     * @param geoipCountryCodeNonFinal the country code provided by the frontend, or null
+     * @param clientIp the X-Forwarded-For header, or null
+     * @param input the request body
+     * @return the body of the response to send
+     */
+    public ByteBuffer process(String uri, String userAgent, String contentEncoding, String geoipCountryCodeNonFinal, final String clientIp, InputStream input) {
+        final DecodedRequest decoded = decodedRequests.acquire();
+
+        // the background work releases the request once it has run
+        boolean submitted = false;
+
+        try {
             if (serverLastSendCache.size() > 1000000) {
                 serverLastSendCache.clear();
             }
 
-            request.setCharacterEncoding("UTF-8");
-            response.setHeader("Connection", "close");
-            baseRequest.setHandled(true);
-            response.setStatus(200);
-            response.setContentType("text/plain");
             mcstats.incrementAndGetRequests();
 
-            final Map<String, String> headers = new HashMap<String, String>();
-
-            Enumeration headerNames = request.getHeaderNames();
-            while (headerNames.hasMoreElements()) {
-                String headerName = (String) headerNames.nextElement();
-                headers.put(headerName, request.getHeader(headerName));
+            if (capture != null && capture.shouldCapture()) {
+                // the body has to be buffered to be both captured and decoded
+                byte[] body = readFully(input);
+                capture.offer(new CapturedRequest(System.currentTimeMillis(), uri, userAgent, contentEncoding, geoipCountryCodeNonFinal, body));
+                input = new ByteArrayInputStream(body);
             }
 
-            String pluginName = URLUtils.decode(getPluginName(request));
+            String pluginName = URLUtils.decode(getPluginName(uri));
 
             if (pluginName == null) {
-                finishRequest(null, ResponseType.ERROR, "Invalid arguments.", baseRequest, response);
-                return;
+                return ResponseBodies.get(null, ResponseType.ERROR, "Invalid arguments.");
             }
 
+            // answers sent before the body is decoded still use the client's response format
+            int revision = getRevision(userAgent);
+
+            // junk is turned away before the plugin is looked up or the body is decoded
+            if (denyList.isPluginDenied(pluginName)) {
+                return ResponseBodies.get(revision, ResponseType.ERROR, "Rejected.");
+            }
+
+            if (addressLimiter != null && clientIp != null && !addressLimiter.tryAcquire(getClientAddress(clientIp))) {
+                return ResponseBodies.get(revision, ResponseType.ERROR, "Rate limited.");
+            }
+
+            long started = System.nanoTime();
             final Plugin plugin = mcstats.loadPlugin(pluginName);
+            metrics.recorder(Stage.PLUGIN_LOOKUP).recordSince(started);
 
-            String userAgent = request.getHeader("User-Agent");
-            final DecodedRequest decoded;
+            if (plugin == null) {
+                return ResponseBodies.get(revision, ResponseType.ERROR, "Rejected.");
+            }
+
+            if (plugin.getId() == -1) {
+                denyList.reject(pluginName);
+                return ResponseBodies.get(revision, ResponseType.ERROR, "Rejected.");
+            }
+
+            if (denyList.isPluginIdDenied(plugin.getId())) {
+                return ResponseBodies.get(revision, ResponseType.OK, "");
+            }
+
+            boolean valid;
+            started = System.nanoTime();
 
             if (userAgent.startsWith("MCStats/")) {
-                decoded = modernDecoder.decode(plugin, baseRequest);
+                valid = modernDecoder.decode(plugin, userAgent, contentEncoding, input, decoded);
             } else {
-                decoded = legacyDecoder.decode(plugin, baseRequest);
+                valid = legacyDecoder.decode(plugin, userAgent, contentEncoding, input, decoded);
+            }
+
+            metrics.recorder(Stage.DECODE).recordSince(started);
+
+            if (!valid) {
+                return ResponseBodies.get(null, ResponseType.ERROR, "Invalid arguments.");
             }
 
-            if (decoded == null) {
-                finishRequest(decoded, ResponseType.ERROR, "Invalid arguments.", baseRequest, response);
-                return;
+            if (denyList.isServerDenied(decoded.guid)) {
+                return ResponseBodies.get(decoded, ResponseType.OK, "");
+            }
+
+            // the guid is only known once the body is decoded, but nothing has touched the database yet
+            if (serverLimiter != null && !serverLimiter.tryAcquire(decoded.guid, plugin.getId())) {
+                return ResponseBodies.get(decoded, ResponseType.ERROR, "Rate limited.");
             }
 
             if (mcstats.isDebug()) {
                 logger.debug("Processing request for " + plugin.getName() + " request=" + decoded);
             }
 
-            String geoipCountryCodeNonFinal = request.getHeader("GEOIP_COUNTRY_CODE") == null ? request.getHeader("HTTP_X_GEOIP") : request.getHeader("GEOIP_COUNTRY_CODE");
-            final String clientIp = request.getHeader("X-Forwarded-For");
-
             if (geoipCountryCodeNonFinal == null) {
                 geoipCountryCodeNonFinal = "ZZ";
             }
-            final String geoipCountryCode = geoipCountryCodeNonFinal;
-
-            if (plugin.getId() == -1) {
-                finishRequest(decoded, ResponseType.ERROR, "Rejected.", baseRequest, response);
-                return;
-            }
+            final String geoipCountryCode = mcstats.getAttributeInterner().intern(geoipCountryCodeNonFinal);
 
             int normalizedTime = normalizeTime();
 
@@ -217,23 +428,26 @@ public class ReportHandler extends AbstractHandler {
                 lastSent = serverLastSendCache.get(serverCacheKey);
             }
 
+            ByteBuffer body;
+
             if (((plugin.getId() != 1) || (decoded.revision != 7)) ||
                     (lastSent > normalizedTime)) {
-                finishRequest(decoded, ResponseType.OK, baseRequest, response);
+                body = ResponseBodies.get(decoded, ResponseType.OK, "");
             } else {
-                finishRequest(decoded, ResponseType.OK_FIRST_REQUEST, baseRequest, response);
+                body = ResponseBodies.get(decoded, ResponseType.OK_FIRST_REQUEST, "");
             }
 
             serverLastSendCache.put(serverCacheKey, (int) System.currentTimeMillis());
 
-            if (plugin.getId() == 4930) {
-                return;
-            }
+            mcstats.getServerCounter(plugin).offer(decoded.guid);
+            mcstats.getGlobalServerCounter().offer(decoded.guid);
 
-            this.executor.execute(new Runnable() {
+            submit(new Runnable() {
                 public void run() {
                     try {
+                        long started = System.nanoTime();
                         Server server = mcstats.loadServer(decoded.guid);
+                        metrics.recorder(Stage.SERVER_LOAD).recordSince(started);
 
                         if ((server.getViolationCount() >= 5) && (!server.isBlacklisted())) {
                             server.setBlacklisted(true);
@@ -302,20 +516,7 @@ public class ReportHandler extends AbstractHandler {
                         }
 
                         if (decoded.revision >= 6) {
-                            if ((decoded.osarch != null) && (decoded.osarch.equals("i386"))) {
-                                decoded.osarch = "x86";
-                            }
-
-                            if ((decoded.osname.startsWith("Windows")) && (decoded.osname.length() > 8)) {
-                                decoded.osversion = decoded.osname.substring(8);
-                                decoded.osname = "Windows";
-                            }
-
-                            if (decoded.osversion.equals("6.1")) {
-                                decoded.osversion = "7";
-                                decoded.osname = "Windows";
-                            }
-
+                            // the platform was normalized by the decoder
                             if (!decoded.osname.equals(server.getOSName())) {
                                 server.setOSName(decoded.osname);
                             }
@@ -349,19 +550,29 @@ public class ReportHandler extends AbstractHandler {
                         serverPlugin.setUpdated((int) (System.currentTimeMillis() / 1000L));
                         plugin.setLastUpdated((int) (System.currentTimeMillis() / 1000L));
                         server.setLastSentData((int) (System.currentTimeMillis() / 1000L));
+                        mcstats.notifyServerPlugin(serverPlugin);
 
                         // server.save();
                         // serverPlugin.save();
                         // plugin.save();
                     } catch (Exception e) {
                         e.printStackTrace();
+                    } finally {
+                        decodedRequests.release(decoded);
                     }
                 }
             });
+            submitted = true;
+
+            return body;
         } catch (Exception e) {
             e.printStackTrace();
 
-            finishRequest(null, ResponseType.OK, baseRequest, response);
+            return ResponseBodies.get(null, ResponseType.OK, "");
+        } finally {
+            if (!submitted) {
+                decodedRequests.release(decoded);
+            }
         }
     }
 
@@ -491,11 +702,10 @@ public class ReportHandler extends AbstractHandler {
     /**
      * Get the plugin name from a request
      *
-     * @param request
+     * @param url
      * @return
      */
-    private String getPluginName(HttpServletRequest request) {
-        String url = request.getRequestURI();
+    private String getPluginName(String url) {
         if (url.startsWith("//report/")) {
             return url.substring("//report/".length());
         } else if (url.startsWith("/report/")) {
@@ -509,6 +719,56 @@ public class ReportHandler extends AbstractHandler {
         }
     }
 
+    /**
+     * Get the address of the client from an X-Forwarded-For header. The client can put anything
+     * in the header, so only the last address, the one appended by our proxy, is trusted.
+     *
+     * @param forwardedFor
+     * @return
+     */
+    private static String getClientAddress(String forwardedFor) {
+        int comma = forwardedFor.lastIndexOf(',');
+        return comma == -1 ? forwardedFor.trim() : forwardedFor.substring(comma + 1).trim();
+    }
+
+    /**
+     * Get a client's protocol revision from its user agent. Only modern clients send it there,
+     * older ones send it in the body and are answered in the legacy format until it is decoded.
+     *
+     * @param userAgent
+     * @return the revision, or 0 if it is not in the user agent
+     */
+    private static int getRevision(String userAgent) {
+        if (userAgent.startsWith("MCStats/")) {
+            try {
+                return Integer.parseInt(userAgent.substring("MCStats/".length()));
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * Read a stream to its end
+     *
+     * @param input
+     * @return
+     * @throws IOException
+     */
+    private static byte[] readFully(InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(1024);
+        byte[] buffer = new byte[4096];
+        int read;
+
+        while ((read = input.read(buffer)) != -1) {
+            output.write(buffer, 0, read);
+        }
+
+        return output.toByteArray();
+    }
+
     /**
      * Process a post request and return all of its key/value pairs
      *
@@ -0,0 +1,138 @@
+package org.mcstats.handler;
+
+import org.mcstats.decoder.DecodedRequest;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Precomputed, immutable response bodies for every response type and protocol revision.
+ * Bodies that carry a message are built the first time the message is used and reused after that.
+ *
+ * The returned buffers are shared, so callers must write a {@link ByteBuffer#duplicate()} of them.
+ */
+public final class ResponseBodies {
+
+    /**
+     * The charset responses are encoded in
+     */
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    /**
+     * The first revision that receives short numeric responses
+     */
+    private static final int MODERN_REVISION = 7;
+
+    /**
+     * Bodies without a message, indexed by [modern ? 1 : 0][response type]
+     */
+    private static final ByteBuffer[][] BODIES = new ByteBuffer[2][ResponseType.values().length];
+
+    /**
+     * Bodies with a message, indexed by [modern ? 1 : 0][response type] and keyed by the message
+     */
+    @SuppressWarnings("unchecked")
+    private static final ConcurrentHashMap<String, ByteBuffer>[][] MESSAGE_BODIES = new ConcurrentHashMap[2][ResponseType.values().length];
+
+    static {
+        for (int style = 0; style < 2; style ++) {
+            for (ResponseType type : ResponseType.values()) {
+                BODIES[style][type.ordinal()] = create(style == 1, type, "");
+                MESSAGE_BODIES[style][type.ordinal()] = new ConcurrentHashMap<String, ByteBuffer>();
+            }
+        }
+    }
+
+    private ResponseBodies() {
+    }
+
+    /**
+     * Get the body for a response
+     *
+     * @param decoded the decoded request, or null if the request could not be decoded
+     * @param type
+     * @param message
+     * @return a shared read-only buffer
+     */
+    public static ByteBuffer get(DecodedRequest decoded, ResponseType type, String message) {
+        return get(decoded != null ? decoded.revision : 0, type, message);
+    }
+
+    /**
+     * Get the body for a response to a client of the given revision
+     *
+     * @param revision the client's protocol revision, or 0 if it is not known
+     * @param type
+     * @param message
+     * @return a shared read-only buffer
+     */
+    public static ByteBuffer get(int revision, ResponseType type, String message) {
+        int style = revision >= MODERN_REVISION ? 1 : 0;
+
+        if (message.isEmpty()) {
+            return BODIES[style][type.ordinal()];
+        }
+
+        ConcurrentHashMap<String, ByteBuffer> bodies = MESSAGE_BODIES[style][type.ordinal()];
+        ByteBuffer body = bodies.get(message);
+
+        if (body == null) {
+            body = create(style == 1, type, message);
+            ByteBuffer existing = bodies.putIfAbsent(message, body);
+
+            if (existing != null) {
+                body = existing;
+            }
+        }
+
+        return body;
+    }
+
+    /**
+     * Encode a response body
+     *
+     * @param modern
+     * @param type
+     * @param message
+     * @return
+     */
+    private static ByteBuffer create(boolean modern, ResponseType type, String message) {
+        StringBuilder builder = new StringBuilder();
+
+        if (modern) {
+            if (type == ResponseType.OK) {
+                builder.append("0");
+            } else if (type == ResponseType.OK_FIRST_REQUEST) {
+                builder.append("1");
+            } else if (type == ResponseType.OK_REGENERATE_GUID) {
+                builder.append("2");
+            } else if (type == ResponseType.ERROR) {
+                builder.append("7");
+            }
+
+            if (!message.isEmpty()) {
+                builder.append(",").append(message);
+            }
+        } else {
+            if (type == ResponseType.OK || type == ResponseType.OK_REGENERATE_GUID) {
+                builder.append("OK");
+            } else if (type == ResponseType.OK_FIRST_REQUEST) {
+                builder.append("OK This is your first update this hour.");
+            } else if (type == ResponseType.ERROR) {
+                builder.append("ERR");
+            }
+
+            if (!message.isEmpty()) {
+                builder.append(" ").append(message);
+            }
+        }
+
+        byte[] bytes = builder.toString().getBytes(ISO_8859_1);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes);
+        buffer.flip();
+        return buffer.asReadOnlyBuffer();
+    }
+
+}
@@ -0,0 +1,594 @@
+package org.mcstats.ingest;
+
+import org.apache.log4j.Logger;
+import org.mcstats.util.ByteBufferInputStream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * A connection to the {@link IngestServer}. Requests are parsed straight out of a pooled buffer;
+ * only the request line and the headers the report handler needs are looked at.
+ *
+ * A report is processed on one of the server's worker threads. Until it is done the connection
+ * stops reading and the request stays in the buffer, which the handler reads the body from; the
+ * response is then written back on the selector thread.
+ */
+class IngestConnection {
+
+    private static final Logger logger = Logger.getLogger("IngestConnection");
+
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    private static final byte[] STATUS_OK = ascii("HTTP/1.1 200 OK\r\n");
+    private static final byte[] STATUS_BAD_REQUEST = ascii("HTTP/1.1 400 Bad Request\r\n");
+    private static final byte[] STATUS_NOT_FOUND = ascii("HTTP/1.1 404 Not Found\r\n");
+    private static final byte[] STATUS_LENGTH_REQUIRED = ascii("HTTP/1.1 411 Length Required\r\n");
+    private static final byte[] STATUS_TOO_LARGE = ascii("HTTP/1.1 413 Request Entity Too Large\r\n");
+
+    private static final byte[] CONTENT_LENGTH = ascii("Content-Type: text/plain\r\nContent-Length: ");
+    private static final byte[] CONNECTION_CLOSE = ascii("\r\nConnection: close\r\n\r\n");
+    private static final byte[] CONNECTION_KEEP_ALIVE = ascii("\r\nConnection: keep-alive\r\n\r\n");
+
+    /**
+     * The body of error responses
+     */
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0).asReadOnlyBuffer();
+
+    private final IngestServer server;
+
+    /**
+     * Runs tasks on the selector thread that owns this connection
+     */
+    private final Executor selectorThread;
+
+    private final SocketChannel channel;
+    private final SelectionKey key;
+
+    /**
+     * The stream the request body is passed to the handler with
+     */
+    private final ByteBufferInputStream body = new ByteBufferInputStream();
+
+    /**
+     * Bytes read from the connection, starting at index 0 and ending at the buffer's position
+     */
+    private ByteBuffer in;
+
+    /**
+     * The response being written, or null if there is none
+     */
+    private ByteBuffer out;
+
+    /**
+     * Scratch space for decoding header values
+     */
+    private byte[] scratch = new byte[256];
+
+    /**
+     * If the connection is closed once the current response has been written
+     */
+    private boolean closeAfterWrite = false;
+
+    /**
+     * If a request is being processed on a worker thread
+     */
+    private boolean processing = false;
+
+    /**
+     * If the connection has been closed
+     */
+    private boolean closed = false;
+
+    /**
+     * The number of requests served on this connection
+     */
+    private int served = 0;
+
+    /**
+     * The last time data was read or written
+     */
+    private long lastActivity = System.currentTimeMillis();
+
+    /**
+     * The parsed request line and headers of the current request
+     */
+    private String method;
+    private String uri;
+    private String protocol;
+    private String userAgent;
+    private String contentEncoding;
+    private String geoipCountryCode;
+    private String geoipFallback;
+    private String forwardedFor;
+    private String connection;
+    private int contentLength;
+    private boolean chunked;
+
+    public IngestConnection(IngestServer server, Executor selectorThread, SocketChannel channel, SelectionKey key) {
+        this.server = server;
+        this.selectorThread = selectorThread;
+        this.channel = channel;
+        this.key = key;
+        in = server.getBuffers().acquire();
+    }
+
+    /**
+     * Called by the selector when data can be read
+     */
+    public void onReadable() {
+        int read;
+
+        try {
+            read = channel.read(in);
+        } catch (IOException e) {
+            close();
+            return;
+        }
+
+        if (read < 0) {
+            close();
+            return;
+        }
+
+        lastActivity = System.currentTimeMillis();
+        handleBuffered();
+    }
+
+    /**
+     * Called by the selector when a blocked response can continue to be written
+     */
+    public void onWritable() {
+        lastActivity = System.currentTimeMillis();
+        flush();
+
+        if (!closed && out == null) {
+            handleBuffered();
+        }
+    }
+
+    /**
+     * Check if the connection has been idle for too long
+     *
+     * @param now
+     * @param timeout
+     * @return
+     */
+    public boolean isIdle(long now, long timeout) {
+        // a worker is still reading the buffer, so the connection can't be closed under it
+        return !processing && now - lastActivity > timeout;
+    }
+
+    /**
+     * Close the connection and return its buffers to the pool
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        key.cancel();
+
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // already closed
+        }
+
+        server.getBuffers().release(in);
+        server.getBuffers().release(out);
+        in = null;
+        out = null;
+        server.connectionClosed();
+    }
+
+    /**
+     * Handle every complete request that has been buffered, stopping if a response can't be written immediately
+     */
+    private void handleBuffered() {
+        while (!closed && out == null && !processing && handleRequest()) {
+            // keep going, the client may have pipelined requests
+        }
+    }
+
+    /**
+     * Handle the request at the start of the buffer if it has been completely received
+     *
+     * @return true if a request was handled
+     */
+    private boolean handleRequest() {
+        int length = in.position();
+        int headerEnd = findHeaderEnd(length);
+
+        if (headerEnd < 0) {
+            if (length == in.capacity()) {
+                respond(STATUS_TOO_LARGE, EMPTY, true);
+            }
+
+            return false;
+        }
+
+        if (!parseHeaders(headerEnd)) {
+            respond(STATUS_BAD_REQUEST, EMPTY, true);
+            return false;
+        }
+
+        if (chunked) {
+            respond(STATUS_LENGTH_REQUIRED, EMPTY, true);
+            return false;
+        }
+
+        int requestEnd = headerEnd + contentLength;
+
+        if (requestEnd > in.capacity()) {
+            respond(STATUS_TOO_LARGE, EMPTY, true);
+            return false;
+        }
+
+        if (length < requestEnd) {
+            return false;
+        }
+
+        served ++;
+        final boolean close = !server.isKeepAlive() || !wantsKeepAlive() || (server.getMaxRequests() > 0 && served >= server.getMaxRequests());
+
+        if (!method.equals("POST")) {
+            finishRequest(length, requestEnd, STATUS_NOT_FOUND, EMPTY, close);
+            return true;
+        }
+
+        final int bufferedLength = length;
+        final int finalRequestEnd = requestEnd;
+        final String finalUri = uri;
+        final String finalUserAgent = userAgent;
+        final String finalContentEncoding = contentEncoding;
+        final String geoip = geoipCountryCode == null ? geoipFallback : geoipCountryCode;
+        final String finalForwardedFor = forwardedFor;
+
+        body.reset(in, headerEnd, requestEnd);
+        processing = true;
+        key.interestOps(0);
+
+        try {
+            server.getWorkers().execute(new Runnable() {
+                public void run() {
+                    ByteBuffer response = null;
+
+                    try {
+                        response = server.getHandler().process(finalUri, finalUserAgent, finalContentEncoding, geoip, finalForwardedFor, body);
+                    } catch (RuntimeException e) {
+                        logger.error("Failed to process an ingest request", e);
+                    }
+
+                    final ByteBuffer processed = response;
+
+                    selectorThread.execute(new Runnable() {
+                        public void run() {
+                            processed(bufferedLength, finalRequestEnd, processed, close);
+                        }
+                    });
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            processing = false;
+            close();
+        }
+
+        return false;
+    }
+
+    /**
+     * Called on the selector thread once a worker has processed a request
+     *
+     * @param length the number of bytes that were buffered when the request was handed off
+     * @param requestEnd the index after the end of the request
+     * @param response the response, or null if processing failed
+     * @param close
+     */
+    private void processed(int length, int requestEnd, ByteBuffer response, boolean close) {
+        processing = false;
+
+        if (closed) {
+            return;
+        }
+
+        if (response == null) {
+            close();
+            return;
+        }
+
+        lastActivity = System.currentTimeMillis();
+        finishRequest(length, requestEnd, STATUS_OK, response, close);
+
+        if (!closed && out == null) {
+            handleBuffered();
+        }
+    }
+
+    /**
+     * Drop a handled request from the buffer and start writing its response
+     *
+     * @param length the number of bytes buffered
+     * @param requestEnd the index after the end of the request
+     * @param status
+     * @param response
+     * @param close
+     */
+    private void finishRequest(int length, int requestEnd, byte[] status, ByteBuffer response, boolean close) {
+        server.requestHandled();
+
+        // drop the request from the buffer, keeping anything pipelined after it
+        in.limit(length);
+        in.position(requestEnd);
+        in.compact();
+
+        respond(status, response, close);
+    }
+
+    /**
+     * Check if the client wants the connection to be kept open
+     *
+     * @return
+     */
+    private boolean wantsKeepAlive() {
+        if ("HTTP/1.1".equals(protocol)) {
+            return !"close".equalsIgnoreCase(connection);
+        }
+
+        return "keep-alive".equalsIgnoreCase(connection);
+    }
+
+    /**
+     * Find the end of the request headers
+     *
+     * @param length the number of bytes buffered
+     * @return the index after the blank line ending the headers, or -1 if it has not been received
+     */
+    private int findHeaderEnd(int length) {
+        for (int i = 3; i < length; i++) {
+            if (in.get(i) == '\n' && in.get(i - 1) == '\r' && in.get(i - 2) == '\n' && in.get(i - 3) == '\r') {
+                return i + 1;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Parse the request line and the headers the handler needs
+     *
+     * @param end the index after the end of the headers
+     * @return false if the request is malformed
+     */
+    private boolean parseHeaders(int end) {
+        method = uri = protocol = null;
+        userAgent = contentEncoding = geoipCountryCode = geoipFallback = forwardedFor = connection = null;
+        contentLength = 0;
+        chunked = false;
+
+        int lineEnd = indexOf((byte) '\r', 0, end);
+        int firstSpace = indexOf((byte) ' ', 0, lineEnd);
+        int secondSpace = firstSpace < 0 ? -1 : indexOf((byte) ' ', firstSpace + 1, lineEnd);
+
+        if (secondSpace < 0) {
+            return false;
+        }
+
+        method = string(0, firstSpace);
+        uri = string(firstSpace + 1, secondSpace);
+        protocol = string(secondSpace + 1, lineEnd);
+
+        int position = lineEnd + 2;
+
+        // the headers end with an empty line
+        while (position < end - 2) {
+            lineEnd = indexOf((byte) '\r', position, end);
+            int colon = indexOf((byte) ':', position, lineEnd);
+
+            if (colon < 0) {
+                return false;
+            }
+
+            int valueStart = colon + 1;
+            int valueEnd = lineEnd;
+
+            while (valueStart < valueEnd && in.get(valueStart) == ' ') {
+                valueStart ++;
+            }
+
+            while (valueEnd > valueStart && in.get(valueEnd - 1) == ' ') {
+                valueEnd --;
+            }
+
+            if (nameIs(position, colon, "Content-Length")) {
+                contentLength = parseInt(valueStart, valueEnd);
+
+                if (contentLength < 0) {
+                    return false;
+                }
+            } else if (nameIs(position, colon, "User-Agent")) {
+                userAgent = string(valueStart, valueEnd);
+            } else if (nameIs(position, colon, "Content-Encoding")) {
+                contentEncoding = string(valueStart, valueEnd);
+            } else if (nameIs(position, colon, "GEOIP_COUNTRY_CODE")) {
+                geoipCountryCode = string(valueStart, valueEnd);
+            } else if (nameIs(position, colon, "HTTP_X_GEOIP")) {
+                geoipFallback = string(valueStart, valueEnd);
+            } else if (nameIs(position, colon, "X-Forwarded-For")) {
+                forwardedFor = string(valueStart, valueEnd);
+            } else if (nameIs(position, colon, "Connection")) {
+                connection = string(valueStart, valueEnd);
+            } else if (nameIs(position, colon, "Transfer-Encoding")) {
+                chunked = true;
+            }
+
+            position = lineEnd + 2;
+        }
+
+        return true;
+    }
+
+    /**
+     * Start writing a response
+     *
+     * @param status
+     * @param response
+     * @param close
+     */
+    private void respond(byte[] status, ByteBuffer response, boolean close) {
+        closeAfterWrite = close;
+        out = server.getBuffers().acquire();
+        out.put(status);
+        out.put(CONTENT_LENGTH);
+        putDecimal(response.remaining());
+        out.put(close ? CONNECTION_CLOSE : CONNECTION_KEEP_ALIVE);
+
+        // absolute gets so the shared body buffer is never modified
+        for (int i = response.position(); i < response.limit(); i++) {
+            out.put(response.get(i));
+        }
+
+        out.flip();
+        flush();
+    }
+
+    /**
+     * Write as much of the response as the socket accepts
+     */
+    private void flush() {
+        try {
+            channel.write(out);
+        } catch (IOException e) {
+            close();
+            return;
+        }
+
+        if (out.hasRemaining()) {
+            key.interestOps(SelectionKey.OP_WRITE);
+            return;
+        }
+
+        server.getBuffers().release(out);
+        out = null;
+
+        if (closeAfterWrite) {
+            close();
+            return;
+        }
+
+        key.interestOps(SelectionKey.OP_READ);
+    }
+
+    /**
+     * Write a non-negative number in decimal to the response
+     *
+     * @param value
+     */
+    private void putDecimal(int value) {
+        int divisor = 1;
+
+        while (divisor <= value / 10) {
+            divisor *= 10;
+        }
+
+        for (; divisor > 0; divisor /= 10) {
+            out.put((byte) ('0' + (value / divisor) % 10));
+        }
+    }
+
+    /**
+     * Find a byte in the buffered request
+     *
+     * @param value
+     * @param from
+     * @param to
+     * @return the index of the byte, or -1 if it is not in [from, to)
+     */
+    private int indexOf(byte value, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (in.get(i) == value) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Check, ignoring case, if a header name equals the given name
+     *
+     * @param from
+     * @param to
+     * @param name
+     * @return
+     */
+    private boolean nameIs(int from, int to, String name) {
+        if (to - from != name.length()) {
+            return false;
+        }
+
+        for (int i = 0; i < name.length(); i++) {
+            if (Character.toLowerCase((char) in.get(from + i)) != Character.toLowerCase(name.charAt(i))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Parse a non-negative integer from the buffered request
+     *
+     * @param from
+     * @param to
+     * @return the value, or -1 if it is not a valid number
+     */
+    private int parseInt(int from, int to) {
+        if (from == to || to - from > 9) {
+            return -1;
+        }
+
+        int value = 0;
+
+        for (int i = from; i < to; i++) {
+            byte b = in.get(i);
+
+            if (b < '0' || b > '9') {
+                return -1;
+            }
+
+            value = value * 10 + (b - '0');
+        }
+
+        return value;
+    }
+
+    /**
+     * Decode part of the buffered request as a string
+     *
+     * @param from
+     * @param to
+     * @return
+     */
+    private String string(int from, int to) {
+        int length = to - from;
+
+        if (length > scratch.length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+
+        in.get(from, scratch, 0, length);
+        return new String(scratch, 0, length, ISO_8859_1);
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(ISO_8859_1);
+    }
+
+}
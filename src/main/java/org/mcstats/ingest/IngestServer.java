@@ -0,0 +1,344 @@
+package org.mcstats.ingest;
+
+import org.apache.log4j.Logger;
+import org.mcstats.MCStats;
+import org.mcstats.handler.ReportHandler;
+import org.mcstats.util.BufferPool;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A minimal HTTP listener for reports that bypasses the servlet container. One thread accepts
+ * connections and hands them to a fixed set of selector threads, which parse requests straight
+ * out of pooled direct buffers. Parsed requests are passed to {@link ReportHandler#process} on a
+ * worker thread, since processing can block on the database, and the response is written by the
+ * connection's selector thread once it is done.
+ *
+ * Only what reports need is supported: POST with a Content-Length, optional keep-alive and
+ * pipelining. Everything else is answered with an error and the connection is closed.
+ */
+public class IngestServer {
+
+    private Logger logger = Logger.getLogger("IngestServer");
+
+    /**
+     * The handler reports are passed to
+     */
+    private final ReportHandler handler;
+
+    /**
+     * The port to listen on
+     */
+    private final int port;
+
+    /**
+     * The size of the socket accept queue
+     */
+    private final int acceptQueueSize;
+
+    /**
+     * The number of selector threads
+     */
+    private final int selectorCount;
+
+    /**
+     * How long a connection may be idle before it is closed, in milliseconds
+     */
+    private final long idleTimeout;
+
+    /**
+     * If connections may be kept open between requests
+     */
+    private final boolean keepAlive;
+
+    /**
+     * The maximum number of requests served on one connection, 0 for no limit
+     */
+    private final int maxRequests;
+
+    /**
+     * Buffers for reading requests and writing responses. A request must fit in one buffer.
+     */
+    private final BufferPool buffers;
+
+    /**
+     * The threads requests are processed on
+     */
+    private final ExecutorService workers;
+
+    /**
+     * The number of requests handled
+     */
+    private final AtomicLong requests = new AtomicLong(0);
+
+    /**
+     * The number of open connections
+     */
+    private final AtomicInteger connections = new AtomicInteger(0);
+
+    /**
+     * The listening socket
+     */
+    private ServerSocketChannel serverChannel;
+
+    /**
+     * The selector threads
+     */
+    private SelectorLoop[] loops;
+
+    /**
+     * If the server is running
+     */
+    private volatile boolean running = false;
+
+    public IngestServer(MCStats mcstats) {
+        Properties config = mcstats.getConfig();
+        handler = mcstats.getReportHandler();
+        port = Integer.parseInt(config.getProperty("ingest.port"));
+        acceptQueueSize = Integer.parseInt(config.getProperty("ingest.acceptQueueSize", "1024"));
+        selectorCount = Integer.parseInt(config.getProperty("ingest.selectors", "4"));
+        idleTimeout = Long.parseLong(config.getProperty("ingest.idleTimeout", "30000"));
+        keepAlive = Boolean.parseBoolean(config.getProperty("keepalive.enabled", "false"));
+        maxRequests = Integer.parseInt(config.getProperty("keepalive.maxRequests", "100"));
+        buffers = new BufferPool(Integer.parseInt(config.getProperty("ingest.bufferSize", "16384")), Integer.parseInt(config.getProperty("ingest.maxBuffers", "4096")));
+
+        if (mcstats.isVirtualThreads()) {
+            workers = Executors.newVirtualThreadPerTaskExecutor();
+        } else {
+            int workerCount = Integer.parseInt(config.getProperty("ingest.workers", "16"));
+            workers = new ThreadPoolExecutor(workerCount, workerCount, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        }
+    }
+
+    /**
+     * Open the listening socket and start the acceptor and selector threads
+     *
+     * @throws IOException
+     */
+    public void start() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.socket().setReuseAddress(true);
+        serverChannel.bind(new InetSocketAddress(port), acceptQueueSize);
+        running = true;
+
+        loops = new SelectorLoop[selectorCount];
+
+        for (int i = 0; i < selectorCount; i++) {
+            loops[i] = new SelectorLoop();
+            new Thread(loops[i], "Ingest Selector #" + (i + 1)).start();
+        }
+
+        new Thread(new Runnable() {
+            public void run() {
+                accept();
+            }
+        }, "Ingest Acceptor").start();
+    }
+
+    /**
+     * Accept connections and distribute them over the selector threads
+     */
+    private void accept() {
+        int next = 0;
+
+        while (running) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                connections.incrementAndGet();
+
+                loops[next].register(channel);
+
+                if (++next == loops.length) {
+                    next = 0;
+                }
+            } catch (IOException e) {
+                if (running) {
+                    logger.error("Failed to accept an ingest connection", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Called when a connection has handled a request
+     */
+    void requestHandled() {
+        requests.incrementAndGet();
+    }
+
+    /**
+     * Called when a connection is closed
+     */
+    void connectionClosed() {
+        connections.decrementAndGet();
+    }
+
+    public ReportHandler getHandler() {
+        return handler;
+    }
+
+    public Executor getWorkers() {
+        return workers;
+    }
+
+    public BufferPool getBuffers() {
+        return buffers;
+    }
+
+    public boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    public int getMaxRequests() {
+        return maxRequests;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Get the number of requests handled
+     *
+     * @return
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * Get the number of open connections
+     *
+     * @return
+     */
+    public int getOpenConnections() {
+        return connections.get();
+    }
+
+    /**
+     * A selector thread. Connections are only ever touched by the thread they were registered with;
+     * work for a connection from another thread is passed in through {@link #execute(Runnable)}.
+     */
+    private class SelectorLoop implements Runnable, Executor {
+
+        /**
+         * The selector for this thread's connections
+         */
+        private final Selector selector;
+
+        /**
+         * Connections accepted but not yet registered with the selector
+         */
+        private final ConcurrentLinkedQueue<SocketChannel> pending = new ConcurrentLinkedQueue<SocketChannel>();
+
+        /**
+         * Work passed in from other threads, e.g. responses to write once a request was processed
+         */
+        private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+
+        public SelectorLoop() throws IOException {
+            selector = Selector.open();
+        }
+
+        /**
+         * Hand a newly accepted connection to this thread
+         *
+         * @param channel
+         */
+        public void register(SocketChannel channel) {
+            pending.add(channel);
+            selector.wakeup();
+        }
+
+        /**
+         * Run a task on this thread
+         *
+         * @param task
+         */
+        public void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        public void run() {
+            long lastSweep = System.currentTimeMillis();
+
+            while (running) {
+                try {
+                    selector.select(1000);
+
+                    SocketChannel channel;
+                    while ((channel = pending.poll()) != null) {
+                        try {
+                            SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                            key.attach(new IngestConnection(IngestServer.this, this, channel, key));
+                        } catch (IOException e) {
+                            channel.close();
+                            connectionClosed();
+                        }
+                    }
+
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        task.run();
+                    }
+
+                    Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+
+                    while (iterator.hasNext()) {
+                        SelectionKey key = iterator.next();
+                        iterator.remove();
+
+                        if (!key.isValid()) {
+                            continue;
+                        }
+
+                        IngestConnection connection = (IngestConnection) key.attachment();
+
+                        if (key.isReadable()) {
+                            connection.onReadable();
+                        } else if (key.isWritable()) {
+                            connection.onWritable();
+                        }
+                    }
+
+                    long now = System.currentTimeMillis();
+
+                    if (idleTimeout > 0 && now - lastSweep >= 1000) {
+                        lastSweep = now;
+
+                        for (SelectionKey key : selector.keys()) {
+                            IngestConnection connection = (IngestConnection) key.attachment();
+
+                            if (connection != null && connection.isIdle(now, idleTimeout)) {
+                                connection.close();
+                            }
+                        }
+                    }
+                } catch (Exception e) {
+                    logger.error("Error in ingest selector", e);
+                }
+            }
+        }
+
+    }
+
+}
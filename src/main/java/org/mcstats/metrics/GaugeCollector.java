@@ -0,0 +1,199 @@
+package org.mcstats.metrics;
+
+import com.google.common.cache.CacheStats;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.mcstats.DatabaseQueue;
+import org.mcstats.EntityCreator;
+import org.mcstats.MCStats;
+import org.mcstats.cache.DenyList;
+import org.mcstats.cache.KnownServers;
+import org.mcstats.capture.TrafficCapture;
+import org.mcstats.cron.MainlineGraphs;
+import org.mcstats.db.MySQLDatabase;
+import org.mcstats.decoder.PlatformNormalizer;
+import org.mcstats.handler.KeepAlivePolicy;
+import org.mcstats.handler.ReportHandler;
+import org.mcstats.ingest.IngestServer;
+import org.mcstats.model.ServerTable;
+import org.mcstats.util.ServerBuildIdentifier;
+import org.mcstats.util.UniqueServerCounter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Collects every gauge and counter of the server into a flat map of names to numbers.
+ * Each value is read directly from the structure that owns it; collections are never copied
+ * or iterated (other than the fixed set of queue workers and thread pools), so collecting is
+ * cheap enough to be scraped as often as needed.
+ */
+public class GaugeCollector {
+
+    private final MCStats mcstats;
+
+    public GaugeCollector(MCStats mcstats) {
+        this.mcstats = mcstats;
+    }
+
+    /**
+     * Collect the current value of every gauge and counter
+     *
+     * @return the values keyed by their dotted name, in a stable order
+     */
+    public Map<String, Number> collect() {
+        Map<String, Number> gauges = new LinkedHashMap<String, Number>();
+        long now = System.currentTimeMillis();
+
+        // requests
+        gauges.put("requests.total", mcstats.getRequests());
+        gauges.put("requests.rate_all_time", mcstats.getRequestCalculatorAllTime().calculateRequestsPerSecond());
+        gauges.put("requests.rate_5s", mcstats.getRequestCalculatorFiveSeconds().calculateRequestsPerSecond());
+        gauges.put("connections.open", mcstats.countOpenConnections());
+
+        // report processing
+        ReportHandler handler = mcstats.getReportHandler();
+        gauges.put("reports.queue_size", handler.queueSize());
+        gauges.put("reports.pooled_requests", handler.getDecodedRequests().getFree());
+
+        KeepAlivePolicy keepAlive = handler.getKeepAlivePolicy();
+        gauges.put("keepalive.responses", keepAlive.getResponses());
+        gauges.put("keepalive.reused", keepAlive.getReused());
+        gauges.put("keepalive.closed_at_limit", keepAlive.getClosedAtLimit());
+
+        TrafficCapture capture = handler.getCapture();
+        if (capture != null) {
+            gauges.put("capture.captured", capture.getCaptured());
+            gauges.put("capture.dropped", capture.getDropped());
+        }
+
+        if (handler.getServerLimiter() != null) {
+            gauges.put("ratelimit.server_plugin.limited", handler.getServerLimiter().getLimited());
+            gauges.put("ratelimit.ip.limited", handler.getAddressLimiter().getLimited());
+            gauges.put("ratelimit.bytes", handler.getServerLimiter().getSizeInBytes() + handler.getAddressLimiter().getSizeInBytes());
+        }
+
+        IngestServer ingest = mcstats.getIngestServer();
+        if (ingest != null) {
+            gauges.put("ingest.requests", ingest.getRequests());
+            gauges.put("ingest.connections", ingest.getOpenConnections());
+            gauges.put("ingest.buffers_allocated", ingest.getBuffers().getAllocated());
+            gauges.put("ingest.buffers_free", ingest.getBuffers().getFree());
+        }
+
+        // database queue
+        DatabaseQueue queue = mcstats.getDatabaseQueue();
+        int workers = 0;
+        int busy = 0;
+        long oldestJob = 0;
+
+        for (DatabaseQueue.QueueWorker worker : queue.getWorkers()) {
+            workers ++;
+
+            if (worker.isBusy()) {
+                busy ++;
+                oldestJob = Math.max(oldestJob, now - worker.getJobStart());
+            }
+        }
+
+        gauges.put("database_queue.size", queue.size());
+        gauges.put("database_queue.workers", workers);
+        gauges.put("database_queue.workers_busy", busy);
+        gauges.put("database_queue.oldest_job_ms", oldestJob);
+
+        EntityCreator creator = mcstats.getEntityCreator();
+        gauges.put("creation.pending", creator.getPending());
+        gauges.put("creation.inserted", creator.getInserted());
+        gauges.put("creation.retried", creator.getRetried());
+        gauges.put("creation.failed", creator.getFailed());
+        gauges.put("creation.ids_exhausted", creator.getIdsExhausted());
+
+        if (mcstats.getDatabase() instanceof MySQLDatabase) {
+            MySQLDatabase database = (MySQLDatabase) mcstats.getDatabase();
+            gauges.put("database_pool.active", database.getActiveConnections());
+            gauges.put("database_pool.idle", database.getIdleConnections());
+            gauges.put("database_pool.max", database.getMaxConnections());
+        }
+
+        QueryMetrics queries = mcstats.getMetrics().getQueries();
+        gauges.put("database.queries", queries.getTotalCalls());
+        gauges.put("database.connection_errors", queries.getConnectionErrors());
+
+        // caches
+        CacheStats serverCache = mcstats.getServerCacheStats();
+        gauges.put("server_cache.size", mcstats.getCachedServerCount());
+        gauges.put("server_cache.hit_rate", serverCache.hitRate());
+        gauges.put("server_cache.hits", serverCache.hitCount());
+        gauges.put("server_cache.misses", serverCache.missCount());
+        gauges.put("server_cache.load_failures", serverCache.loadExceptionCount());
+        gauges.put("server_cache.evictions", serverCache.evictionCount());
+        gauges.put("server_cache.average_load_ms", serverCache.averageLoadPenalty() / 1000000D);
+        gauges.put("plugin_cache.size", mcstats.getCachedPluginCount());
+
+        ServerBuildIdentifier buildIdentifier = mcstats.getServerBuildIdentifier();
+        CacheStats buildCache = buildIdentifier.getCacheStats();
+        gauges.put("server_build_cache.size", buildIdentifier.getCacheSize());
+        gauges.put("server_build_cache.hit_rate", buildCache.hitRate());
+        gauges.put("server_build_cache.misses", buildCache.missCount());
+        gauges.put("server_build_cache.evictions", buildCache.evictionCount());
+        gauges.put("server_build.definitions", buildIdentifier.getDefinitionCount());
+        gauges.put("server_build.generation", buildIdentifier.getGeneration());
+
+        ServerTable table = mcstats.getServerTable();
+        gauges.put("server_table.rows", table.size());
+        gauges.put("server_table.capacity", table.capacity());
+        gauges.put("server_table.dictionary_size", table.getDictionary().size());
+        gauges.put("server_table.dictionary_turned_away", table.getDictionary().getTurnedAway());
+        gauges.put("interner.size", mcstats.getAttributeInterner().size());
+
+        PlatformNormalizer normalizer = mcstats.getPlatformNormalizer();
+        gauges.put("normalizer.size", normalizer.size());
+        gauges.put("normalizer.hit_rate", normalizer.stats().hitRate());
+
+        DenyList denyList = mcstats.getDenyList();
+        gauges.put("denylist.entries", denyList.getEntryCount());
+        gauges.put("denylist.rejected_plugins", denyList.getRejectedSize());
+        gauges.put("denylist.denied_plugins", denyList.getDeniedPlugins());
+        gauges.put("denylist.denied_plugin_ids", denyList.getDeniedPluginIds());
+        gauges.put("denylist.denied_servers", denyList.getDeniedServers());
+
+        KnownServers knownServers = mcstats.getKnownServers();
+        gauges.put("known_servers.ready", knownServers.isReady() ? 1 : 0);
+        gauges.put("known_servers.definitely_new", knownServers.getDefinitelyNew());
+        gauges.put("known_servers.probably_known", knownServers.getProbablyKnown());
+        gauges.put("known_servers.bytes", knownServers.getSizeInBytes());
+
+        // servers
+        UniqueServerCounter counter = mcstats.getGlobalServerCounter();
+        gauges.put("servers.active_interval", mcstats.getActiveServerCount());
+        gauges.put("servers.unique_day", counter.estimateCurrent(UniqueServerCounter.Window.DAY));
+        gauges.put("servers.unique_month", counter.estimateCurrent(UniqueServerCounter.Window.MONTH));
+
+        // graph generation
+        MainlineGraphs generator = mcstats.getGraphGenerator();
+        if (generator != null) {
+            gauges.put("generation.running", generator.isRunning() ? 1 : 0);
+            gauges.put("generation.runs", generator.getRuns());
+            gauges.put("generation.last_duration_ms", generator.getLastDuration());
+            gauges.put("generation.seconds_since_last", generator.getLastStarted() == 0 ? -1 : (now - generator.getLastStarted()) / 1000L);
+        }
+
+        // web server thread pools
+        for (Map.Entry<String, QueuedThreadPool> entry : mcstats.getThreadPools().entrySet()) {
+            String prefix = "threads." + entry.getKey().replace(' ', '_').toLowerCase() + ".";
+            QueuedThreadPool pool = entry.getValue();
+            gauges.put(prefix + "threads", pool.getThreads());
+            gauges.put(prefix + "idle", pool.getIdleThreads());
+            gauges.put(prefix + "queued", pool.getQueueSize());
+            gauges.put(prefix + "max", pool.getMaxThreads());
+        }
+
+        // jvm
+        Runtime runtime = Runtime.getRuntime();
+        gauges.put("jvm.memory_used", runtime.totalMemory() - runtime.freeMemory());
+        gauges.put("jvm.memory_max", runtime.maxMemory());
+        gauges.put("jvm.threads", Thread.activeCount());
+
+        return gauges;
+    }
+
+}
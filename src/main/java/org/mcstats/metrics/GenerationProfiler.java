@@ -0,0 +1,200 @@
+package org.mcstats.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Profiles graph generation runs. A run is profiled on the thread generating it: wall time,
+ * CPU time and allocation are measured for that thread between {@link #startGenerator(String)}
+ * and {@link #finishGenerator(int, long)}. The last reports are kept for the status page.
+ */
+public class GenerationProfiler {
+
+    /**
+     * The number of reports to keep
+     */
+    private final int history;
+
+    /**
+     * The most recent reports, oldest first
+     */
+    private final LinkedList<GenerationReport> reports = new LinkedList<GenerationReport>();
+
+    /**
+     * Servers scanned since the current generator started
+     */
+    private final AtomicLong serversScanned = new AtomicLong(0);
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    /**
+     * The run being profiled
+     */
+    private GenerationReport current = null;
+
+    /**
+     * Counters at the start of the current run
+     */
+    private long runWall, runCpu, runAllocated;
+
+    /**
+     * The name of the current generator and the counters when it started
+     */
+    private String generatorName = null;
+    private long generatorWall, generatorCpu, generatorAllocated;
+
+    public GenerationProfiler(int history) {
+        this.history = history;
+
+        if (threads.isThreadCpuTimeSupported() && !threads.isThreadCpuTimeEnabled()) {
+            threads.setThreadCpuTimeEnabled(true);
+        }
+    }
+
+    /**
+     * Start profiling a run on the current thread
+     */
+    public synchronized void startRun() {
+        current = new GenerationReport(System.currentTimeMillis());
+        runWall = System.nanoTime();
+        runCpu = cpuTime();
+        runAllocated = allocatedBytes();
+    }
+
+    /**
+     * Start profiling a generator within the current run
+     *
+     * @param name
+     */
+    public synchronized void startGenerator(String name) {
+        generatorName = name;
+        serversScanned.set(0);
+        generatorWall = System.nanoTime();
+        generatorCpu = cpuTime();
+        generatorAllocated = allocatedBytes();
+    }
+
+    /**
+     * Record that the current generator looked at servers
+     *
+     * @param count
+     */
+    public void addServersScanned(long count) {
+        serversScanned.addAndGet(count);
+    }
+
+    /**
+     * Finish profiling the current generator
+     *
+     * @param columns the number of columns it produced
+     * @param bytesWritten the bytes it wrote to the graph store
+     */
+    public synchronized void finishGenerator(int columns, long bytesWritten) {
+        if (current == null || generatorName == null) {
+            return;
+        }
+
+        current.add(new GenerationReport.Generator(generatorName, (System.nanoTime() - generatorWall) / 1000000L,
+                toMillis(delta(cpuTime(), generatorCpu)), delta(allocatedBytes(), generatorAllocated),
+                serversScanned.get(), columns, bytesWritten));
+        generatorName = null;
+    }
+
+    /**
+     * Finish profiling the current run and add it to the history
+     *
+     * @param failed if the run was aborted by an error
+     */
+    public synchronized void finishRun(boolean failed) {
+        if (current == null) {
+            return;
+        }
+
+        current.finish((System.nanoTime() - runWall) / 1000000L, toMillis(delta(cpuTime(), runCpu)),
+                delta(allocatedBytes(), runAllocated), failed);
+        reports.add(current);
+
+        while (reports.size() > history) {
+            reports.removeFirst();
+        }
+
+        current = null;
+        generatorName = null;
+    }
+
+    /**
+     * Get the kept reports, newest first
+     *
+     * @return
+     */
+    public synchronized List<GenerationReport> getReports() {
+        List<GenerationReport> result = new ArrayList<GenerationReport>(reports.size());
+
+        for (int i = reports.size() - 1; i >= 0; i--) {
+            result.add(reports.get(i));
+        }
+
+        return result;
+    }
+
+    /**
+     * Get the most recent report
+     *
+     * @return the report, or null if no run has finished yet
+     */
+    public synchronized GenerationReport getLastReport() {
+        return reports.isEmpty() ? null : reports.getLast();
+    }
+
+    /**
+     * Get the CPU time of the current thread
+     *
+     * @return the time in nanoseconds, or -1 if it cannot be measured
+     */
+    private long cpuTime() {
+        return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : -1;
+    }
+
+    /**
+     * Get the bytes allocated by the current thread
+     *
+     * @return the bytes, or -1 if they cannot be measured
+     */
+    private long allocatedBytes() {
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threads;
+
+            if (bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled()) {
+                return bean.getThreadAllocatedBytes(Thread.currentThread().threadId());
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Get the difference between two measurements, either of which may be unavailable
+     *
+     * @param end
+     * @param start
+     * @return the difference, or -1 if either measurement is unavailable
+     */
+    private static long delta(long end, long start) {
+        return end < 0 || start < 0 ? -1 : end - start;
+    }
+
+    /**
+     * Convert nanoseconds to milliseconds, keeping -1 for an unavailable measurement
+     *
+     * @param nanos
+     * @return
+     */
+    private static long toMillis(long nanos) {
+        return nanos < 0 ? -1 : nanos / 1000000L;
+    }
+
+}
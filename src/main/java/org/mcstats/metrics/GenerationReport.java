@@ -0,0 +1,239 @@
+package org.mcstats.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The profile of a single graph generation run, broken down by generator.
+ * CPU time and allocation are -1 when the JVM does not support measuring them.
+ */
+public class GenerationReport {
+
+    /**
+     * The time the run started, in milliseconds
+     */
+    private final long started;
+
+    /**
+     * The profile of each generator, in the order they ran
+     */
+    private final List<Generator> generators = new ArrayList<Generator>();
+
+    /**
+     * The wall time of the run, in milliseconds
+     */
+    private long wallMillis = -1;
+
+    /**
+     * The CPU time of the run, in milliseconds
+     */
+    private long cpuMillis = -1;
+
+    /**
+     * The bytes allocated by the run
+     */
+    private long allocatedBytes = -1;
+
+    /**
+     * If the run was aborted by an error
+     */
+    private boolean failed = false;
+
+    public GenerationReport(long started) {
+        this.started = started;
+    }
+
+    /**
+     * Add the profile of a generator
+     *
+     * @param generator
+     */
+    void add(Generator generator) {
+        generators.add(generator);
+    }
+
+    /**
+     * Mark the run as finished
+     *
+     * @param wallMillis
+     * @param cpuMillis
+     * @param allocatedBytes
+     * @param failed
+     */
+    void finish(long wallMillis, long cpuMillis, long allocatedBytes, boolean failed) {
+        this.wallMillis = wallMillis;
+        this.cpuMillis = cpuMillis;
+        this.allocatedBytes = allocatedBytes;
+        this.failed = failed;
+    }
+
+    public long getStarted() {
+        return started;
+    }
+
+    public List<Generator> getGenerators() {
+        return Collections.unmodifiableList(generators);
+    }
+
+    public long getWallMillis() {
+        return wallMillis;
+    }
+
+    public long getCpuMillis() {
+        return cpuMillis;
+    }
+
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    public boolean isFailed() {
+        return failed;
+    }
+
+    /**
+     * Get the total number of columns produced by every generator
+     *
+     * @return
+     */
+    public long getColumns() {
+        long columns = 0;
+
+        for (Generator generator : generators) {
+            columns += generator.getColumns();
+        }
+
+        return columns;
+    }
+
+    /**
+     * Get the total number of bytes written to the graph store by every generator
+     *
+     * @return
+     */
+    public long getBytesWritten() {
+        long bytes = 0;
+
+        for (Generator generator : generators) {
+            bytes += generator.getBytesWritten();
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Create a machine readable copy of the report
+     *
+     * @return
+     */
+    public Map<String, Object> toMap() {
+        List<Object> generatorList = new ArrayList<Object>();
+
+        for (Generator generator : generators) {
+            generatorList.add(generator.toMap());
+        }
+
+        Map<String, Object> values = new LinkedHashMap<String, Object>();
+        values.put("started", started);
+        values.put("wall_ms", wallMillis);
+        values.put("cpu_ms", cpuMillis);
+        values.put("allocated_bytes", allocatedBytes);
+        values.put("columns", getColumns());
+        values.put("bytes_written", getBytesWritten());
+        values.put("failed", failed);
+        values.put("generators", generatorList);
+        return values;
+    }
+
+    /**
+     * The profile of a single generator within a run
+     */
+    public static class Generator {
+
+        /**
+         * The name of the generator
+         */
+        private final String name;
+
+        private final long wallMillis;
+
+        private final long cpuMillis;
+
+        private final long allocatedBytes;
+
+        /**
+         * The number of servers the generator looked at
+         */
+        private final long serversScanned;
+
+        /**
+         * The number of columns the generator produced
+         */
+        private final int columns;
+
+        /**
+         * The approximate number of bytes written to the graph store
+         */
+        private final long bytesWritten;
+
+        public Generator(String name, long wallMillis, long cpuMillis, long allocatedBytes, long serversScanned, int columns, long bytesWritten) {
+            this.name = name;
+            this.wallMillis = wallMillis;
+            this.cpuMillis = cpuMillis;
+            this.allocatedBytes = allocatedBytes;
+            this.serversScanned = serversScanned;
+            this.columns = columns;
+            this.bytesWritten = bytesWritten;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getWallMillis() {
+            return wallMillis;
+        }
+
+        public long getCpuMillis() {
+            return cpuMillis;
+        }
+
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        public long getServersScanned() {
+            return serversScanned;
+        }
+
+        public int getColumns() {
+            return columns;
+        }
+
+        public long getBytesWritten() {
+            return bytesWritten;
+        }
+
+        /**
+         * Create a machine readable copy of the profile
+         *
+         * @return
+         */
+        public Map<String, Object> toMap() {
+            Map<String, Object> values = new LinkedHashMap<String, Object>();
+            values.put("name", name);
+            values.put("wall_ms", wallMillis);
+            values.put("cpu_ms", cpuMillis);
+            values.put("allocated_bytes", allocatedBytes);
+            values.put("servers_scanned", serversScanned);
+            values.put("columns", columns);
+            values.put("bytes_written", bytesWritten);
+            return values;
+        }
+
+    }
+
+}
@@ -0,0 +1,208 @@
+package org.mcstats.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A concurrent log-linear histogram in the style of HdrHistogram. Values up to 127 are counted exactly;
+ * above that every power of 2 is split into 64 buckets, so any recorded value is known to within
+ * about 1.6%. Values from 0 to 2^37 - 1 can be recorded; larger values are clamped.
+ */
+public class Histogram {
+
+    /**
+     * The number of buckets counted exactly, and the number of buckets per power of 2 above that times 2
+     */
+    private static final int SUB_BUCKET_COUNT = 128;
+
+    /**
+     * The number of buckets per power of 2 above the exact range
+     */
+    private static final int HALF_SUB_BUCKET_COUNT = SUB_BUCKET_COUNT / 2;
+
+    /**
+     * The bit length of a sub bucket index
+     */
+    private static final int SUB_BUCKET_BITS = 7;
+
+    /**
+     * The largest value that can be recorded
+     */
+    public static final long MAX_VALUE = (1L << 37) - 1;
+
+    /**
+     * The total number of buckets
+     */
+    private static final int BUCKET_COUNT = index(MAX_VALUE) + 1;
+
+    /**
+     * The count of values in each bucket
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    /**
+     * The number of values recorded
+     */
+    private final AtomicLong count = new AtomicLong(0);
+
+    /**
+     * The sum of all values recorded
+     */
+    private final AtomicLong sum = new AtomicLong(0);
+
+    /**
+     * The largest value recorded
+     */
+    private final AtomicLong max = new AtomicLong(0);
+
+    /**
+     * Record a value
+     *
+     * @param value
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        } else if (value > MAX_VALUE) {
+            value = MAX_VALUE;
+        }
+
+        counts.incrementAndGet(index(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+
+        long current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Add the values of another histogram to this one
+     *
+     * @param other
+     */
+    public void add(Histogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long bucket = other.counts.get(i);
+
+            if (bucket != 0) {
+                counts.addAndGet(i, bucket);
+            }
+        }
+
+        count.addAndGet(other.count.get());
+        sum.addAndGet(other.sum.get());
+
+        long otherMax = other.max.get();
+        long current;
+        while (otherMax > (current = max.get())) {
+            if (max.compareAndSet(current, otherMax)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Remove all recorded values. Values recorded concurrently with a reset may be lost.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    /**
+     * Get the number of values recorded
+     *
+     * @return
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Get the largest value recorded
+     *
+     * @return
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Get the mean of the values recorded
+     *
+     * @return
+     */
+    public double getMean() {
+        long count = this.count.get();
+        return count == 0 ? 0 : sum.get() / (double) count;
+    }
+
+    /**
+     * Get the value at a percentile. The highest value equivalent to the bucket is returned.
+     *
+     * @param percentile between 0 and 100
+     * @return
+     */
+    public long getValueAtPercentile(double percentile) {
+        long count = this.count.get();
+
+        if (count == 0) {
+            return 0;
+        }
+
+        long target = Math.max(1, (long) Math.ceil(percentile / 100d * count));
+        long seen = 0;
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+
+            if (seen >= target) {
+                return Math.min(highestEquivalentValue(i), max.get());
+            }
+        }
+
+        return max.get();
+    }
+
+    /**
+     * Get the bucket a value is counted in
+     *
+     * @param value
+     * @return
+     */
+    private static int index(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+
+        // keep the top 7 bits of the value
+        int shift = (63 - Long.numberOfLeadingZeros(value)) - (SUB_BUCKET_BITS - 1);
+        return SUB_BUCKET_COUNT + (shift - 1) * HALF_SUB_BUCKET_COUNT + (int) (value >>> shift) - HALF_SUB_BUCKET_COUNT;
+    }
+
+    /**
+     * Get the largest value counted in a bucket
+     *
+     * @param index
+     * @return
+     */
+    private static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+
+        int shift = (index - SUB_BUCKET_COUNT) / HALF_SUB_BUCKET_COUNT + 1;
+        long subBucket = (index - SUB_BUCKET_COUNT) % HALF_SUB_BUCKET_COUNT + HALF_SUB_BUCKET_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+}
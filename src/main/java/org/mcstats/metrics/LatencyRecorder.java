@@ -0,0 +1,208 @@
+package org.mcstats.metrics;
+
+/**
+ * Records latencies in microseconds, both since start and over a sliding window. The window is
+ * made of fixed slots that are reset as time moves on, so recording never allocates.
+ */
+public class LatencyRecorder {
+
+    /**
+     * The length of a slot in milliseconds
+     */
+    private static final long SLOT_MILLIS = 10000L;
+
+    /**
+     * The number of slots; the longest window is one slot shorter than this
+     */
+    private static final int SLOT_COUNT = 7;
+
+    /**
+     * The longest window that can be reported, in milliseconds
+     */
+    public static final long MAX_WINDOW = (SLOT_COUNT - 1) * SLOT_MILLIS;
+
+    /**
+     * All values recorded since start
+     */
+    private final Histogram total = new Histogram();
+
+    /**
+     * The slots of the sliding window
+     */
+    private final Slot[] slots = new Slot[SLOT_COUNT];
+
+    /**
+     * The time the recorder was created
+     */
+    private final long created = System.currentTimeMillis();
+
+    public LatencyRecorder() {
+        for (int i = 0; i < SLOT_COUNT; i++) {
+            slots[i] = new Slot();
+        }
+    }
+
+    /**
+     * Record a latency
+     *
+     * @param micros
+     */
+    public void record(long micros) {
+        total.record(micros);
+        getSlot(System.currentTimeMillis() / SLOT_MILLIS).histogram.record(micros);
+    }
+
+    /**
+     * Record the time elapsed since a start time obtained from {@link System#nanoTime()}
+     *
+     * @param startNanos
+     */
+    public void recordSince(long startNanos) {
+        record((System.nanoTime() - startNanos) / 1000L);
+    }
+
+    /**
+     * Get a snapshot of all values recorded since start
+     *
+     * @return
+     */
+    public Snapshot getTotal() {
+        return new Snapshot(total, (System.currentTimeMillis() - created) / 1000d);
+    }
+
+    /**
+     * Get a snapshot of the values recorded in a recent window. The window is rounded to whole slots
+     * and covers the current, partially elapsed slot and the completed slots before it.
+     *
+     * @param windowMillis the length of the window, at most {@link #MAX_WINDOW}
+     * @return
+     */
+    public Snapshot getWindow(long windowMillis) {
+        long now = System.currentTimeMillis();
+        long currentPeriod = now / SLOT_MILLIS;
+        int windowSlots = (int) Math.max(1, Math.min(SLOT_COUNT - 1, windowMillis / SLOT_MILLIS));
+        long firstPeriod = currentPeriod - windowSlots;
+
+        Histogram merged = new Histogram();
+
+        for (Slot slot : slots) {
+            long period = slot.period;
+
+            if (period > firstPeriod && period <= currentPeriod) {
+                merged.add(slot.histogram);
+            }
+        }
+
+        // the window covers the completed slots and the elapsed part of the current one
+        long windowStart = Math.max(created, (firstPeriod + 1) * SLOT_MILLIS);
+        return new Snapshot(merged, Math.max(1, now - windowStart) / 1000d);
+    }
+
+    /**
+     * Get the slot for a period, resetting it if it last held an older period
+     *
+     * @param period
+     * @return
+     */
+    private Slot getSlot(long period) {
+        Slot slot = slots[(int) (period % SLOT_COUNT)];
+
+        if (slot.period != period) {
+            synchronized (slot) {
+                if (slot.period != period) {
+                    slot.histogram.reset();
+                    slot.period = period;
+                }
+            }
+        }
+
+        return slot;
+    }
+
+    /**
+     * One slot of the sliding window
+     */
+    private static class Slot {
+
+        /**
+         * The period the slot holds values for
+         */
+        private volatile long period = Long.MIN_VALUE;
+
+        /**
+         * The values recorded in the period
+         */
+        private final Histogram histogram = new Histogram();
+
+    }
+
+    /**
+     * Summary statistics of recorded latencies, in microseconds
+     */
+    public static class Snapshot {
+
+        private final long count;
+        private final double rate;
+        private final double mean;
+        private final long p50;
+        private final long p90;
+        private final long p99;
+        private final long p999;
+        private final long max;
+
+        public Snapshot(Histogram histogram, double seconds) {
+            count = histogram.getCount();
+            rate = seconds > 0 ? count / seconds : 0;
+            mean = histogram.getMean();
+            p50 = histogram.getValueAtPercentile(50);
+            p90 = histogram.getValueAtPercentile(90);
+            p99 = histogram.getValueAtPercentile(99);
+            p999 = histogram.getValueAtPercentile(99.9);
+            max = histogram.getMax();
+        }
+
+        /**
+         * Get the number of values recorded
+         *
+         * @return
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Get the number of values recorded per second
+         *
+         * @return
+         */
+        public double getRate() {
+            return rate;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        public long getP50() {
+            return p50;
+        }
+
+        public long getP90() {
+            return p90;
+        }
+
+        public long getP99() {
+            return p99;
+        }
+
+        public long getP999() {
+            return p999;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+    }
+
+}
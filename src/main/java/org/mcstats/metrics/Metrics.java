@@ -0,0 +1,91 @@
+package org.mcstats.metrics;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The latency recorders for every ingest stage
+ */
+public class Metrics {
+
+    /**
+     * The recorder for each stage
+     */
+    private final Map<Stage, LatencyRecorder> recorders = new EnumMap<Stage, LatencyRecorder>(Stage.class);
+
+    /**
+     * Statistics for every database query
+     */
+    private final QueryMetrics queries = new QueryMetrics();
+
+    public Metrics() {
+        for (Stage stage : Stage.values()) {
+            recorders.put(stage, new LatencyRecorder());
+        }
+    }
+
+    /**
+     * Get the recorder for a stage
+     *
+     * @param stage
+     * @return
+     */
+    public LatencyRecorder recorder(Stage stage) {
+        return recorders.get(stage);
+    }
+
+    /**
+     * Get the statistics for every database query
+     *
+     * @return
+     */
+    public QueryMetrics getQueries() {
+        return queries;
+    }
+
+    /**
+     * Create a machine readable summary of every stage, for both the recent window and since start
+     *
+     * @param windowMillis
+     * @return
+     */
+    public Map<String, Object> toMap(long windowMillis) {
+        Map<String, Object> stages = new LinkedHashMap<String, Object>();
+
+        for (Stage stage : Stage.values()) {
+            LatencyRecorder recorder = recorders.get(stage);
+            Map<String, Object> values = new LinkedHashMap<String, Object>();
+            values.put("window", toMap(recorder.getWindow(windowMillis)));
+            values.put("total", toMap(recorder.getTotal()));
+            stages.put(stage.getKey(), values);
+        }
+
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        result.put("unit", "us");
+        result.put("window_seconds", windowMillis / 1000L);
+        result.put("stages", stages);
+        result.put("queries", queries.toMap(windowMillis));
+        return result;
+    }
+
+    /**
+     * Convert a snapshot to a map
+     *
+     * @param snapshot
+     * @return
+     */
+    private static Map<String, Object> toMap(LatencyRecorder.Snapshot snapshot) {
+        Map<String, Object> values = new LinkedHashMap<String, Object>();
+        values.put("count", snapshot.getCount());
+        values.put("rate", Math.round(snapshot.getRate() * 10) / 10d);
+        values.put("mean", Math.round(snapshot.getMean()));
+        values.put("p50", snapshot.getP50());
+        values.put("p90", snapshot.getP90());
+        values.put("p99", snapshot.getP99());
+        values.put("p999", snapshot.getP999());
+        values.put("max", snapshot.getMax());
+        return values;
+    }
+
+}
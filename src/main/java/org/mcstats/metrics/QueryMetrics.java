@@ -0,0 +1,134 @@
+package org.mcstats.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistics for every database query and for getting connections from the pool
+ */
+public class QueryMetrics {
+
+    /**
+     * The statistics of each query, by name
+     */
+    private final ConcurrentHashMap<String, QueryStats> queries = new ConcurrentHashMap<String, QueryStats>();
+
+    /**
+     * The time spent waiting for a connection from the pool
+     */
+    private final LatencyRecorder connectionWait = new LatencyRecorder();
+
+    /**
+     * The number of times a connection could not be obtained
+     */
+    private final AtomicLong connectionErrors = new AtomicLong(0);
+
+    /**
+     * Get the statistics for a query, creating them if needed
+     *
+     * @param name
+     * @return
+     */
+    public QueryStats get(String name) {
+        QueryStats stats = queries.get(name);
+
+        if (stats == null) {
+            stats = new QueryStats(name);
+            QueryStats existing = queries.putIfAbsent(name, stats);
+
+            if (existing != null) {
+                stats = existing;
+            }
+        }
+
+        return stats;
+    }
+
+    /**
+     * Get the statistics of every query that has been run, sorted by name
+     *
+     * @return
+     */
+    public List<QueryStats> getQueries() {
+        List<QueryStats> result = new ArrayList<QueryStats>(queries.values());
+
+        Collections.sort(result, new Comparator<QueryStats>() {
+            public int compare(QueryStats first, QueryStats second) {
+                return first.getName().compareTo(second.getName());
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Get the total number of queries run
+     *
+     * @return
+     */
+    public long getTotalCalls() {
+        long total = 0;
+
+        for (QueryStats stats : queries.values()) {
+            total += stats.getCalls();
+        }
+
+        return total;
+    }
+
+    /**
+     * Record a connection being obtained from the pool
+     *
+     * @param startNanos
+     */
+    public void recordConnectionWait(long startNanos) {
+        connectionWait.recordSince(startNanos);
+    }
+
+    /**
+     * Record a connection that could not be obtained
+     */
+    public void recordConnectionError() {
+        connectionErrors.incrementAndGet();
+    }
+
+    public LatencyRecorder getConnectionWait() {
+        return connectionWait;
+    }
+
+    public long getConnectionErrors() {
+        return connectionErrors.get();
+    }
+
+    /**
+     * Create a machine readable summary of every query
+     *
+     * @param windowMillis
+     * @return
+     */
+    public Map<String, Object> toMap(long windowMillis) {
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+
+        for (QueryStats stats : getQueries()) {
+            LatencyRecorder.Snapshot window = stats.getLatency().getWindow(windowMillis);
+            Map<String, Object> values = new LinkedHashMap<String, Object>();
+            values.put("calls", stats.getCalls());
+            values.put("errors", stats.getErrors());
+            values.put("rows", stats.getRowsAffected());
+            values.put("rate", Math.round(window.getRate() * 10) / 10d);
+            values.put("p50", window.getP50());
+            values.put("p99", window.getP99());
+            values.put("max", window.getMax());
+            result.put(stats.getName(), values);
+        }
+
+        return result;
+    }
+
+}
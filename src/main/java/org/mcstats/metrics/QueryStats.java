@@ -0,0 +1,85 @@
+package org.mcstats.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistics for one kind of database query
+ */
+public class QueryStats {
+
+    /**
+     * The name of the query, usually the database method running it
+     */
+    private final String name;
+
+    /**
+     * The number of times the query was run
+     */
+    private final AtomicLong calls = new AtomicLong(0);
+
+    /**
+     * The number of times the query failed
+     */
+    private final AtomicLong errors = new AtomicLong(0);
+
+    /**
+     * The total number of rows the query affected
+     */
+    private final AtomicLong rowsAffected = new AtomicLong(0);
+
+    /**
+     * The latency of the query
+     */
+    private final LatencyRecorder latency = new LatencyRecorder();
+
+    public QueryStats(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Record a successful run of the query
+     *
+     * @param startNanos the time the query started, from {@link System#nanoTime()}
+     * @param rows the number of rows affected, or 0 for a select
+     */
+    public void record(long startNanos, int rows) {
+        latency.recordSince(startNanos);
+        calls.incrementAndGet();
+
+        if (rows > 0) {
+            rowsAffected.addAndGet(rows);
+        }
+    }
+
+    /**
+     * Record a failed run of the query
+     *
+     * @param startNanos the time the query started, from {@link System#nanoTime()}
+     */
+    public void recordError(long startNanos) {
+        latency.recordSince(startNanos);
+        calls.incrementAndGet();
+        errors.incrementAndGet();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getCalls() {
+        return calls.get();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    public long getRowsAffected() {
+        return rowsAffected.get();
+    }
+
+    public LatencyRecorder getLatency() {
+        return latency;
+    }
+
+}
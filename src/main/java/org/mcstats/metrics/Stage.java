@@ -0,0 +1,71 @@
+package org.mcstats.metrics;
+
+/**
+ * The stages a report goes through, each with its own latency recorder
+ */
+public enum Stage {
+
+    /**
+     * Decoding the request body
+     */
+    DECODE("decode", "Decode"),
+
+    /**
+     * Looking up the plugin the report is for
+     */
+    PLUGIN_LOOKUP("plugin_lookup", "Plugin lookup"),
+
+    /**
+     * Getting the server from the cache, including loading it on a miss
+     */
+    SERVER_LOAD("server_load", "Server load"),
+
+    /**
+     * Loading a server that was not in the cache
+     */
+    SERVER_CACHE_MISS("server_cache_miss", "Server cache miss"),
+
+    /**
+     * Waiting for a background worker
+     */
+    QUEUE_WAIT("queue_wait", "Worker queue wait"),
+
+    /**
+     * Processing a report in the background
+     */
+    PROCESSING("processing", "Worker processing"),
+
+    /**
+     * Saving a queued model to the database
+     */
+    DATABASE_SAVE("database_save", "Database save"),
+
+    /**
+     * Writing generated graph data to mongo
+     */
+    MONGO_WRITE("mongo_write", "Mongo write");
+
+    /**
+     * The name used in machine readable output
+     */
+    private final String key;
+
+    /**
+     * The name shown to humans
+     */
+    private final String displayName;
+
+    Stage(String key, String displayName) {
+        this.key = key;
+        this.displayName = displayName;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+}
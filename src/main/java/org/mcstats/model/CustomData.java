@@ -0,0 +1,160 @@
+package org.mcstats.model;
+
+import java.util.Arrays;
+
+/**
+ * Custom data values keyed by column, stored in parallel arrays instead of a map of boxed values.
+ * Reports rarely carry more than a few dozen columns so lookups are a linear scan.
+ */
+public class CustomData {
+
+    /**
+     * The columns
+     */
+    private Column[] columns;
+
+    /**
+     * The value for the column at the same index
+     */
+    private long[] values;
+
+    /**
+     * The number of columns
+     */
+    private int size = 0;
+
+    public CustomData() {
+        this(8);
+    }
+
+    public CustomData(int capacity) {
+        columns = new Column[capacity];
+        values = new long[capacity];
+    }
+
+    /**
+     * Set the value for a column, replacing any previous value
+     *
+     * @param column
+     * @param value
+     */
+    public void put(Column column, long value) {
+        for (int i = 0; i < size; i++) {
+            if (columns[i] == column) {
+                values[i] = value;
+                return;
+            }
+        }
+
+        if (size == columns.length) {
+            int capacity = Math.max(8, size * 2);
+            columns = Arrays.copyOf(columns, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        columns[size] = column;
+        values[size] = value;
+        size ++;
+    }
+
+    /**
+     * Get the number of columns
+     *
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the column at an index
+     *
+     * @param index
+     * @return
+     */
+    public Column getColumn(int index) {
+        return columns[index];
+    }
+
+    /**
+     * Get the value at an index
+     *
+     * @param index
+     * @return
+     */
+    public long getValue(int index) {
+        return values[index];
+    }
+
+    /**
+     * Remove all columns, keeping the allocated arrays
+     */
+    public void clear() {
+        Arrays.fill(columns, 0, size, null);
+        size = 0;
+    }
+
+    /**
+     * Check if another instance holds the same columns in the same order
+     *
+     * @param other
+     * @return
+     */
+    public boolean hasSameColumns(CustomData other) {
+        if (size != other.size) {
+            return false;
+        }
+
+        for (int i = 0; i < size; i++) {
+            if (columns[i] != other.columns[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Create a copy holding the values of an instance with the same columns. The copy shares this
+     * instance's columns, so neither may be changed afterwards.
+     *
+     * @param other
+     * @return
+     */
+    public CustomData withValuesFrom(CustomData other) {
+        CustomData copy = new CustomData(0);
+        copy.columns = columns;
+        copy.values = Arrays.copyOf(other.values, size);
+        copy.size = size;
+        return copy;
+    }
+
+    /**
+     * Create an exactly sized copy
+     *
+     * @return
+     */
+    public CustomData copy() {
+        CustomData copy = new CustomData(size);
+        System.arraycopy(columns, 0, copy.columns, 0, size);
+        System.arraycopy(values, 0, copy.values, 0, size);
+        copy.size = size;
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("{");
+
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+
+            builder.append(columns[i].getName()).append('=').append(values[i]);
+        }
+
+        return builder.append('}').toString();
+    }
+
+}
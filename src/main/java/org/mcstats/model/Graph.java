@@ -2,9 +2,12 @@ package org.mcstats.model;
 
 import org.apache.log4j.Logger;
 import org.mcstats.MCStats;
+import org.mcstats.util.SingleFlight;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.FutureTask;
 
 public class Graph {
     private Logger logger = Logger.getLogger("Graph");
@@ -57,12 +60,31 @@ public class Graph {
     /**
      * The columns for this graph. This is not all of them, only a cache
      */
-    private Map<String, Column> columns = new HashMap<String, Column>();
+    private final ConcurrentMap<String, Column> columns = new ConcurrentHashMap<String, Column>();
 
     /**
-     * If the columns were loaded from the database
+     * Loads the columns from the database the first time one is looked up. It only runs once; a
+     * lookup that finds it running waits for it.
      */
-    private boolean didTryLoadColumns = false;
+    private final FutureTask<Void> columnLoad = new FutureTask<Void>(new Runnable() {
+        public void run() {
+            for (Column loaded : mcstats.getDatabase().loadColumns(Graph.this)) {
+                columns.putIfAbsent(loaded.getName().toLowerCase(), loaded);
+            }
+
+            columnsLoaded = true;
+        }
+    }, null);
+
+    /**
+     * If every column of the graph is cached, so a column that is not cached is new
+     */
+    private volatile boolean columnsLoaded = false;
+
+    /**
+     * Columns being created, keyed by the lower case name
+     */
+    private final SingleFlight<String, Column> columnLoads = new SingleFlight<String, Column>();
 
     public Graph(MCStats mcstats, Plugin plugin) {
         this.mcstats = mcstats;
@@ -90,32 +112,77 @@ public class Graph {
      * @param name
      * @return
      */
-    public Column loadColumn(String name) {
-        if (!didTryLoadColumns && columns.size() == 0) {
-            for (Column column : mcstats.getDatabase().loadColumns(this)) {
-                columns.put(column.getName().toLowerCase(), column);
-            }
-
-            didTryLoadColumns = true;
-        }
-
-        Column column = columns.get(name.toLowerCase());
+    public Column loadColumn(final String name) {
+        final String key = name.toLowerCase();
+        Column column = columns.get(key);
 
         if (column != null) {
             return column;
         }
 
-        column = mcstats.getDatabase().createColumn(this, name);
+        if (!columnsLoaded) {
+            // runs the load unless it has already run, or waits for it if it is running
+            columnLoad.run();
+            SingleFlight.await(columnLoad);
+        }
+
+        // only one request creates a given column, the rest wait for it
+        return columnLoads.load(key, new Callable<Column>() {
+            public Column call() {
+                // loaded from the database or created while we waited
+                Column column = columns.get(key);
+
+                if (column != null) {
+                    return column;
+                }
+
+                // inserted in the background
+                column = mcstats.getEntityCreator().createColumn(Graph.this, name);
+
+                if (column == null) {
+                    if (mcstats.isDebug()) {
+                        logger.error("Failed to create Column for " + name + " , \"" + name + "\"");
+                    }
+                    return null;
+                }
 
-        if (column == null) {
-            if (mcstats.isDebug()) {
-                logger.error("Failed to create Column for " + name + " , \"" + name + "\"");
+                columns.put(key, column);
+                return column;
+            }
+        });
+    }
+
+    /**
+     * Mark every column of the graph as cached without loading them, e.g. because it was just created
+     */
+    public void markColumnsLoaded() {
+        columnsLoaded = true;
+    }
+
+    /**
+     * Forget a column that could not be inserted so it is loaded again by name
+     *
+     * @param column
+     */
+    public void evictColumn(Column column) {
+        columns.remove(column.getName().toLowerCase(), column);
+    }
+
+    /**
+     * Load a column from the database by name, creating it again if it is not there
+     *
+     * @param name
+     * @return
+     */
+    public Column reloadColumn(String name) {
+        for (Column loaded : mcstats.getDatabase().loadColumns(this)) {
+            if (loaded.getName().equalsIgnoreCase(name)) {
+                Column existing = columns.putIfAbsent(loaded.getName().toLowerCase(), loaded);
+                return existing != null ? existing : loaded;
             }
-            return null;
         }
 
-        columns.put(name.toLowerCase(), column);
-        return column;
+        return loadColumn(name);
     }
 
     public int getId() {
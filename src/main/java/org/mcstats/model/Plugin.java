@@ -5,6 +5,7 @@ import org.mcstats.db.Savable;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Plugin implements Savable {
 
@@ -86,7 +87,7 @@ public class Plugin implements Savable {
     /**
      * Map of the graphs for the plugin
      */
-    private Map<String, Graph> graphs = new HashMap<String, Graph>();
+    private final Map<String, Graph> graphs = new ConcurrentHashMap<String, Graph>();
 
     /**
      * Map of the plugin versions by their database id
@@ -136,6 +137,15 @@ public class Plugin implements Savable {
         graphs.put(graph.getName().toLowerCase(), graph);
     }
 
+    /**
+     * Remove a graph from the plugin, if it is still the one cached under its name
+     *
+     * @param graph
+     */
+    public void removeGraph(Graph graph) {
+        graphs.remove(graph.getName().toLowerCase(), graph);
+    }
+
     /**
      * Get a plugin version by its id
      *
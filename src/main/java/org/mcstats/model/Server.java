@@ -15,80 +15,31 @@ public class Server implements Savable {
     private final MCStats mcstats;
 
     /**
-     * The server's id
+     * The table this server's attributes are stored in
      */
-    private int id;
+    private final ServerTable table;
 
     /**
-     * The server's guid
+     * This server's row in the table
      */
-    private String guid;
+    private final int row;
 
     /**
-     * The server's country
+     * The server's id
      */
-    private String country;
+    private int id;
 
     /**
-     * The amount of players currently on the server
+     * The server's guid
      */
-    private int players;
+    private String guid;
 
     /**
-     * The server's software version
+     * The raw server version string. It has too many distinct values to be dictionary encoded in
+     * the server table, so it is kept here.
      */
     private String serverVersion;
 
-    /**
-     * The name of the OS the server is running
-     */
-    private String osname;
-
-    /**
-     * The OS arch the server is running on
-     */
-    private String osarch;
-
-    /**
-     * The version of OS the server is running
-     */
-    private String osversion;
-
-    /**
-     * The server's java name (e.g 1.5)
-     */
-    private String java_name;
-
-    /**
-     * The server's version of Java (e.g 0_10)
-     */
-    private String java_version;
-
-    /**
-     * How many cores the server has
-     */
-    private int cores;
-
-    /**
-     * If the server is in online mode or not
-     */
-    private int online_mode;
-
-    /**
-     * Unix timestamp of when the server was created
-     */
-    private int created;
-
-    /**
-     * The software the server is running
-     */
-    private String serverSoftware;
-
-    /**
-     * The minecraft version the server is
-     */
-    private String minecraftVersion;
-
     /**
      * If the server was modified
      */
@@ -114,13 +65,10 @@ public class Server implements Savable {
      */
     private final Map<Plugin, ServerPlugin> plugins = new HashMap<Plugin, ServerPlugin>();
 
-    /**
-     * Unix timestamp of when it last sent data
-     */
-    private int lastSentData;
-
     public Server(MCStats mcstats) {
         this.mcstats = mcstats;
+        this.table = mcstats.getServerTable();
+        this.row = table.allocate(this);
     }
 
     /**
@@ -129,7 +77,7 @@ public class Server implements Savable {
      * @return
      */
     public boolean recentlySentData() {
-        return lastSentData > ((System.currentTimeMillis() / 1000) - 1800);
+        return getLastSentData() > ((System.currentTimeMillis() / 1000) - 1800);
     }
 
     @Override
@@ -187,7 +135,27 @@ public class Server implements Savable {
         }
 
         plugins.put(serverPlugin.getPlugin(), serverPlugin);
-        mcstats.notifyServerPlugin(serverPlugin);
+    }
+
+    /**
+     * Remove a server plugin from this server if it is still the one cached for its plugin
+     *
+     * @param serverPlugin
+     */
+    public void removePlugin(ServerPlugin serverPlugin) {
+        if (plugins.get(serverPlugin.getPlugin()) == serverPlugin) {
+            plugins.remove(serverPlugin.getPlugin());
+        }
+    }
+
+    /**
+     * Get the value of one of the server's columns
+     *
+     * @param column
+     * @return a String or an Integer
+     */
+    public Object getColumnValue(ServerColumn column) {
+        return table.getValue(column, row);
     }
 
     public int getId() {
@@ -209,20 +177,20 @@ public class Server implements Savable {
     }
 
     public String getCountry() {
-        return country;
+        return table.getString(ServerColumn.COUNTRY, row);
     }
 
     public void setCountry(String country) {
-        this.country = country;
+        table.setString(ServerColumn.COUNTRY, row, country);
         modified = true;
     }
 
     public int getPlayers() {
-        return players;
+        return table.getInt(ServerColumn.PLAYERS, row);
     }
 
     public void setPlayers(int players) {
-        this.players = players;
+        table.setInt(ServerColumn.PLAYERS, row, players);
         modified = true;
     }
 
@@ -236,11 +204,11 @@ public class Server implements Savable {
     }
 
     public int getCreated() {
-        return created;
+        return table.getInt(ServerColumn.CREATED, row);
     }
 
     public void setCreated(int created) {
-        this.created = created;
+        table.setInt(ServerColumn.CREATED, row, created);
         modified = true;
     }
 
@@ -273,73 +241,73 @@ public class Server implements Savable {
     }
 
     public String getOSName() {
-        return osname;
+        return table.getString(ServerColumn.OS_NAME, row);
     }
 
     public int getLastSentData() {
-        return lastSentData;
+        return table.getInt(ServerColumn.LAST_SENT_DATA, row);
     }
 
     public void setLastSentData(int lastSentData) {
-        this.lastSentData = lastSentData;
+        table.setInt(ServerColumn.LAST_SENT_DATA, row, lastSentData);
     }
 
     public void setOSName(String osname) {
-        this.osname = osname;
+        table.setString(ServerColumn.OS_NAME, row, osname);
         modified = true;
     }
 
     public String getOSArch() {
-        return osarch;
+        return table.getString(ServerColumn.OS_ARCH, row);
     }
 
     public void setOSArch(String osarch) {
-        this.osarch = osarch;
+        table.setString(ServerColumn.OS_ARCH, row, osarch);
         modified = true;
     }
 
     public String getOSVersion() {
-        return osversion;
+        return table.getString(ServerColumn.OS_VERSION, row);
     }
 
     public void setOSVersion(String osversion) {
-        this.osversion = osversion;
+        table.setString(ServerColumn.OS_VERSION, row, osversion);
         modified = true;
     }
 
     public int getCores() {
-        return cores;
+        return table.getInt(ServerColumn.CORES, row);
     }
 
     public void setCores(int cores) {
-        this.cores = cores;
+        table.setInt(ServerColumn.CORES, row, cores);
         modified = true;
     }
 
     public int getOnlineMode() {
-        return online_mode;
+        return table.getInt(ServerColumn.ONLINE_MODE, row);
     }
 
     public void setOnlineMode(int online_mode) {
-        this.online_mode = online_mode;
+        table.setInt(ServerColumn.ONLINE_MODE, row, online_mode);
         modified = true;
     }
 
     public String getJavaName() {
-        return java_name;
+        return table.getString(ServerColumn.JAVA_NAME, row);
     }
 
     public void setJavaName(String java_name) {
-        this.java_name = java_name;
+        table.setString(ServerColumn.JAVA_NAME, row, java_name);
         modified = true;
     }
 
     public String getJavaVersion() {
-        return java_version;
+        return table.getString(ServerColumn.JAVA_VERSION, row);
     }
 
     public void setJavaVersion(String java_version) {
-        this.java_version = java_version;
+        table.setString(ServerColumn.JAVA_VERSION, row, java_version);
         modified = true;
     }
 
@@ -367,20 +335,20 @@ public class Server implements Savable {
     }
 
     public String getMinecraftVersion() {
-        return minecraftVersion;
+        return table.getString(ServerColumn.MINECRAFT_VERSION, row);
     }
 
     public void setMinecraftVersion(String minecraftVersion) {
-        this.minecraftVersion = minecraftVersion;
+        table.setString(ServerColumn.MINECRAFT_VERSION, row, minecraftVersion);
         modified = true;
     }
 
     public String getServerSoftware() {
-        return serverSoftware;
+        return table.getString(ServerColumn.SERVER_SOFTWARE, row);
     }
 
     public void setServerSoftware(String serverSoftware) {
-        this.serverSoftware = serverSoftware;
+        table.setString(ServerColumn.SERVER_SOFTWARE, row, serverSoftware);
         modified = true;
     }
 
@@ -0,0 +1,61 @@
+package org.mcstats.model;
+
+/**
+ * The attributes of a server that are stored in the {@link ServerTable}
+ */
+public enum ServerColumn {
+
+    COUNTRY("country", true),
+    SERVER_SOFTWARE("serverSoftware", true),
+    MINECRAFT_VERSION("minecraftVersion", true),
+    OS_NAME("osname", true),
+    OS_ARCH("osarch", true),
+    OS_VERSION("osversion", true),
+    JAVA_NAME("java_name", true),
+    JAVA_VERSION("java_version", true),
+    PLAYERS("players", false),
+    CORES("cores", false),
+    ONLINE_MODE("online_mode", false),
+    CREATED("created", false),
+    LAST_SENT_DATA("lastSentData", false);
+
+    /**
+     * The name of the attribute, as it was named on {@link Server}
+     */
+    private final String fieldName;
+
+    /**
+     * If the column holds dictionary encoded strings
+     */
+    private final boolean string;
+
+    ServerColumn(String fieldName, boolean string) {
+        this.fieldName = fieldName;
+        this.string = string;
+    }
+
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    public boolean isString() {
+        return string;
+    }
+
+    /**
+     * Get a column by its attribute name
+     *
+     * @param fieldName
+     * @return
+     */
+    public static ServerColumn byFieldName(String fieldName) {
+        for (ServerColumn column : values()) {
+            if (column.fieldName.equals(fieldName)) {
+                return column;
+            }
+        }
+
+        throw new IllegalArgumentException("Unknown server column: " + fieldName);
+    }
+
+}
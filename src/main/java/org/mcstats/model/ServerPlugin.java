@@ -6,10 +6,8 @@ import org.mcstats.util.Tuple;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 public class ServerPlugin implements Savable {
@@ -47,7 +45,7 @@ public class ServerPlugin implements Savable {
     /**
      * The last custom data sent to the server
      */
-    private Map<Column, Long> customData = new HashMap<Column, Long>();
+    private volatile CustomData customData = new CustomData(0);
 
     /**
      * If this was modified
@@ -148,12 +146,25 @@ public class ServerPlugin implements Savable {
         this.revision = revision;
     }
 
-    public Map<Column, Long> getCustomData() {
+    public CustomData getCustomData() {
         return customData;
     }
 
-    public void setCustomData(Map<Column, Long> customData) {
-        this.customData = customData;
+    /**
+     * Set the custom data from a report. The values are copied so the report's container can be reused,
+     * and a new copy is always published since the aggregators may be reading the current one; when the
+     * columns are unchanged from the last report the copy shares the current one's columns.
+     *
+     * @param customData
+     */
+    public void setCustomData(CustomData customData) {
+        CustomData current = this.customData;
+
+        if (current.hasSameColumns(customData)) {
+            this.customData = current.withValuesFrom(customData);
+        } else {
+            this.customData = customData.copy();
+        }
     }
 
     public int getUpdated() {
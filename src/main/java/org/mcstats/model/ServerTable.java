@@ -0,0 +1,315 @@
+package org.mcstats.model;
+
+import org.mcstats.util.StringDictionary;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+/**
+ * Columnar storage for the attributes of every loaded {@link Server}. Each server owns a row;
+ * the low cardinality string attributes are dictionary encoded so every column is a primitive int array.
+ * The string attributes come from clients, so the dictionary is bounded; once it is full a new
+ * value is kept as is in the row it was set on instead.
+ *
+ * Rows are allocated in fixed size chunks so growing the table never copies existing rows.
+ * A row is only reused once the server that owned it has been garbage collected.
+ */
+public class ServerTable {
+
+    /**
+     * The number of rows in each chunk, as a power of 2
+     */
+    private static final int CHUNK_SHIFT = 12;
+
+    /**
+     * The number of rows in each chunk
+     */
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+
+    /**
+     * Mask for a row's offset into its chunk
+     */
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    /**
+     * All of the columns
+     */
+    private static final ServerColumn[] COLUMNS = ServerColumn.values();
+
+    /**
+     * The dictionary used for all string columns
+     */
+    private final StringDictionary dictionary;
+
+    /**
+     * Notified when a server that owns a row is collected
+     */
+    private final ReferenceQueue<Server> collected = new ReferenceQueue<Server>();
+
+    /**
+     * The allocated chunks
+     */
+    private volatile Chunk[] chunks = new Chunk[16];
+
+    /**
+     * The number of rows that have ever been allocated
+     */
+    private int highWaterMark = 0;
+
+    /**
+     * Rows free to be reused
+     */
+    private int[] freeRows = new int[256];
+
+    /**
+     * The number of free rows
+     */
+    private int freeCount = 0;
+
+    /**
+     * The number of rows currently owned by a server
+     */
+    private volatile int liveRows = 0;
+
+    /**
+     * @param dictionarySize the most distinct strings to dictionary encode
+     */
+    public ServerTable(int dictionarySize) {
+        dictionary = new StringDictionary(dictionarySize);
+    }
+
+    /**
+     * Allocate a row for a server. All of its columns start at 0 / null.
+     *
+     * @param server
+     * @return the row
+     */
+    public synchronized int allocate(Server server) {
+        reclaim();
+
+        int row;
+
+        if (freeCount > 0) {
+            row = freeRows[--freeCount];
+        } else {
+            row = highWaterMark++;
+            int chunkIndex = row >> CHUNK_SHIFT;
+
+            if (chunkIndex >= chunks.length) {
+                Chunk[] grown = new Chunk[chunks.length * 2];
+                System.arraycopy(chunks, 0, grown, 0, chunks.length);
+                chunks = grown;
+            }
+
+            if (chunks[chunkIndex] == null) {
+                chunks[chunkIndex] = new Chunk();
+            }
+        }
+
+        Chunk chunk = chunks[row >> CHUNK_SHIFT];
+        int offset = row & CHUNK_MASK;
+
+        for (int[] column : chunk.columns) {
+            column[offset] = 0;
+        }
+
+        for (String[] column : chunk.strings) {
+            if (column != null) {
+                column[offset] = null;
+            }
+        }
+
+        chunk.owners[offset] = new RowReference(server, row, collected);
+        liveRows ++;
+        return row;
+    }
+
+    /**
+     * Get the raw int value of a column. For string columns this is the dictionary id.
+     *
+     * @param column
+     * @param row
+     * @return
+     */
+    public int getInt(ServerColumn column, int row) {
+        return chunks[row >> CHUNK_SHIFT].columns[column.ordinal()][row & CHUNK_MASK];
+    }
+
+    /**
+     * Set the raw int value of a column
+     *
+     * @param column
+     * @param row
+     * @param value
+     */
+    public void setInt(ServerColumn column, int row, int value) {
+        chunks[row >> CHUNK_SHIFT].columns[column.ordinal()][row & CHUNK_MASK] = value;
+    }
+
+    /**
+     * Get the value of a string column
+     *
+     * @param column
+     * @param row
+     * @return
+     */
+    public String getString(ServerColumn column, int row) {
+        int id = getInt(column, row);
+
+        if (id == StringDictionary.FULL) {
+            String[] strings = chunks[row >> CHUNK_SHIFT].strings[column.ordinal()];
+            return strings == null ? null : strings[row & CHUNK_MASK];
+        }
+
+        return dictionary.decode(id);
+    }
+
+    /**
+     * Set the value of a string column
+     *
+     * @param column
+     * @param row
+     * @param value
+     */
+    public void setString(ServerColumn column, int row, String value) {
+        int id = dictionary.encode(value);
+        Chunk chunk = chunks[row >> CHUNK_SHIFT];
+        String[] strings = chunk.strings[column.ordinal()];
+
+        if (id == StringDictionary.FULL) {
+            if (strings == null) {
+                strings = chunk.allocateStrings(column);
+            }
+
+            strings[row & CHUNK_MASK] = value;
+        } else if (strings != null) {
+            strings[row & CHUNK_MASK] = null;
+        }
+
+        setInt(column, row, id);
+    }
+
+    /**
+     * Get the value of any column, either a String or an Integer
+     *
+     * @param column
+     * @param row
+     * @return
+     */
+    public Object getValue(ServerColumn column, int row) {
+        if (column.isString()) {
+            return getString(column, row);
+        }
+
+        return getInt(column, row);
+    }
+
+    /**
+     * Get the dictionary used for string columns
+     *
+     * @return
+     */
+    public StringDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Get the number of rows owned by a server
+     *
+     * @return
+     */
+    public int size() {
+        return liveRows;
+    }
+
+    /**
+     * Get the number of rows allocated, including free rows
+     *
+     * @return
+     */
+    public synchronized int capacity() {
+        return highWaterMark;
+    }
+
+    /**
+     * Free the rows of servers that have been collected
+     */
+    private void reclaim() {
+        RowReference reference;
+
+        while ((reference = (RowReference) collected.poll()) != null) {
+            int row = reference.row;
+            Chunk chunk = chunks[row >> CHUNK_SHIFT];
+
+            if (chunk.owners[row & CHUNK_MASK] != reference) {
+                continue;
+            }
+
+            chunk.owners[row & CHUNK_MASK] = null;
+
+            if (freeCount == freeRows.length) {
+                int[] grown = new int[freeRows.length * 2];
+                System.arraycopy(freeRows, 0, grown, 0, freeRows.length);
+                freeRows = grown;
+            }
+
+            freeRows[freeCount++] = row;
+            liveRows --;
+        }
+    }
+
+    /**
+     * A block of rows
+     */
+    private static class Chunk {
+
+        /**
+         * The column data, indexed by column and then row offset
+         */
+        private final int[][] columns = new int[COLUMNS.length][CHUNK_SIZE];
+
+        /**
+         * Strings the dictionary had no room for, indexed by column and then row offset. A column's
+         * array is only allocated once it needs one.
+         */
+        private final String[][] strings = new String[COLUMNS.length][];
+
+        /**
+         * Allocate the strings of a column if no other thread has
+         *
+         * @param column
+         * @return
+         */
+        private synchronized String[] allocateStrings(ServerColumn column) {
+            if (strings[column.ordinal()] == null) {
+                strings[column.ordinal()] = new String[CHUNK_SIZE];
+            }
+
+            return strings[column.ordinal()];
+        }
+
+        /**
+         * The server owning each row
+         */
+        private final RowReference[] owners = new RowReference[CHUNK_SIZE];
+
+    }
+
+    /**
+     * Weak reference from a row to the server that owns it
+     */
+    private static class RowReference extends WeakReference<Server> {
+
+        /**
+         * The row the server owns
+         */
+        private final int row;
+
+        public RowReference(Server server, int row, ReferenceQueue<Server> queue) {
+            super(server, queue);
+            this.row = row;
+        }
+
+    }
+
+}
@@ -0,0 +1,234 @@
+package org.mcstats.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Finds which of a set of substrings occur in a string in a single pass, using an Aho-Corasick
+ * automaton compiled into a dense transition table. Patterns are ranked by the order they were
+ * given in and a match returns the value of the earliest ranked pattern that occurs anywhere in
+ * the string, the same result as checking contains() for each pattern in order.
+ *
+ * Immutable once built, so it can be shared between threads.
+ */
+public class AhoCorasickMatcher<V> {
+
+    /**
+     * Chars below this are mapped to symbols through a direct table
+     */
+    private static final int ASCII = 128;
+
+    /**
+     * The rank of a state that matches no pattern
+     */
+    private static final int NO_MATCH = Integer.MAX_VALUE;
+
+    /**
+     * The symbol for each ascii char; 0 means the char is in no pattern
+     */
+    private final int[] asciiSymbols = new int[ASCII];
+
+    /**
+     * The non-ascii chars used in patterns, sorted, and their symbols
+     */
+    private final char[] otherChars;
+    private final int[] otherSymbols;
+
+    /**
+     * The number of symbols, including 0 for chars in no pattern
+     */
+    private final int symbolCount;
+
+    /**
+     * The next state for each state and symbol, at state * symbolCount + symbol
+     */
+    private final int[] transitions;
+
+    /**
+     * The rank of the earliest pattern ending at each state, following fail links
+     */
+    private final int[] ranks;
+
+    /**
+     * Pattern values by rank
+     */
+    private final List<V> values;
+
+    /**
+     * Build a matcher for the given patterns, ranked in the map's iteration order
+     *
+     * @param patterns pattern to value; empty patterns are ignored
+     */
+    public AhoCorasickMatcher(Map<String, V> patterns) {
+        values = new ArrayList<V>(patterns.size());
+
+        // assign symbols to every char used in a pattern
+        StringBuilder other = new StringBuilder();
+        int nextSymbol = 1;
+
+        for (String pattern : patterns.keySet()) {
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+
+                if (c < ASCII) {
+                    if (asciiSymbols[c] == 0) {
+                        asciiSymbols[c] = nextSymbol++;
+                    }
+                } else if (other.indexOf(String.valueOf(c)) == -1) {
+                    other.append(c);
+                }
+            }
+        }
+
+        otherChars = other.toString().toCharArray();
+        Arrays.sort(otherChars);
+        otherSymbols = new int[otherChars.length];
+
+        for (int i = 0; i < otherChars.length; i++) {
+            otherSymbols[i] = nextSymbol++;
+        }
+
+        symbolCount = nextSymbol;
+
+        // build the trie, where -1 is a missing edge
+        List<int[]> trie = new ArrayList<int[]>();
+        List<Integer> trieRanks = new ArrayList<Integer>();
+        trie.add(newEdges());
+        trieRanks.add(NO_MATCH);
+
+        for (Map.Entry<String, V> entry : patterns.entrySet()) {
+            String pattern = entry.getKey();
+
+            if (pattern.isEmpty()) {
+                continue;
+            }
+
+            int rank = values.size();
+            values.add(entry.getValue());
+            int state = 0;
+
+            for (int i = 0; i < pattern.length(); i++) {
+                int symbol = symbol(pattern.charAt(i));
+                int next = trie.get(state)[symbol];
+
+                if (next == -1) {
+                    next = trie.size();
+                    trie.add(newEdges());
+                    trieRanks.add(NO_MATCH);
+                    trie.get(state)[symbol] = next;
+                }
+
+                state = next;
+            }
+
+            trieRanks.set(state, Math.min(trieRanks.get(state), rank));
+        }
+
+        // breadth first, fill in the missing edges from the fail links and inherit their ranks
+        int states = trie.size();
+        transitions = new int[states * symbolCount];
+        ranks = new int[states];
+        int[] fail = new int[states];
+        Queue<Integer> queue = new LinkedList<Integer>();
+
+        ranks[0] = trieRanks.get(0);
+
+        for (int symbol = 0; symbol < symbolCount; symbol++) {
+            int next = trie.get(0)[symbol];
+
+            if (next == -1) {
+                transitions[symbol] = 0;
+            } else {
+                transitions[symbol] = next;
+                fail[next] = 0;
+                queue.add(next);
+            }
+        }
+
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            ranks[state] = Math.min(trieRanks.get(state), ranks[fail[state]]);
+
+            for (int symbol = 0; symbol < symbolCount; symbol++) {
+                int next = trie.get(state)[symbol];
+
+                if (next == -1) {
+                    transitions[state * symbolCount + symbol] = transitions[fail[state] * symbolCount + symbol];
+                } else {
+                    transitions[state * symbolCount + symbol] = next;
+                    fail[next] = transitions[fail[state] * symbolCount + symbol];
+                    queue.add(next);
+                }
+            }
+        }
+    }
+
+    /**
+     * Find the value of the earliest ranked pattern that occurs in the text
+     *
+     * @param text
+     * @return the value, or null if no pattern occurs
+     */
+    public V match(CharSequence text) {
+        int best = NO_MATCH;
+        int state = 0;
+
+        for (int i = 0; i < text.length(); i++) {
+            state = transitions[state * symbolCount + symbol(text.charAt(i))];
+
+            if (ranks[state] < best) {
+                best = ranks[state];
+
+                if (best == 0) {
+                    break;
+                }
+            }
+        }
+
+        return best == NO_MATCH ? null : values.get(best);
+    }
+
+    /**
+     * Get the number of patterns
+     *
+     * @return
+     */
+    public int size() {
+        return values.size();
+    }
+
+    /**
+     * Get the number of states in the automaton
+     *
+     * @return
+     */
+    public int getStateCount() {
+        return ranks.length;
+    }
+
+    /**
+     * Get the symbol for a char
+     *
+     * @param c
+     * @return
+     */
+    private int symbol(char c) {
+        if (c < ASCII) {
+            return asciiSymbols[c];
+        }
+
+        int index = Arrays.binarySearch(otherChars, c);
+        return index < 0 ? 0 : otherSymbols[index];
+    }
+
+    private int[] newEdges() {
+        int[] edges = new int[symbolCount];
+        Arrays.fill(edges, -1);
+        return edges;
+    }
+
+}
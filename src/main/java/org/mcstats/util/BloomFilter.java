@@ -0,0 +1,196 @@
+package org.mcstats.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A Bloom filter of strings. Bits are set lock free so values can be added from many threads at
+ * once, and the filter can be written to and read back from a stream.
+ */
+public class BloomFilter {
+
+    /**
+     * Written at the start of a serialized filter
+     */
+    private static final int MAGIC = 0x424c4f4d;
+
+    /**
+     * The number of bits
+     */
+    private final int bitCount;
+
+    /**
+     * The number of bits set for each value
+     */
+    private final int hashCount;
+
+    /**
+     * The bits, 64 to a long
+     */
+    private final AtomicLongArray words;
+
+    /**
+     * Create a filter sized for the given number of values
+     *
+     * @param expected the number of values expected to be added
+     * @param falsePositiveRate the chance of a false positive once that many values are added
+     */
+    public BloomFilter(long expected, double falsePositiveRate) {
+        this(optimalBitCount(expected, falsePositiveRate), optimalHashCount(expected, optimalBitCount(expected, falsePositiveRate)));
+    }
+
+    private BloomFilter(int bitCount, int hashCount) {
+        this.bitCount = bitCount;
+        this.hashCount = hashCount;
+        this.words = new AtomicLongArray((bitCount + 63) >>> 6);
+    }
+
+    /**
+     * Add a value to the filter
+     *
+     * @param value
+     */
+    public void add(String value) {
+        long hash = HyperLogLog.hash(value);
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32);
+
+        for (int i = 1; i <= hashCount; i++) {
+            int bit = index(hash1 + i * hash2);
+            int word = bit >>> 6;
+            long mask = 1L << bit;
+            long current;
+
+            while (((current = words.get(word)) & mask) == 0) {
+                if (words.compareAndSet(word, current, current | mask)) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Check if a value might have been added to the filter
+     *
+     * @param value
+     * @return false if the value was definitely never added
+     */
+    public boolean mightContain(String value) {
+        long hash = HyperLogLog.hash(value);
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32);
+
+        for (int i = 1; i <= hashCount; i++) {
+            int bit = index(hash1 + i * hash2);
+
+            if ((words.get(bit >>> 6) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Check if this filter has the same size and number of hashes as another one
+     *
+     * @param other
+     * @return
+     */
+    public boolean isCompatible(BloomFilter other) {
+        return bitCount == other.bitCount && hashCount == other.hashCount;
+    }
+
+    /**
+     * Get the number of bits in the filter
+     *
+     * @return
+     */
+    public int getBitCount() {
+        return bitCount;
+    }
+
+    /**
+     * Get the number of bits set for each value
+     *
+     * @return
+     */
+    public int getHashCount() {
+        return hashCount;
+    }
+
+    /**
+     * Get the memory used by the bits, in bytes
+     *
+     * @return
+     */
+    public long getSizeInBytes() {
+        return words.length() * 8L;
+    }
+
+    /**
+     * Write the filter to a stream. Values added while it is being written may or may not be included.
+     *
+     * @param out
+     * @throws IOException
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(bitCount);
+        out.writeInt(hashCount);
+
+        for (int i = 0; i < words.length(); i++) {
+            out.writeLong(words.get(i));
+        }
+    }
+
+    /**
+     * Read a filter written by {@link #writeTo(DataOutputStream)}
+     *
+     * @param in
+     * @return
+     * @throws IOException
+     */
+    public static BloomFilter readFrom(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a bloom filter");
+        }
+
+        int bitCount = in.readInt();
+        int hashCount = in.readInt();
+
+        if (bitCount < 1 || hashCount < 1) {
+            throw new IOException("Invalid bloom filter header");
+        }
+
+        BloomFilter filter = new BloomFilter(bitCount, hashCount);
+
+        for (int i = 0; i < filter.words.length(); i++) {
+            filter.words.set(i, in.readLong());
+        }
+
+        return filter;
+    }
+
+    /**
+     * Map a combined hash to a bit
+     *
+     * @param combined
+     * @return
+     */
+    private int index(int combined) {
+        return (combined & Integer.MAX_VALUE) % bitCount;
+    }
+
+    private static int optimalBitCount(long expected, double falsePositiveRate) {
+        double bits = -expected * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        return (int) Math.max(64, Math.min(Integer.MAX_VALUE, bits));
+    }
+
+    private static int optimalHashCount(long expected, int bitCount) {
+        return Math.max(1, (int) Math.round((double) bitCount / Math.max(1, expected) * Math.log(2)));
+    }
+
+}
@@ -0,0 +1,101 @@
+package org.mcstats.util;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of equally sized direct buffers. Buffers are allocated on demand and at most
+ * a fixed number of released buffers are retained for reuse.
+ */
+public class BufferPool {
+
+    /**
+     * The capacity of every buffer
+     */
+    private final int bufferSize;
+
+    /**
+     * The maximum number of idle buffers retained
+     */
+    private final int maxRetained;
+
+    /**
+     * Buffers free to be reused
+     */
+    private final ConcurrentLinkedQueue<ByteBuffer> free = new ConcurrentLinkedQueue<ByteBuffer>();
+
+    /**
+     * The number of buffers in the free queue
+     */
+    private final AtomicInteger freeCount = new AtomicInteger(0);
+
+    /**
+     * The number of buffers ever allocated
+     */
+    private final AtomicInteger allocated = new AtomicInteger(0);
+
+    public BufferPool(int bufferSize, int maxRetained) {
+        this.bufferSize = bufferSize;
+        this.maxRetained = maxRetained;
+    }
+
+    /**
+     * Get a cleared buffer from the pool, allocating one if none are free
+     *
+     * @return
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = free.poll();
+
+        if (buffer == null) {
+            allocated.incrementAndGet();
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+
+        freeCount.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Return a buffer to the pool
+     *
+     * @param buffer
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || buffer.capacity() != bufferSize) {
+            return;
+        }
+
+        if (freeCount.incrementAndGet() > maxRetained) {
+            freeCount.decrementAndGet();
+            return;
+        }
+
+        free.offer(buffer);
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Get the number of buffers ever allocated
+     *
+     * @return
+     */
+    public int getAllocated() {
+        return allocated.get();
+    }
+
+    /**
+     * Get the number of idle buffers in the pool
+     *
+     * @return
+     */
+    public int getFree() {
+        return freeCount.get();
+    }
+
+}
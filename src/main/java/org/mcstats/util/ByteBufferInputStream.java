@@ -0,0 +1,78 @@
+package org.mcstats.util;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads a region of a buffer as a stream without copying it. The stream can be pointed at
+ * a new region with {@link #reset(ByteBuffer, int, int)} so one instance can be reused.
+ */
+public class ByteBufferInputStream extends InputStream {
+
+    /**
+     * The buffer being read
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * The index of the next byte to read
+     */
+    private int position;
+
+    /**
+     * The index after the last byte to read
+     */
+    private int limit;
+
+    /**
+     * Read the region [from, to) of a buffer. The buffer's own position and limit are not changed.
+     *
+     * @param buffer
+     * @param from
+     * @param to
+     */
+    public void reset(ByteBuffer buffer, int from, int to) {
+        this.buffer = buffer;
+        this.position = from;
+        this.limit = to;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int read() {
+        if (position >= limit) {
+            return -1;
+        }
+
+        return buffer.get(position++) & 0xFF;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int read(byte[] bytes, int offset, int length) {
+        if (length == 0) {
+            return 0;
+        }
+
+        int available = limit - position;
+
+        if (available <= 0) {
+            return -1;
+        }
+
+        int count = Math.min(length, available);
+        buffer.get(position, bytes, offset, count);
+        position += count;
+        return count;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int available() {
+        return Math.max(0, limit - position);
+    }
+
+}
@@ -0,0 +1,197 @@
+package org.mcstats.util;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A HyperLogLog cardinality estimator. Registers are packed 4 to an int and are
+ * updated lock free so the sketch can be offered to from many threads at once.
+ */
+public class HyperLogLog {
+
+    /**
+     * The number of bits of the hash used to select a register
+     */
+    private final int precision;
+
+    /**
+     * The number of registers
+     */
+    private final int registerCount;
+
+    /**
+     * The registers, one byte each, packed 4 to an int
+     */
+    private final AtomicIntegerArray registers;
+
+    /**
+     * Create a new sketch. The standard error is roughly 1.04 / sqrt(2^precision)
+     *
+     * @param precision between 4 and 16
+     */
+    public HyperLogLog(int precision) {
+        if (precision < 4 || precision > 16) {
+            throw new IllegalArgumentException("precision must be between 4 and 16");
+        }
+
+        this.precision = precision;
+        this.registerCount = 1 << precision;
+        this.registers = new AtomicIntegerArray(registerCount >> 2);
+    }
+
+    /**
+     * Offer a string to the sketch
+     *
+     * @param value
+     * @return true if the sketch changed
+     */
+    public boolean offer(String value) {
+        return offerHashed(hash(value));
+    }
+
+    /**
+     * Offer an already hashed 64-bit value to the sketch
+     *
+     * @param hash
+     * @return true if the sketch changed
+     */
+    public boolean offerHashed(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        long remaining = (hash << precision) | (1L << (precision - 1));
+        int rank = Long.numberOfLeadingZeros(remaining) + 1;
+
+        return updateRegister(index, rank);
+    }
+
+    /**
+     * Merge another sketch of the same precision into this one
+     *
+     * @param other
+     */
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Cannot merge sketches with different precisions");
+        }
+
+        for (int i = 0; i < registerCount; i++) {
+            int rank = other.getRegister(i);
+
+            if (rank > 0) {
+                updateRegister(i, rank);
+            }
+        }
+    }
+
+    /**
+     * Estimate the number of distinct values offered to the sketch
+     *
+     * @return
+     */
+    public long cardinality() {
+        double sum = 0;
+        int zeros = 0;
+
+        for (int i = 0; i < registerCount; i++) {
+            int rank = getRegister(i);
+            sum += 1.0 / (1L << rank);
+
+            if (rank == 0) {
+                zeros ++;
+            }
+        }
+
+        double estimate = alpha() * registerCount * registerCount / sum;
+
+        // small range correction
+        if (estimate <= 2.5 * registerCount && zeros > 0) {
+            estimate = registerCount * Math.log((double) registerCount / zeros);
+        }
+
+        return Math.round(estimate);
+    }
+
+    /**
+     * Get the precision of the sketch
+     *
+     * @return
+     */
+    public int getPrecision() {
+        return precision;
+    }
+
+    /**
+     * Get the value of a register
+     *
+     * @param index
+     * @return
+     */
+    private int getRegister(int index) {
+        return (registers.get(index >> 2) >>> ((index & 3) << 3)) & 0xFF;
+    }
+
+    /**
+     * Raise a register to the given rank if it is currently lower
+     *
+     * @param index
+     * @param rank
+     * @return true if the register changed
+     */
+    private boolean updateRegister(int index, int rank) {
+        int slot = index >> 2;
+        int shift = (index & 3) << 3;
+
+        while (true) {
+            int current = registers.get(slot);
+
+            if (((current >>> shift) & 0xFF) >= rank) {
+                return false;
+            }
+
+            int updated = (current & ~(0xFF << shift)) | (rank << shift);
+
+            if (registers.compareAndSet(slot, current, updated)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * The bias correction constant for the number of registers
+     *
+     * @return
+     */
+    private double alpha() {
+        switch (registerCount) {
+            case 16:
+                return 0.673;
+            case 32:
+                return 0.697;
+            case 64:
+                return 0.709;
+            default:
+                return 0.7213 / (1 + 1.079 / registerCount);
+        }
+    }
+
+    /**
+     * Hash a string to 64 bits (FNV-1a followed by the murmur3 finalizer)
+     *
+     * @param value
+     * @return
+     */
+    public static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+}
@@ -0,0 +1,212 @@
+package org.mcstats.util;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An approximate token bucket per key, kept in a count-min sketch so it uses a fixed amount of
+ * memory however many keys are seen. Each key's bucket is the minimum of its counters across the
+ * rows; a request fills the bucket by one report and the buckets of every key are drained at a
+ * constant rate by a background thread. A key is limited once its bucket is full.
+ *
+ * Collisions can only make a bucket look fuller than it is, so a key may be limited slightly early
+ * but never late. Counters are updated lock free and conservatively (only counters below the new
+ * estimate are raised), which keeps that overestimate small.
+ */
+public class RateLimiter {
+
+    /**
+     * The counter units a single report is worth, so the drain rate can be fractional
+     */
+    private static final int UNITS_PER_REPORT = 1000;
+
+    /**
+     * What the limiter is keyed by, for logging
+     */
+    private final String name;
+
+    /**
+     * The number of rows
+     */
+    private final int depth;
+
+    /**
+     * The number of counters in a row, a power of two
+     */
+    private final int width;
+
+    /**
+     * The counters, row after row
+     */
+    private final AtomicIntegerArray counters;
+
+    /**
+     * The units a bucket holds before its key is limited
+     */
+    private final int capacity;
+
+    /**
+     * The units drained from every counter each interval
+     */
+    private final int drain;
+
+    /**
+     * How often the counters are drained, in milliseconds
+     */
+    private final long interval;
+
+    /**
+     * The number of requests that were limited
+     */
+    private final AtomicLong limited = new AtomicLong(0);
+
+    /**
+     * @param name what the limiter is keyed by
+     * @param width the number of counters in a row, rounded up to a power of two
+     * @param depth the number of rows
+     * @param ratePerMinute the sustained number of reports a key may send each minute
+     * @param burst the number of reports a key may send at once
+     * @param interval how often the counters are drained, in milliseconds
+     */
+    public RateLimiter(String name, int width, int depth, double ratePerMinute, int burst, long interval) {
+        if (depth < 1 || width < 1) {
+            throw new IllegalArgumentException("width and depth must be positive");
+        }
+
+        int rounded = Integer.highestOneBit(width);
+
+        if (rounded < width) {
+            rounded <<= 1;
+        }
+
+        this.name = name;
+        this.depth = depth;
+        this.width = rounded;
+        this.counters = new AtomicIntegerArray(this.width * depth);
+        this.capacity = burst * UNITS_PER_REPORT;
+        this.drain = Math.max(1, (int) (ratePerMinute * UNITS_PER_REPORT * interval / 60000));
+        this.interval = interval;
+    }
+
+    /**
+     * Start draining the buckets in the background
+     */
+    public void start() {
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                while (true) {
+                    try {
+                        Thread.sleep(interval);
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+
+                    drain();
+                }
+            }
+        }, "RateLimiter " + name);
+
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Take a report from a key's bucket
+     *
+     * @param key
+     * @return true if the report is allowed, false if the key is limited
+     */
+    public boolean tryAcquire(String key) {
+        return tryAcquireHashed(HyperLogLog.hash(key));
+    }
+
+    /**
+     * Take a report from the bucket of a key qualified by a number, e.g. a guid and a plugin id,
+     * without building a combined key
+     *
+     * @param key
+     * @param qualifier
+     * @return true if the report is allowed, false if the key is limited
+     */
+    public boolean tryAcquire(String key, int qualifier) {
+        long hash = HyperLogLog.hash(key) ^ (qualifier * 0x9e3779b97f4a7c15L);
+
+        // spread the qualifier over every bit
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return tryAcquireHashed(hash);
+    }
+
+    /**
+     * Take a report from the bucket of an already hashed key
+     *
+     * @param hash
+     * @return true if the report is allowed, false if the key is limited
+     */
+    private boolean tryAcquireHashed(long hash) {
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32) | 1;
+        int mask = width - 1;
+
+        int estimate = Integer.MAX_VALUE;
+
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters.get(row * width + ((hash1 + row * hash2) & mask)));
+        }
+
+        if (estimate > capacity - UNITS_PER_REPORT) {
+            limited.incrementAndGet();
+            return false;
+        }
+
+        int target = estimate + UNITS_PER_REPORT;
+
+        for (int row = 0; row < depth; row++) {
+            int index = row * width + ((hash1 + row * hash2) & mask);
+            int current;
+
+            while ((current = counters.get(index)) < target) {
+                if (counters.compareAndSet(index, current, target)) {
+                    break;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Drain every bucket by one interval's worth of reports
+     */
+    public void drain() {
+        for (int i = 0; i < counters.length(); i++) {
+            int current;
+
+            while ((current = counters.get(i)) > 0) {
+                if (counters.compareAndSet(i, current, Math.max(0, current - drain))) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the number of requests that were limited
+     *
+     * @return
+     */
+    public long getLimited() {
+        return limited.get();
+    }
+
+    /**
+     * Get the memory used by the counters, in bytes
+     *
+     * @return
+     */
+    public long getSizeInBytes() {
+        return counters.length() * 4L;
+    }
+
+}
@@ -0,0 +1,143 @@
+package org.mcstats.util;
+
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A file that is loaded at startup and loaded again whenever it changes while running. The file
+ * counts as changed when its modification time or length differs from when it was last loaded.
+ *
+ * The loader is expected to build the new contents completely and then publish them with a
+ * single write to a volatile field, so readers never see a half loaded file.
+ */
+public class ReloadableFile {
+
+    private Logger logger = Logger.getLogger("ReloadableFile");
+
+    /**
+     * The file being watched
+     */
+    private final File file;
+
+    /**
+     * What the file holds, for logging, e.g. "server definitions"
+     */
+    private final String description;
+
+    /**
+     * Loads the file's contents
+     */
+    private final Loader loader;
+
+    /**
+     * When the file was last modified as of the last load
+     */
+    private long loadedModified = 0;
+
+    /**
+     * The length of the file as of the last load
+     */
+    private long loadedLength = 0;
+
+    /**
+     * @param file the file to load
+     * @param description what the file holds, for logging
+     * @param loader loads the file's contents
+     */
+    public ReloadableFile(File file, String description, Loader loader) {
+        this.file = file;
+        this.description = description;
+        this.loader = loader;
+    }
+
+    /**
+     * Load the file, replacing the current contents
+     *
+     * @return the number of entries loaded
+     * @throws IOException
+     */
+    public synchronized int load() throws IOException {
+        // taken before reading so a write while reading is picked up by the next check
+        long modified = file.lastModified();
+        long length = file.length();
+
+        int count = loader.load(file);
+        loadedModified = modified;
+        loadedLength = length;
+        return count;
+    }
+
+    /**
+     * Check if the file changed since it was last loaded
+     *
+     * @return
+     */
+    public synchronized boolean isModified() {
+        return file.exists() && (file.lastModified() != loadedModified || file.length() != loadedLength);
+    }
+
+    /**
+     * Reload the file in the background whenever it changes. If a reload fails the previous
+     * contents are kept.
+     *
+     * @param interval how often to check the file, in milliseconds
+     * @param threadName the name of the watcher thread
+     */
+    public void startWatching(final long interval, String threadName) {
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                while (true) {
+                    try {
+                        Thread.sleep(interval);
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+
+                    if (isModified()) {
+                        try {
+                            int count = load();
+                            logger.info("Reloaded " + count + " " + description + " from " + file.getName());
+                        } catch (IOException e) {
+                            logger.error("Failed to reload " + description + " from " + file.getName() + ", keeping the previous ones", e);
+                        }
+                    }
+                }
+            }
+        }, threadName);
+
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Check if the file exists
+     *
+     * @return
+     */
+    public boolean exists() {
+        return file.exists();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Loads the contents of a file
+     */
+    public interface Loader {
+
+        /**
+         * Read the file and publish its contents
+         *
+         * @param file
+         * @return the number of entries loaded
+         * @throws IOException
+         */
+        public int load(File file) throws IOException;
+
+    }
+
+}
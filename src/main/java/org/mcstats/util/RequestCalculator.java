@@ -71,7 +71,7 @@ public class RequestCalculator {
      *
      * @return
      */
-    public double calculateRequestsPerSecond() {
+    public synchronized double calculateRequestsPerSecond() {
         long currentRequests;
         long requestsOffset = 0;
 
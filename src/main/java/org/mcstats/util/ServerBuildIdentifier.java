@@ -2,6 +2,7 @@ package org.mcstats.util;
 
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
 import com.google.common.cache.LoadingCache;
 
 import java.io.BufferedReader;
@@ -25,29 +26,52 @@ public class ServerBuildIdentifier {
     private static final String DEFAULT_SERVER = "Unknown";
 
     /**
-     * The list of server definitions. LinkedHashMap to retain order.
+     * The marker the minecraft version follows
      */
-    private final Map<String, String> definitions = new LinkedHashMap<String, String>();
+    private static final String MC_PREFIX = "(MC:";
 
-    private final LoadingCache<String, String> definitionCache = CacheBuilder.newBuilder()
-            .maximumSize(10000) // 10k
-            .build(new CacheLoader<String, String>() {
+    /**
+     * The build used when a server string cannot be identified
+     */
+    private static final ServerBuild UNKNOWN = new ServerBuild(DEFAULT_SERVER, DEFAULT_SERVER, -1);
+
+    /**
+     * The number of distinct server strings to cache
+     */
+    private static final int CACHE_SIZE = 100000;
 
-                public String load(String key) {
-                    for (Map.Entry<String, String> entry : definitions.entrySet()) {
-                        String definitionKey = entry.getKey();
+    /**
+     * The loaded server definitions
+     */
+    private volatile Definitions definitions = new Definitions(0, new AhoCorasickMatcher<String>(new LinkedHashMap<String, String>()));
 
-                        if (key.contains(definitionKey)) {
-                            return entry.getValue();
-                        }
-                    }
+    private final LoadingCache<String, ServerBuild> definitionCache = CacheBuilder.newBuilder()
+            .maximumSize(CACHE_SIZE)
+            .recordStats()
+            .build(new CacheLoader<String, ServerBuild>() {
 
-                    return DEFAULT_SERVER; // DEFAULT
+                public ServerBuild load(String key) {
+                    return identify(key, definitions, extractMinecraftVersion(key));
                 }
 
             });
 
+    /**
+     * The file definitions are loaded from
+     */
+    private final ReloadableFile definitionsFile;
+
     public ServerBuildIdentifier() {
+        this(new File(DEFINITIONS_FILE));
+    }
+
+    public ServerBuildIdentifier(File file) {
+        definitionsFile = new ReloadableFile(file, "server definitions", new ReloadableFile.Loader() {
+            public int load(File file) throws IOException {
+                return readDefinitions(file);
+            }
+        });
+
         try {
             loadDefinitions();
         } catch (IOException e) {
@@ -62,12 +86,7 @@ public class ServerBuildIdentifier {
      * @return
      */
     public String getServerVersion(String server) {
-        try {
-            return definitionCache.get(server);
-        } catch (ExecutionException e) {
-            e.printStackTrace();
-            return DEFAULT_SERVER;
-        }
+        return getServerBuild(server).software;
     }
 
     /**
@@ -77,14 +96,123 @@ public class ServerBuildIdentifier {
      * @return
      */
     public String getMinecraftVersion(String server) {
-        server = server.replaceAll(" ", "");
-        int index = server.indexOf("(MC:");
+        return getServerBuild(server).minecraftVersion;
+    }
+
+    /**
+     * Get the stats of the server string cache
+     *
+     * @return
+     */
+    public CacheStats getCacheStats() {
+        return definitionCache.stats();
+    }
+
+    /**
+     * Get the number of server strings cached
+     *
+     * @return
+     */
+    public long getCacheSize() {
+        return definitionCache.size();
+    }
 
-        if (index == -1) {
-            return "Unknown";
+    /**
+     * Get the number of definitions loaded
+     *
+     * @return
+     */
+    public int getDefinitionCount() {
+        return definitions.matcher.size();
+    }
+
+    /**
+     * Get the number of times the definitions have been loaded
+     *
+     * @return
+     */
+    public int getGeneration() {
+        return definitions.generation;
+    }
+
+    /**
+     * Reload the definitions in the background whenever the file changes
+     *
+     * @param interval how often to check the file, in milliseconds
+     */
+    public void startWatching(long interval) {
+        definitionsFile.startWatching(interval, "ServerDefinitionsWatcher");
+    }
+
+    /**
+     * Extract the minecraft version from the "(MC: x)" suffix of a server string, ignoring spaces.
+     * Only the returned string is allocated, and only if the version is not a plain substring.
+     *
+     * @param server
+     * @return
+     */
+    public static String extractMinecraftVersion(String server) {
+        int length = server.length();
+        int matched = 0;
+        int start = -1;
+
+        // find the end of the first "(MC:", where spaces may appear anywhere within it
+        for (int i = 0; i < length; i++) {
+            char c = server.charAt(i);
+
+            if (c == ' ') {
+                continue;
+            }
+
+            if (c == MC_PREFIX.charAt(matched)) {
+                if (++matched == MC_PREFIX.length()) {
+                    start = i + 1;
+                    break;
+                }
+            } else {
+                matched = c == MC_PREFIX.charAt(0) ? 1 : 0;
+            }
         }
 
-        return server.substring(index + 4, server.length() - 1);
+        if (start == -1) {
+            return DEFAULT_SERVER;
+        }
+
+        // the version runs up to the last char that isn't a space, which is dropped (the closing bracket)
+        int end = length - 1;
+
+        while (end >= start && server.charAt(end) == ' ') {
+            end--;
+        }
+
+        if (end <= start) {
+            return end == start ? "" : DEFAULT_SERVER;
+        }
+
+        int spaces = 0;
+
+        for (int i = start; i < end; i++) {
+            if (server.charAt(i) == ' ') {
+                spaces++;
+            }
+        }
+
+        if (spaces == 0) {
+            return server.substring(start, end);
+        }
+
+        char[] version = new char[end - start - spaces];
+        int index = 0;
+
+        for (int i = start; i < end; i++) {
+            char c = server.charAt(i);
+
+            if (c != ' ') {
+                version[index++] = c;
+            }
+        }
+
+        return new String(version);
     }
 
     /**
@@ -93,12 +221,19 @@ public class ServerBuildIdentifier {
      * @throws IOException
      */
     public void loadDefinitions() throws IOException {
-        File file = new File(DEFINITIONS_FILE);
-
-        // clear out the old definitons
-        clear();
+        definitionsFile.load();
+    }
 
+    /**
+     * Read the server definitions from a file and replace the current ones
+     *
+     * @param file
+     * @return the number of definitions read
+     * @throws IOException
+     */
+    private int readDefinitions(File file) throws IOException {
         // read the file
+        Map<String, String> definitions = new LinkedHashMap<String, String>();
         BufferedReader reader = new BufferedReader(new FileReader(file));
         String line;
 
@@ -117,14 +252,92 @@ public class ServerBuildIdentifier {
         }
 
         reader.close();
+
+        // cached builds are not invalidated; they are identified again with the new definitions the
+        // next time they are looked up
+        this.definitions = new Definitions(this.definitions.generation + 1, new AhoCorasickMatcher<String>(definitions));
+        return definitions.size();
+    }
+
+    /**
+     * Get the identified build of a server string
+     *
+     * @param server
+     * @return
+     */
+    private ServerBuild getServerBuild(String server) {
+        ServerBuild build;
+
+        try {
+            build = definitionCache.get(server);
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+            return UNKNOWN;
+        }
+
+        Definitions current = definitions;
+
+        if (build.generation != current.generation) {
+            // identified before the last reload; the minecraft version does not depend on the definitions
+            build = identify(server, current, build.minecraftVersion);
+            definitionCache.put(server, build);
+        }
+
+        return build;
+    }
+
+    /**
+     * Identify the server software of a server string
+     *
+     * @param server
+     * @param definitions
+     * @param minecraftVersion
+     * @return
+     */
+    private static ServerBuild identify(String server, Definitions definitions, String minecraftVersion) {
+        String software = definitions.matcher.match(server);
+        return new ServerBuild(software == null ? DEFAULT_SERVER : software, minecraftVersion, definitions.generation);
     }
 
     /**
-     * Clear out the definitions
+     * A loaded set of definitions
      */
-    private void clear() {
-        definitions.clear();
-        definitionCache.invalidateAll();
+    private static final class Definitions {
+
+        /**
+         * Incremented each time the definitions are loaded
+         */
+        private final int generation;
+
+        private final AhoCorasickMatcher<String> matcher;
+
+        private Definitions(int generation, AhoCorasickMatcher<String> matcher) {
+            this.generation = generation;
+            this.matcher = matcher;
+        }
+
+    }
+
+    /**
+     * What a server string was identified as
+     */
+    private static final class ServerBuild {
+
+        private final String software;
+
+        private final String minecraftVersion;
+
+        /**
+         * The generation of the definitions the software was identified with
+         */
+        private final int generation;
+
+        private ServerBuild(String software, String minecraftVersion, int generation) {
+            this.software = software;
+            this.minecraftVersion = minecraftVersion;
+            this.generation = generation;
+        }
+
     }
 
 }
@@ -0,0 +1,85 @@
+package org.mcstats.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Runs at most one load for each key at a time. A caller asking for a key that is already being
+ * loaded waits for that load instead of starting its own, while loads of different keys run in
+ * parallel. Waiting parks the thread on a future rather than holding a monitor, so a virtual
+ * thread is not pinned to its carrier while a load does I/O.
+ *
+ * Loads are not cached here; once a load finishes the next caller starts a new one, so a loader
+ * should first check whatever cache its result is put in.
+ */
+public class SingleFlight<K, V> {
+
+    /**
+     * The loads in progress
+     */
+    private final ConcurrentHashMap<K, FutureTask<V>> loads = new ConcurrentHashMap<K, FutureTask<V>>();
+
+    /**
+     * Load a key, or wait for the load already in progress for it
+     *
+     * @param key
+     * @param loader
+     * @return the loaded value, or null if the wait was interrupted
+     */
+    public V load(K key, Callable<V> loader) {
+        FutureTask<V> task = new FutureTask<V>(loader);
+        FutureTask<V> existing = loads.putIfAbsent(key, task);
+
+        if (existing != null) {
+            return await(existing);
+        }
+
+        try {
+            task.run();
+        } finally {
+            loads.remove(key, task);
+        }
+
+        return await(task);
+    }
+
+    /**
+     * Get the number of loads in progress
+     *
+     * @return
+     */
+    public int size() {
+        return loads.size();
+    }
+
+    /**
+     * Wait for a future to complete, rethrowing what it threw
+     *
+     * @param future
+     * @return the value, or null if the wait was interrupted
+     */
+    public static <V> V await(Future<V> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+
+            throw new RuntimeException(cause);
+        }
+    }
+
+}
@@ -0,0 +1,150 @@
+package org.mcstats.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Maps strings to dense integer ids and back. Id 0 is always null.
+ *
+ * Strings are never removed, so the dictionary stops taking new strings once it holds its maximum
+ * size; callers have to keep values it turns away themselves.
+ */
+public class StringDictionary {
+
+    /**
+     * Returned by {@link #encode(String)} for a new string when the dictionary is full
+     */
+    public static final int FULL = -1;
+
+    /**
+     * The most strings the dictionary holds
+     */
+    private final int maximumSize;
+
+    /**
+     * The number of strings turned away because the dictionary was full
+     */
+    private final AtomicLong turnedAway = new AtomicLong(0);
+
+    /**
+     * Ids keyed by their string
+     */
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+
+    /**
+     * Strings indexed by their id
+     */
+    private volatile AtomicReferenceArray<String> values = new AtomicReferenceArray<String>(256);
+
+    /**
+     * The next id to assign
+     */
+    private int nextId = 1;
+
+    /**
+     * @param maximumSize the most strings to hold
+     */
+    public StringDictionary(int maximumSize) {
+        this.maximumSize = maximumSize;
+    }
+
+    /**
+     * Get the id for a string, assigning one if it has not been seen before
+     *
+     * @param value
+     * @return the id, or {@link #FULL} if the string is new and the dictionary is full
+     */
+    public int encode(String value) {
+        if (value == null) {
+            return 0;
+        }
+
+        Integer id = ids.get(value);
+
+        if (id != null) {
+            return id;
+        }
+
+        synchronized (this) {
+            id = ids.get(value);
+
+            if (id != null) {
+                return id;
+            }
+
+            if (nextId > maximumSize) {
+                turnedAway.incrementAndGet();
+                return FULL;
+            }
+
+            int assigned = nextId++;
+
+            AtomicReferenceArray<String> current = values;
+
+            if (assigned >= current.length()) {
+                AtomicReferenceArray<String> grown = new AtomicReferenceArray<String>(current.length() * 2);
+
+                for (int i = 0; i < current.length(); i++) {
+                    grown.set(i, current.get(i));
+                }
+
+                // the string is stored before the grown array is published
+                grown.set(assigned, value);
+                values = grown;
+            } else {
+                current.set(assigned, value);
+            }
+
+            ids.put(value, assigned);
+            return assigned;
+        }
+    }
+
+    /**
+     * Get the string for an id
+     *
+     * @param id
+     * @return
+     */
+    public String decode(int id) {
+        if (id == 0) {
+            return null;
+        }
+
+        AtomicReferenceArray<String> current = values;
+
+        if (id < current.length()) {
+            String value = current.get(id);
+
+            if (value != null) {
+                return value;
+            }
+        }
+
+        // the id was read without synchronizing with the thread that assigned it, so this thread
+        // may not see the string yet; taking the lock it was assigned under makes it visible
+        synchronized (this) {
+            return values.get(id);
+        }
+    }
+
+    /**
+     * Get the number of strings in the dictionary
+     *
+     * @return
+     */
+    public int size() {
+        return ids.size();
+    }
+
+    /**
+     * Get the number of strings turned away because the dictionary was full
+     *
+     * @return
+     */
+    public long getTurnedAway() {
+        return turnedAway.get();
+    }
+
+}
@@ -0,0 +1,47 @@
+package org.mcstats.util;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * A bounded, concurrent string interner. Values that are rarely seen are evicted so
+ * high cardinality input cannot grow it without bound.
+ */
+public class StringInterner {
+
+    /**
+     * The canonical instances, keyed by themselves
+     */
+    private final Cache<String, String> canonical;
+
+    public StringInterner(int maximumSize) {
+        canonical = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .build();
+    }
+
+    /**
+     * Get the canonical instance of a string
+     *
+     * @param value
+     * @return the canonical instance, or null if value is null
+     */
+    public String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+
+        String existing = canonical.asMap().putIfAbsent(value, value);
+        return existing == null ? value : existing;
+    }
+
+    /**
+     * Get the number of canonical instances currently held
+     *
+     * @return
+     */
+    public long size() {
+        return canonical.size();
+    }
+
+}
@@ -0,0 +1,222 @@
+package org.mcstats.util;
+
+/**
+ * Counts the unique servers seen over the graphing interval, the day and the month using
+ * HyperLogLog sketches. The current and the last completed window are kept for each.
+ */
+public class UniqueServerCounter {
+
+    /**
+     * The windows servers are counted over
+     */
+    public enum Window {
+
+        /**
+         * The 30 minute graphing interval
+         */
+        HALF_HOUR {
+            public long bucket(long epochSeconds) {
+                return epochSeconds / 1800;
+            }
+        },
+
+        /**
+         * The UTC day
+         */
+        DAY {
+            public long bucket(long epochSeconds) {
+                return epochSeconds / 86400;
+            }
+        },
+
+        /**
+         * The UTC calendar month
+         */
+        MONTH {
+            public long bucket(long epochSeconds) {
+                // civil-from-days, see http://howardhinnant.github.io/date_algorithms.html
+                long z = epochSeconds / 86400 + 719468;
+                long era = (z >= 0 ? z : z - 146096) / 146097;
+                long doe = z - era * 146097;
+                long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+                long year = yoe + era * 400;
+                long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+                long mp = (5 * doy + 2) / 153;
+                long month = mp < 10 ? mp + 3 : mp - 9;
+
+                if (month <= 2) {
+                    year ++;
+                }
+
+                return year * 12 + (month - 1);
+            }
+        };
+
+        /**
+         * Get the window bucket the given unix timestamp falls in
+         *
+         * @param epochSeconds
+         * @return
+         */
+        public abstract long bucket(long epochSeconds);
+
+    }
+
+    /**
+     * The sketch precision
+     */
+    private final int precision;
+
+    /**
+     * The sketches for each window, indexed by the window's ordinal
+     */
+    private final WindowedSketch[] sketches;
+
+    /**
+     * The bucket of each window counting started in, indexed by the window's ordinal. The sketches
+     * are not persisted, so that bucket and anything before it were only partly counted.
+     */
+    private final long[] firstBuckets;
+
+    public UniqueServerCounter(int precision) {
+        this.precision = precision;
+
+        Window[] windows = Window.values();
+        sketches = new WindowedSketch[windows.length];
+        firstBuckets = new long[windows.length];
+        long now = System.currentTimeMillis() / 1000L;
+
+        for (int i = 0; i < windows.length; i++) {
+            sketches[i] = new WindowedSketch(windows[i]);
+            firstBuckets[i] = windows[i].bucket(now);
+        }
+    }
+
+    /**
+     * Record a server as being seen now
+     *
+     * @param guid
+     */
+    public void offer(String guid) {
+        long hash = HyperLogLog.hash(guid);
+        long now = System.currentTimeMillis() / 1000L;
+
+        for (WindowedSketch sketch : sketches) {
+            sketch.offer(hash, now);
+        }
+    }
+
+    /**
+     * Estimate the unique servers in the current (incomplete) window
+     *
+     * @param window
+     * @return
+     */
+    public long estimateCurrent(Window window) {
+        return estimate(window, window.bucket(System.currentTimeMillis() / 1000L));
+    }
+
+    /**
+     * Estimate the unique servers in the window before the current one
+     *
+     * @param window
+     * @return
+     */
+    public long estimatePrevious(Window window) {
+        return estimate(window, window.bucket(System.currentTimeMillis() / 1000L) - 1);
+    }
+
+    /**
+     * Estimate the unique servers in the given window bucket. Only the current and the previous
+     * bucket are retained, anything older is 0.
+     *
+     * @param window
+     * @param bucket
+     * @return
+     */
+    public long estimate(Window window, long bucket) {
+        return sketches[window.ordinal()].estimate(bucket);
+    }
+
+    /**
+     * Check if counting started before the given window bucket did, so every server seen in it was
+     * counted. This is false for the bucket the backend was started in.
+     *
+     * @param window
+     * @param bucket
+     * @return
+     */
+    public boolean isComplete(Window window, long bucket) {
+        return bucket > firstBuckets[window.ordinal()];
+    }
+
+    /**
+     * A pair of sketches for the current and previous bucket of a window
+     */
+    private class WindowedSketch {
+
+        /**
+         * The window
+         */
+        private final Window window;
+
+        /**
+         * The bucket the current sketch is for
+         */
+        private volatile long currentBucket = Long.MIN_VALUE;
+
+        /**
+         * The sketch for the current bucket
+         */
+        private volatile HyperLogLog current;
+
+        /**
+         * The bucket the previous sketch is for
+         */
+        private long previousBucket = Long.MIN_VALUE;
+
+        /**
+         * The sketch for the previous bucket
+         */
+        private HyperLogLog previous;
+
+        public WindowedSketch(Window window) {
+            this.window = window;
+        }
+
+        public void offer(long hash, long now) {
+            long bucket = window.bucket(now);
+
+            if (bucket != currentBucket) {
+                rotate(bucket);
+            }
+
+            current.offerHashed(hash);
+        }
+
+        public synchronized long estimate(long bucket) {
+            if (bucket == currentBucket && current != null) {
+                return current.cardinality();
+            }
+
+            if (bucket == previousBucket && previous != null) {
+                return previous.cardinality();
+            }
+
+            return 0;
+        }
+
+        private synchronized void rotate(long bucket) {
+            if (bucket <= currentBucket) {
+                return;
+            }
+
+            previousBucket = currentBucket;
+            previous = current;
+            current = new HyperLogLog(precision);
+            currentBucket = bucket;
+        }
+
+    }
+
+}
@@ -1,9 +1,17 @@
-<%@ taglib prefix="fmt" uri="http://java.sun.com/jstl/fmt" %>
 <%@ page import="org.mcstats.DatabaseQueue" %>
 <%@ page import="org.mcstats.MCStats" %>
 <%@ page import="org.mcstats.util.TimeUtils" %>
 <%@ page import="java.text.DecimalFormat" %>
+<%@ page import="java.util.Map" %>
+<%@ page import="org.eclipse.jetty.util.thread.QueuedThreadPool" %>
 <%@ page import="org.mcstats.db.MySQLDatabase" %>
+<%@ page import="org.mcstats.handler.KeepAlivePolicy" %>
+<%@ page import="org.mcstats.ingest.IngestServer" %>
+<%@ page import="org.mcstats.metrics.GenerationReport" %>
+<%@ page import="org.mcstats.metrics.LatencyRecorder" %>
+<%@ page import="org.mcstats.metrics.QueryStats" %>
+<%@ page import="org.mcstats.metrics.Stage" %>
+<%@ page import="org.mcstats.util.UniqueServerCounter" %>
 <%
     MCStats mcstats = MCStats.getInstance();
     long requests = mcstats.incrementAndGetRequests();
@@ -160,6 +168,174 @@
 
                 </table>
 
+                <table class="table table-striped table-bordered">
+
+                    <thead>
+                    <tr> <th style="text-align: center;"> Thread pool </th> <th style="text-align: center;"> Threads </th> <th style="text-align: center;"> Idle </th> <th style="text-align: center;"> Queued </th></tr>
+                    </thead>
+
+                    <tbody>
+
+                    <%
+                        for (Map.Entry<String, QueuedThreadPool> entry : mcstats.getThreadPools().entrySet()) {
+                            QueuedThreadPool threadPool = entry.getValue(); %>
+                    <tr>
+                        <td style="text-align: center;">
+                            <%= entry.getKey() %>
+                        </td>
+                        <td style="text-align: center;">
+                            <%= threadPool.getThreads() %> / <%= threadPool.getMaxThreads() %>
+                        </td>
+                        <td style="text-align: center;">
+                            <%= threadPool.getIdleThreads() %>
+                        </td>
+                        <td style="text-align: center;">
+                            <%= threadPool.getQueueSize() %>
+                        </td>
+                    </tr><%
+                        }
+                    %>
+
+                    </tbody>
+
+                </table>
+
+                <table class="table table-striped table-bordered">
+
+                    <thead>
+                    <tr> <th style="text-align: center;"> Stage (last minute) </th> <th style="text-align: center;"> Rate </th> <th style="text-align: center;"> p50 </th> <th style="text-align: center;"> p99 </th> <th style="text-align: center;"> Max </th></tr>
+                    </thead>
+
+                    <tbody>
+
+                    <%
+                        for (Stage stage : Stage.values()) {
+                            LatencyRecorder.Snapshot snapshot = mcstats.getMetrics().recorder(stage).getWindow(LatencyRecorder.MAX_WINDOW); %>
+                    <tr>
+                        <td style="text-align: center;">
+                            <%= stage.getDisplayName() %>
+                        </td>
+                        <td style="text-align: center;">
+                            <%= String.format("%.1f/s", snapshot.getRate()) %>
+                        </td>
+                        <td style="text-align: center;">
+                            <%= numberFormatter.format(snapshot.getP50()) %>&micro;s
+                        </td>
+                        <td style="text-align: center;">
+                            <%= numberFormatter.format(snapshot.getP99()) %>&micro;s
+                        </td>
+                        <td style="text-align: center;">
+                            <%= numberFormatter.format(snapshot.getMax()) %>&micro;s
+                        </td>
+                    </tr><%
+                        }
+                    %>
+
+                    </tbody>
+
+                </table>
+
+                <table class="table table-striped table-bordered">
+
+                    <thead>
+                    <tr> <th style="text-align: center;"> Query </th> <th style="text-align: center;"> Calls </th> <th style="text-align: center;"> Errors </th> <th style="text-align: center;"> Rows </th> <th style="text-align: center;"> p99 (last minute) </th></tr>
+                    </thead>
+
+                    <tbody>
+
+                    <%
+                        for (QueryStats query : mcstats.getMetrics().getQueries().getQueries()) { %>
+                    <tr>
+                        <td style="text-align: center;">
+                            <%= query.getName() %>
+                        </td>
+                        <td style="text-align: center;">
+                            <%= numberFormatter.format(query.getCalls()) %>
+                        </td>
+                        <td style="text-align: center;">
+                            <%= numberFormatter.format(query.getErrors()) %>
+                        </td>
+                        <td style="text-align: center;">
+                            <%= numberFormatter.format(query.getRowsAffected()) %>
+                        </td>
+                        <td style="text-align: center;">
+                            <%= numberFormatter.format(query.getLatency().getWindow(LatencyRecorder.MAX_WINDOW).getP99()) %>&micro;s
+                        </td>
+                    </tr><%
+                        }
+                    %>
+
+                    </tbody>
+
+                </table>
+<%
+    GenerationReport generationReport = mcstats.getGenerationProfiler().getLastReport();
+
+    if (generationReport != null) { %>
+                <table class="table table-striped table-bordered">
+
+                    <thead>
+                    <tr> <th style="text-align: center;"> Generator (last run<%= generationReport.isFailed() ? ", failed" : "" %>) </th> <th style="text-align: center;"> Wall </th> <th style="text-align: center;"> CPU </th> <th style="text-align: center;"> Servers </th> <th style="text-align: center;"> Columns </th> <th style="text-align: center;"> Written </th> <th style="text-align: center;"> Allocated </th></tr>
+                    </thead>
+
+                    <tbody>
+
+                    <%
+                        for (GenerationReport.Generator generator : generationReport.getGenerators()) { %>
+                    <tr>
+                        <td style="text-align: center;">
+                            <%= generator.getName() %>
+                        </td>
+                        <td style="text-align: center;">
+                            <%= numberFormatter.format(generator.getWallMillis()) %>ms
+                        </td>
+                        <td style="text-align: center;">
+                            <%= numberFormatter.format(generator.getCpuMillis()) %>ms
+                        </td>
+                        <td style="text-align: center;">
+                            <%= numberFormatter.format(generator.getServersScanned()) %>
+                        </td>
+                        <td style="text-align: center;">
+                            <%= numberFormatter.format(generator.getColumns()) %>
+                        </td>
+                        <td style="text-align: center;">
+                            <%= numberFormatter.format(generator.getBytesWritten() / 1024) %> KB
+                        </td>
+                        <td style="text-align: center;">
+                            <%= numberFormatter.format(generator.getAllocatedBytes() / 1048576) %> MB
+                        </td>
+                    </tr><%
+                        }
+                    %>
+                    <tr>
+                        <td style="text-align: center;">
+                            <b>Total</b>
+                        </td>
+                        <td style="text-align: center;">
+                            <%= numberFormatter.format(generationReport.getWallMillis()) %>ms
+                        </td>
+                        <td style="text-align: center;">
+                            <%= numberFormatter.format(generationReport.getCpuMillis()) %>ms
+                        </td>
+                        <td style="text-align: center;">
+                        </td>
+                        <td style="text-align: center;">
+                            <%= numberFormatter.format(generationReport.getColumns()) %>
+                        </td>
+                        <td style="text-align: center;">
+                            <%= numberFormatter.format(generationReport.getBytesWritten() / 1024) %> KB
+                        </td>
+                        <td style="text-align: center;">
+                            <%= numberFormatter.format(generationReport.getAllocatedBytes() / 1048576) %> MB
+                        </td>
+                    </tr>
+
+                    </tbody>
+
+                </table>
+<%
+    } %>
+
             </div>
 
             <div class="col-xs-4" style="text-align: center">
@@ -222,14 +398,58 @@
                         </td>
                     </tr>
 
+                    <tr>
+                        <td style="width: 20px; text-align: center;">
+                            Keep-alive
+                        </td>
+                        <td style="width: 100px; text-align: center;">
+                            <% KeepAlivePolicy keepAlive = mcstats.getReportHandler().getKeepAlivePolicy(); %>
+                            <%= keepAlive.isEnabled() ? "ON" : "OFF" %>
+                        </td>
+                    </tr>
+
+                    <tr>
+                        <td style="width: 20px; text-align: center;">
+                            Reused connections
+                        </td>
+                        <td style="width: 100px; text-align: center;">
+                            <%= numberFormatter.format(keepAlive.getReused()) %> / <%= numberFormatter.format(keepAlive.getResponses()) %> responses (<%= numberFormatter.format(keepAlive.getClosedAtLimit()) %> closed at limit)
+                        </td>
+                    </tr>
+
+                    <% IngestServer ingestServer = mcstats.getIngestServer();
+                       if (ingestServer != null) { %>
+                    <tr>
+                        <td style="width: 20px; text-align: center;">
+                            Raw ingest (port <%= ingestServer.getPort() %>)
+                        </td>
+                        <td style="width: 100px; text-align: center;">
+                            <%= numberFormatter.format(ingestServer.getRequests()) %> requests, <%= numberFormatter.format(ingestServer.getOpenConnections()) %> open, <%= numberFormatter.format(ingestServer.getBuffers().getAllocated()) %> buffers
+                        </td>
+                    </tr>
+                    <% } %>
+
                     <tr>
                         <td style="width: 20px; text-align: center;">
                             Total queries
                         </td>
                         <td style="width: 100px; text-align: center;">
-                            <%= numberFormatter.format(MySQLDatabase.QUERIES) %>
+                            <%= numberFormatter.format(mcstats.getMetrics().getQueries().getTotalCalls()) %>
+                        </td>
+                    </tr>
+
+                    <% if (mcstats.getDatabase() instanceof MySQLDatabase) {
+                           MySQLDatabase mysql = (MySQLDatabase) mcstats.getDatabase();
+                           LatencyRecorder.Snapshot connectionWait = mcstats.getMetrics().getQueries().getConnectionWait().getWindow(LatencyRecorder.MAX_WINDOW); %>
+                    <tr>
+                        <td style="width: 20px; text-align: center;">
+                            Connection pool
+                        </td>
+                        <td style="width: 100px; text-align: center;">
+                            <%= mysql.getActiveConnections() %> active, <%= mysql.getIdleConnections() %> idle / <%= mysql.getMaxConnections() %> (wait p99 <%= numberFormatter.format(connectionWait.getP99()) %>&micro;s, <%= numberFormatter.format(mcstats.getMetrics().getQueries().getConnectionErrors()) %> errors)
                         </td>
                     </tr>
+                    <% } %>
 
                     </tbody>
 
@@ -244,7 +464,25 @@
                             Servers (cached)
                         </td>
                         <td style="width: 100px; text-align: center;">
-                            <%= numberFormatter.format(mcstats.getCachedServers().size()) %>
+                            <%= numberFormatter.format(mcstats.getCachedServerCount()) %>
+                        </td>
+                    </tr>
+
+                    <tr>
+                        <td style="width: 20px; text-align: center;">
+                            Server table rows (live / allocated)
+                        </td>
+                        <td style="width: 100px; text-align: center;">
+                            <%= numberFormatter.format(mcstats.getServerTable().size()) %> / <%= numberFormatter.format(mcstats.getServerTable().capacity()) %>
+                        </td>
+                    </tr>
+
+                    <tr>
+                        <td style="width: 20px; text-align: center;">
+                            Server attribute dictionary
+                        </td>
+                        <td style="width: 100px; text-align: center;">
+                            <%= numberFormatter.format(mcstats.getServerTable().getDictionary().size()) %>
                         </td>
                     </tr>
 
@@ -253,7 +491,25 @@
                             Plugins (cached)
                         </td>
                         <td style="width: 100px; text-align: center;">
-                            <%= numberFormatter.format(mcstats.getCachedPlugins().size()) %>
+                            <%= numberFormatter.format(mcstats.getCachedPluginCount()) %>
+                        </td>
+                    </tr>
+
+                    <tr>
+                        <td style="width: 20px; text-align: center;">
+                            Unique servers (today)
+                        </td>
+                        <td style="width: 100px; text-align: center;">
+                            <%= numberFormatter.format(mcstats.getGlobalServerCounter().estimateCurrent(UniqueServerCounter.Window.DAY)) %>
+                        </td>
+                    </tr>
+
+                    <tr>
+                        <td style="width: 20px; text-align: center;">
+                            Unique servers (this month)
+                        </td>
+                        <td style="width: 100px; text-align: center;">
+                            <%= numberFormatter.format(mcstats.getGlobalServerCounter().estimateCurrent(UniqueServerCounter.Window.MONTH)) %>
                         </td>
                     </tr>
 